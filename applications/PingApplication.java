@@ -165,6 +165,14 @@ public class PingApplication extends Application {
 		return new PingApplication(this);
 	}
 
+	@Override
+	public double nextUpdateTime() {
+		if (this.passive) {
+			return Double.MAX_VALUE;
+		}
+		return this.lastPing + this.interval;
+	}
+
 	/** 
 	 * Sends a ping packet if this is an active application instance.
 	 * 
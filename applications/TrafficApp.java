@@ -5,15 +5,7 @@
 
 package applications;
 
-import java.util.List;
-import java.util.Map;
 import java.awt.geom.Line2D;
-import java.io.FileNotFoundException;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.PrintWriter;
-import java.io.UnsupportedEncodingException;
-import java.util.ArrayList;
 import java.util.Random;
 
 import report.TrafficAppReporter;
@@ -22,14 +14,13 @@ import core.Coord;
 import core.DTNHost;
 import core.Message;
 import core.Settings;
-import core.SimClock;
 import core.SimScenario;
 import core.World;
 
 import gui.playfield.MapGraphic;
+import movement.Path;
+import movement.map.RoadSegmentIndex;
 import movement.map.SimMap;
-import movement.map.MapNode;
-import java.util.HashMap;
 
 /**
  * Simple ping application to demonstrate the application support. The 
@@ -54,11 +45,15 @@ public class TrafficApp extends Application{
 	public static final String TRAFFIC_SEED = "seed";
 	/** Size of the ping message */
 	public static final String TRAFFIC_MESSAGE_SIZE = "pingSize";
+	/** How long (seconds) a received speed sample is valid -setting id
+	 * ({@value}). Default is {@link #DEF_SAMPLE_TTL} */
+	public static final String TRAFFIC_SAMPLE_TTL = "sampleTtl";
+	/** Default speed sample validity time */
+	public static final double DEF_SAMPLE_TTL = 120;
 	
 	/** Application ID */
 	public static final String APP_ID = "fi.tkk.netlab.TrafficApp";
 	
-	private static boolean doneRoadSegmentation = false;
 	// Private vars
 	private double	lastAppUpdate = 0;
 	private double	appUpdateInterval = 100;
@@ -66,13 +61,18 @@ public class TrafficApp extends Application{
 	private int		destMin=0;
 	private int		destMax=1;
 	private int		appMsgSize=1;
+	private double	sampleTtl = DEF_SAMPLE_TTL;
 	private Random	rng;
-	private List<Message> msgs_list;
+	/** speed samples received from other hosts */
+	private TrafficStateStore trafficState;
 	
+	/** ID of the road segment the host is on (in the map's segment index) */
+	private int myRoad = RoadSegmentIndex.NO_SEGMENT;
+	/** direction of the host on its road segment */
+	private int myDirection = RoadSegmentIndex.DIR_FORWARD;
 	private Line2D myRoadSegment;
-	private static List<Line2D> roadSegments;
-	private List<Coord> road_segments;
-	private static HashMap<Coord, List<Coord>> segmentsHashMap;
+	/** road segment index of the scenario's map (null if not known yet) */
+	private RoadSegmentIndex segmentIndex;
 	
 	
 	/** 
@@ -93,6 +93,9 @@ public class TrafficApp extends Application{
 		if (s.contains(TRAFFIC_MESSAGE_SIZE)) {
 			this.appMsgSize = s.getInt(TRAFFIC_MESSAGE_SIZE);
 		}
+		if (s.contains(TRAFFIC_SAMPLE_TTL)) {
+			this.sampleTtl = s.getDouble(TRAFFIC_SAMPLE_TTL);
+		}
 		if (s.contains(TRAFFIC_DEST_RANGE)){
 			int[] destination = s.getCsvInts(TRAFFIC_DEST_RANGE,2);
 			this.destMin = destination[0];
@@ -116,80 +119,34 @@ public class TrafficApp extends Application{
 		this.destMin = a.getDestMin();
 		this.seed = a.getSeed();
 		this.appMsgSize = a.getAppMsgSize();
+		this.sampleTtl = a.getSampleTtl();
 		this.rng = new Random(this.seed);
-		this.msgs_list = new ArrayList<Message>();
-		this.roadSegments = new ArrayList<Line2D>();
-		this.segmentsHashMap = new HashMap<Coord, List<Coord>>();
-		this.road_segments = new ArrayList<Coord>();
+		this.trafficState = new TrafficStateStore(this.sampleTtl);
 	}
 	
 	/** 
-	 * Handles an incoming message. If the message is a ping message replies
-	 * with a pong message. Generates events for ping and pong messages.
+	 * Handles an incoming message. If the message is a traffic beacon
+	 * addressed to this host, the speed sample it carries is added to the
+	 * host's traffic state. Generates an event for the received beacons.
 	 * 
 	 * @param msg	message received by the router
 	 * @param host	host to which the application instance is attached
 	 */
 	@Override
 	public Message handle(Message msg, DTNHost host) {
-		String type = (String)msg.getProperty("type");
-
-		try {
-			 if (type==null) return msg;
-				if (msg.getTo()==host && type.equalsIgnoreCase("traffic")) {
-					if(msgs_list!=null) {
-						try {
-							for(Message mm : msgs_list) {
-								if(msg.getFrom().equals(mm.getFrom()))
-									msgs_list.remove(mm);
-								
-							}
-						}catch(Exception e) {
-							
-						}
-					}
-					msgs_list.add(msg);
-					deleteExpiredMsgs(msgs_list);
-//					System.out.println(SimClock.getIntTime() + " I am " + host + " " + this.myRoadSegment + ". "+ host.getPath().getSpeed() 
-//							+ "Msg list contain/s " + msgs_list.size() + ". ");
-					for(int i = 0; i < msgs_list.size(); i++) {
-						Message m = msgs_list.get(i);
-						Line2D l = (Line2D) m.getProperty("myRoad");
-						Line2D mine = getMyRoadSegment();
-						
-						if(m.getTtl()>0) {
-							if(isInSameRoad(mine, l)) {
-								//compute average on that road
-								System.out.println("I am " + host + ". " + m.getFrom() + " " + l + " is on my road");
-								System.out.println("L: " + l.getX1() + ", " + l.getY1() + ", " + l.getX2() + ", " + l.getY2());
-								System.out.println(host + ": " + mine.getX1() + ", " + mine.getY1() + ", " + mine.getX2() + ", " + mine.getY2());
-							}
-						}
-//							System.out.println("A msg from " + m.getFrom() + "-ttl: "+ m.getTtl()+ ": " + m.getProperty("location") + ", " + m.getProperty("speed") + " " 
-//						+ "road: (" + l.getX1() + ", " + l.getY1() + ") , (" + l.getX2() + ", " + l.getY2() + ")");
-					}
-					
-					super.sendEventToListeners("GotPing", null, host);
-				}				
-		 }catch(Exception e) {			 
-		 }		
-		return msg;
-	}
-
-	private boolean isInSameRoad(Line2D mine, Line2D l) {
-		if(round(l.getX1()) == round(mine.getX1()) && round(l.getY1()) == round(mine.getY1()) 
-				&& round(l.getX2()) == round(mine.getX2())&& round(l.getY2()) == round(mine.getY2())) {
-			return true;
+		if (!(msg instanceof TrafficBeacon) || msg.getTo() != host) {
+			return msg;
 		}
-		else
-			return false;
-	}
-
-	private void deleteExpiredMsgs(List<Message> msgs_list) {
-		for(Message m : msgs_list) {
-			if(m.getTtl() <= 0)
-				msgs_list.remove(m);
+		
+		TrafficBeacon b = (TrafficBeacon)msg;
+		if (b.getSegment() != RoadSegmentIndex.NO_SEGMENT && b.getTtl() > 0) {
+			this.trafficState.addSample(b.getFrom().getAddress(), 
+					b.getSegment(), b.getDirection(), b.getSpeed(), 
+					b.getCreationTime());
 		}
+		
+		super.sendEventToListeners("GotPing", null, host);
+		return msg;
 	}
 
 	/** 
@@ -198,11 +155,10 @@ public class TrafficApp extends Application{
 	 * @return host
 	 */
 	private DTNHost randomHost() {
-		int destaddr = 0;
-		if (destMax == destMin) {
-			destaddr = destMin;
+		int destaddr = destMin;
+		if (destMax > destMin) {
+			destaddr = destMin + rng.nextInt(destMax - destMin);
 		}
-		destaddr = destMin + rng.nextInt(destMax - destMin);
 		World w = SimScenario.getInstance().getWorld();
 		return w.getNodeByAddress(destaddr);
 	}
@@ -211,113 +167,132 @@ public class TrafficApp extends Application{
 	public Application replicate() {
 		return new TrafficApp(this);
 	}
+	
+	/**
+	 * Beacons are sent only when the host has connections so without 
+	 * connections only the received samples need to be expired in time.
+	 */
+	@Override
+	public double nextUpdateTime() {
+		return this.trafficState.nextExpiryTime();
+	}
 
 	@Override
 	public void update(DTNHost host) {
 		
-		double curTime = SimClock.getTime();
-		Line2D myroad;
-
-		if(!this.doneRoadSegmentation) {
-			try {
-				initRoadSegments();
-			} catch (IOException e1) {
+		double curTime = getContext().getClock().getSimTime();
+		this.trafficState.expire(curTime);
 
-			}
-		}
-		
-		try {
-			getMyRoad(host, host.getLocation(), host.getCurrentDestination());
-			if (host.getConnections().get(0).isUp()) {
+		Coord location = host.getLocation();
+		Coord waypoint = host.getCurrentDestination();
+		getMyRoad(host, location, waypoint);
+		if (!host.getConnections().isEmpty()) {
+			
+			if (curTime - this.lastAppUpdate >= this.appUpdateInterval) {
 				
-				if (curTime - this.lastAppUpdate >= this.appUpdateInterval) {
-					
-					// Time to send a new ping
-					String id = "traffic";
-					String idd = SimClock.getIntTime() + "-" + host.getAddress() + "Host"+ host+" "+host.getLocation()+": " + host.getPath().getSpeed();
-					
-					Message m = new Message(host, randomHost(), id+idd, getAppMsgSize());
-					m.addProperty("type", id);
-					m.addProperty("location", host.getLocation());
-					m.addProperty("speed", host.getPath().getSpeed());
-					m.addProperty("myRoad", this.myRoadSegment);
-					
-					
-					m.setAppID(APP_ID);
-					host.createNewMessage(m);
-
-					super.sendEventToListeners("SentPing", null, host);
-					
-					this.lastAppUpdate = curTime;
+				// Time to send a new beacon
+				double heading = Double.NaN;
+				if (waypoint != null && !waypoint.equals(location)) {
+					heading = Math.atan2(waypoint.getY() - location.getY(),
+							waypoint.getX() - location.getX());
 				}
-			}
-		}catch(Exception e) {
+				
+				// hosts waiting at a waypoint have no path
+				Path path = host.getPath();
+				double speed = (path != null ? path.getSpeed() : 0);
+				Message m = new TrafficBeacon(host, randomHost(), 
+						getAppMsgSize(), location.getX(), location.getY(),
+						speed, heading, this.myRoad, this.myDirection);
+				m.setAppID(APP_ID);
+				host.createNewMessage(m);
 
+				super.sendEventToListeners("SentPing", null, host);
+				
+				this.lastAppUpdate = curTime;
+			}
 		}
 	}
 		
-	public boolean isOnTheLine(Line2D l, Coord c) {
-		double x1, x2, y1, y2;
-
-		x1 = l.getX1();
-		x2 = l.getX2();
-		y1 = l.getY1();
-		y2 = l.getY2();
-
-		double m = (y2-y1)/(x2-x1);
-		double b = y1 - (m * x1);
-		//System.out.println(round(c.getY()) + " and " + round((m * c.getX())+b));
-		if(round(c.getY()) == round((m * c.getX())+b)) {
-//			System.out.println("Found on : (" + l.getX1() + ", " + l.getY1() + ") , (" + l.getX2() + ", " + l.getY2() + ")");
-//			System.out.println();
-			return true;
-		}
-		else {
-//			System.out.println("NOT FOUND on : (" + l.getX1() + ", " + l.getY1() + ") , (" + l.getX2() + ", " + l.getY2() + ")");
-//			System.out.println();
-			return false;
-		}
-	}
-	
 	public Line2D getMyRoadSegment() {
 		return this.myRoadSegment;
 	}
 	
+	/**
+	 * Finds the road segment the host is on using the map's segment index.
+	 * The line object is re-created only when the host moves to another
+	 * segment.
+	 * @param h The host
+	 * @param location Current location of the host
+	 * @param waypoint The waypoint the host is heading to (or null)
+	 * @return The road segment or null if the scenario has no map
+	 */
 	public Line2D getMyRoad(DTNHost h, Coord location, Coord waypoint) {
-		Line2D myRoad = null;
+		RoadSegmentIndex index = getSegmentIndex();
+		if (index == null) {
+			return null;
+		}
 		
-		if(!this.segmentsHashMap.get(waypoint).equals(null)) {
-			{
-				for(Coord c : this.segmentsHashMap.get(waypoint)) {
-					//myRoad = new Line2D.Double(round(waypoint.getX()), round(waypoint.getY()), round(c.getX()), round(c.getY()));
-					myRoad = new Line2D.Double(waypoint.getX(), waypoint.getY(), c.getX(), c.getY());
-					//System.out.println("Line : " + waypoint + " ,, " + c);
-					if(isOnTheLine(myRoad, location)) {
-						break;
-					}
-				}
-			}
-			
+		int road = index.getNearestSegment(location, waypoint);
+		if (road != this.myRoad) {
+			this.myRoad = road;
+			this.myRoadSegment = (road == RoadSegmentIndex.NO_SEGMENT ? 
+					null : index.createLine(road));
+		}
+		if (road != RoadSegmentIndex.NO_SEGMENT && waypoint != null) {
+			this.myDirection = index.getDirection(road, waypoint);
 		}
-		this.myRoadSegment = myRoad;
 		return this.myRoadSegment;
 	}
 	
+	/**
+	 * Returns the ID of the road segment the host was on at the last update
+	 * @return The segment ID or {@link RoadSegmentIndex#NO_SEGMENT}
+	 */
+	public int getMyRoadId() {
+		return this.myRoad;
+	}
+	
+	/**
+	 * Returns the direction of the host on its road segment
+	 * @return {@link RoadSegmentIndex#DIR_FORWARD} or 
+	 * {@link RoadSegmentIndex#DIR_BACKWARD}
+	 */
+	public int getMyRoadDirection() {
+		return this.myDirection;
+	}
 	
-	public void initRoadSegments() throws IOException{
-		Coord c, c2;
-		
-		for(MapNode n : SimScenario.getInstance().getMap().getNodes()) {
-			c = n.getLocation();
-			this.road_segments = new ArrayList<Coord>();
-			for(MapNode n2 : n.getNeighbors()) {
-				
-				c2 = n2.getLocation();
-				this.road_segments.add(c2);
+	/**
+	 * Returns the traffic state this host has learned from other hosts
+	 * @return the traffic state
+	 */
+	public TrafficStateStore getTrafficState() {
+		return this.trafficState;
+	}
+	
+	/**
+	 * Returns the mean speed that other hosts have reported from the host's
+	 * current road segment and direction
+	 * @return The mean speed or NaN if there are no valid samples
+	 */
+	public double getEstimatedSpeed() {
+		if (this.myRoad == RoadSegmentIndex.NO_SEGMENT) {
+			return Double.NaN;
+		}
+		return this.trafficState.getMeanSpeed(this.myRoad, this.myDirection);
+	}
+	
+	/**
+	 * Returns the road segment index of the scenario's map
+	 * @return The index or null if the scenario doesn't have a map
+	 */
+	public RoadSegmentIndex getSegmentIndex() {
+		if (this.segmentIndex == null) {
+			SimMap map = SimScenario.getInstance().getMap();
+			if (map != null) {
+				this.segmentIndex = map.getSegmentIndex();
 			}
-			this.segmentsHashMap.put(c, this.road_segments);
 		}
-		this.doneRoadSegmentation = true;
+		return this.segmentIndex;
 	}
 	
 	public double round(double value) {
@@ -395,6 +370,13 @@ public class TrafficApp extends Application{
 		this.seed = seed;
 	}
 
+	/**
+	 * @return the sampleTtl
+	 */
+	public double getSampleTtl() {
+		return this.sampleTtl;
+	}
+
 	/**
 	 * @return the pingSize
 	 */
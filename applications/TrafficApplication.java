@@ -10,7 +10,6 @@ import java.util.Map;
 import java.awt.geom.Line2D;
 import java.io.FileNotFoundException;
 import java.io.FileWriter;
-import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
@@ -27,9 +26,8 @@ import core.SimScenario;
 import core.World;
 
 import gui.playfield.MapGraphic;
+import movement.map.RoadSegmentIndex;
 import movement.map.SimMap;
-import movement.map.MapNode;
-import java.util.HashMap;
 
 /**
  * Simple ping application to demonstrate the application support. The 
@@ -74,7 +72,6 @@ public class TrafficApplication extends Application{
 	public static final String TO_SOUTHWEST = "heading_to_southwest";
 
 	
-	private static boolean doneRoadSegmentation = false;
 	// Private vars
 	private double	lastPing = 0;
 	private double	interval = 100;
@@ -100,10 +97,11 @@ public class TrafficApplication extends Application{
 	private Coord previousLocation;
 	private Coord currentLocation;
 	private String hostIsHeadingto;
+	/** ID of the road segment the host is on (in the map's segment index) */
+	private int myRoad = RoadSegmentIndex.NO_SEGMENT;
 	private Line2D myRoadSegment;
-	private static List<Line2D> roadSegments;
-	private List<Coord> road_segments;
-	private static HashMap<Coord, List<Coord>> segmentsHashMap;
+	/** road segment index of the scenario's map (null if not known yet) */
+	private RoadSegmentIndex segmentIndex;
 	
 	
 	/** 
@@ -157,9 +155,6 @@ public class TrafficApplication extends Application{
 		this.pingSize = a.getPingSize();
 		this.rng = new Random(this.seed);
 		this.msgs_list = new ArrayList<Message>();
-		this.roadSegments = new ArrayList<Line2D>();
-		this.segmentsHashMap = new HashMap<Coord, List<Coord>>();
-		this.road_segments = new ArrayList<Coord>();
 	}
 	
 	/** 
@@ -249,14 +244,6 @@ public class TrafficApplication extends Application{
 		double curTime = SimClock.getTime();
 		Line2D myroad;
 		this.currentLocation = host.getLocation().clone();
-		if(!this.doneRoadSegmentation) {
-			try {
-				initRoadSegments();
-			} catch (IOException e1) {
-
-			}
-		}
-		
 		try {
 			getMyRoad(host, host.getLocation(), host.getCurrentDestination());
 			if (host.getConnections().get(0).isUp()) {
@@ -288,68 +275,54 @@ public class TrafficApplication extends Application{
 		}
 	}
 		
-	public boolean isOnTheLine(Line2D l, Coord c) {
-		double x1, x2, y1, y2;
-
-		x1 = l.getX1();
-		x2 = l.getX2();
-		y1 = l.getY1();
-		y2 = l.getY2();
-
-		double m = (y2-y1)/(x2-x1);
-		double b = y1 - (m * x1);
-		//System.out.println(round(c.getY()) + " and " + round((m * c.getX())+b));
-		if(round(c.getY()) == round((m * c.getX())+b)) {
-//			System.out.println("Found on : (" + l.getX1() + ", " + l.getY1() + ") , (" + l.getX2() + ", " + l.getY2() + ")");
-//			System.out.println();
-			return true;
-		}
-		else {
-//			System.out.println("NOT FOUND on : (" + l.getX1() + ", " + l.getY1() + ") , (" + l.getX2() + ", " + l.getY2() + ")");
-//			System.out.println();
-			return false;
-		}
-	}
-	
 	public Line2D getMyRoadSegment() {
 		return this.myRoadSegment;
 	}
 	
+	/**
+	 * Finds the road segment the host is on using the map's segment index.
+	 * The line object is re-created only when the host moves to another
+	 * segment.
+	 * @param h The host
+	 * @param location Current location of the host
+	 * @param waypoint The waypoint the host is heading to (or null)
+	 * @return The road segment or null if the scenario has no map
+	 */
 	public Line2D getMyRoad(DTNHost h, Coord location, Coord waypoint) {
-		Line2D myRoad = null;
+		RoadSegmentIndex index = getSegmentIndex();
+		if (index == null) {
+			return null;
+		}
 		
-		if(!this.segmentsHashMap.get(waypoint).equals(null)) {
-			{
-				for(Coord c : this.segmentsHashMap.get(waypoint)) {
-					//myRoad = new Line2D.Double(round(waypoint.getX()), round(waypoint.getY()), round(c.getX()), round(c.getY()));
-					myRoad = new Line2D.Double(waypoint.getX(), waypoint.getY(), c.getX(), c.getY());
-					//System.out.println("Line : " + waypoint + " ,, " + c);
-					if(isOnTheLine(myRoad, location)) {
-						break;
-					}
-				}
-			}
-			
+		int road = index.getNearestSegment(location, waypoint);
+		if (road != this.myRoad) {
+			this.myRoad = road;
+			this.myRoadSegment = (road == RoadSegmentIndex.NO_SEGMENT ? 
+					null : index.createLine(road));
 		}
-		this.myRoadSegment = myRoad;
 		return this.myRoadSegment;
 	}
 	
+	/**
+	 * Returns the ID of the road segment the host was on at the last update
+	 * @return The segment ID or {@link RoadSegmentIndex#NO_SEGMENT}
+	 */
+	public int getMyRoadId() {
+		return this.myRoad;
+	}
 	
-	public void initRoadSegments() throws IOException{
-		Coord c, c2;
-		
-		for(MapNode n : SimScenario.getInstance().getMap().getNodes()) {
-			c = n.getLocation();
-			this.road_segments = new ArrayList<Coord>();
-			for(MapNode n2 : n.getNeighbors()) {
-				
-				c2 = n2.getLocation();
-				this.road_segments.add(c2);
+	/**
+	 * Returns the road segment index of the scenario's map
+	 * @return The index or null if the scenario doesn't have a map
+	 */
+	private RoadSegmentIndex getSegmentIndex() {
+		if (this.segmentIndex == null) {
+			SimMap map = SimScenario.getInstance().getMap();
+			if (map != null) {
+				this.segmentIndex = map.getSegmentIndex();
 			}
-			this.segmentsHashMap.put(c, this.road_segments);
 		}
-		this.doneRoadSegmentation = true;
+		return this.segmentIndex;
 	}
 	
 	public double round(double value) {
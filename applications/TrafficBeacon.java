@@ -0,0 +1,190 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package applications;
+
+import java.util.HashMap;
+
+import core.DTNHost;
+import core.DTNSim;
+import core.Message;
+import core.SimContext;
+
+/**
+ * Traffic beacon message of the {@link TrafficApp}. The sender's state is
+ * stored in primitive fields instead of generic message properties so
+ * creating, replicating and reading beacons doesn't need any maps, boxing
+ * or casts. All the fields are immutable so replicates can share nothing
+ * but plain values.
+ */
+public class TrafficBeacon extends Message {
+	/** Prefix of the beacons' message IDs */
+	public static final String ID_PREFIX = "TB";
+	/** Key of the beacon number counter in the context's registry */
+	private static final String COUNTER_KEY = "nextBeaconId";
+
+	/** Number of the beacon (same for all replicates) */
+	private final int beaconId;
+	private final double x;
+	private final double y;
+	private final double speed;
+	private final double heading;
+	private final int segment;
+	private final int direction;
+
+	static {
+		DTNSim.registerForReset(TrafficBeacon.class.getCanonicalName());
+	}
+
+	/**
+	 * Creates a new traffic beacon.
+	 * @param from The sender of the beacon
+	 * @param to The destination of the beacon
+	 * @param size Size of the beacon (bytes)
+	 * @param x The sender's x coordinate
+	 * @param y The sender's y coordinate
+	 * @param speed The sender's speed
+	 * @param heading The sender's heading (radians, see
+	 * {@link Math#atan2(double, double)}) or NaN if not known
+	 * @param segment ID of the road segment the sender is on
+	 * @param direction The sender's direction on the segment
+	 */
+	public TrafficBeacon(DTNHost from, DTNHost to, int size, double x,
+			double y, double speed, double heading, int segment,
+			int direction) {
+		this(from, to, nextBeaconId(getContext(from)), size, x, y, speed,
+				heading, segment, direction);
+	}
+
+	private TrafficBeacon(DTNHost from, DTNHost to, int beaconId, int size,
+			double x, double y, double speed, double heading, int segment,
+			int direction) {
+		super(from, to, ID_PREFIX + beaconId, size);
+		this.beaconId = beaconId;
+		this.x = x;
+		this.y = y;
+		this.speed = speed;
+		this.heading = heading;
+		this.segment = segment;
+		this.direction = direction;
+	}
+
+	/**
+	 * Creates a replicate of a beacon
+	 * @param b The beacon to replicate
+	 */
+	private TrafficBeacon(TrafficBeacon b) {
+		super(b);
+		this.beaconId = b.beaconId;
+		this.x = b.x;
+		this.y = b.y;
+		this.speed = b.speed;
+		this.heading = b.heading;
+		this.segment = b.segment;
+		this.direction = b.direction;
+	}
+
+	/**
+	 * Returns a numeric ID of the beacon that is the same for all the
+	 * replicates of the beacon
+	 * @return The beacon ID
+	 */
+	public int getBeaconId() {
+		return this.beaconId;
+	}
+
+	/**
+	 * Returns the x coordinate of the sender at the creation time
+	 * @return the x coordinate
+	 */
+	public double getX() {
+		return this.x;
+	}
+
+	/**
+	 * Returns the y coordinate of the sender at the creation time
+	 * @return the y coordinate
+	 */
+	public double getY() {
+		return this.y;
+	}
+
+	/**
+	 * Returns the speed of the sender at the creation time
+	 * @return the speed
+	 */
+	public double getSpeed() {
+		return this.speed;
+	}
+
+	/**
+	 * Returns the heading of the sender at the creation time
+	 * @return the heading in radians or NaN if the heading wasn't known
+	 */
+	public double getHeading() {
+		return this.heading;
+	}
+
+	/**
+	 * Returns the ID of the road segment the sender was on
+	 * @return the segment ID or
+	 * {@link movement.map.RoadSegmentIndex#NO_SEGMENT}
+	 */
+	public int getSegment() {
+		return this.segment;
+	}
+
+	/**
+	 * Returns the direction of the sender on its road segment
+	 * @return the direction
+	 */
+	public int getDirection() {
+		return this.direction;
+	}
+
+	/**
+	 * Returns a replicate of this beacon (identical except for the unique id)
+	 * @return A replicate of the beacon
+	 */
+	@Override
+	public Message replicate() {
+		return new TrafficBeacon(this);
+	}
+
+	/**
+	 * Returns the simulation context of a beacon's sender
+	 * @param from The sender
+	 * @return The sender's context or the current context if there's no
+	 * sender
+	 */
+	private static SimContext getContext(DTNHost from) {
+		return from != null ? from.getContext() : SimContext.getCurrent();
+	}
+
+	/**
+	 * Returns the next beacon number of a simulation context and increments
+	 * the number for subsequent calls
+	 * @param context The context
+	 * @return The beacon number
+	 */
+	private static int nextBeaconId(SimContext context) {
+		HashMap<String, int[]> registry =
+			context.getRegistry(TrafficBeacon.class);
+		synchronized (registry) {
+			int[] counter = registry.get(COUNTER_KEY);
+			if (counter == null) {
+				counter = new int[1];
+				registry.put(COUNTER_KEY, counter);
+			}
+			return counter[0]++;
+		}
+	}
+
+	/**
+	 * Resets the beacon numbers of the current simulation context
+	 */
+	public static void reset() {
+		SimContext.getCurrent().clearRegistry(TrafficBeacon.class);
+	}
+}
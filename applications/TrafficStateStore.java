@@ -0,0 +1,395 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package applications;
+
+import java.util.Arrays;
+
+/**
+ * <P>Traffic state that a host has learned from the traffic beacons of other
+ * hosts. Only the latest speed sample of each sender is kept and every
+ * sample belongs to a road segment and a travel direction on the segment
+ * (see {@link movement.map.RoadSegmentIndex}).</P>
+ *
+ * <P>The store keeps the number, mean and variance of the speed samples of
+ * each segment and direction up to date incrementally (Welford's method),
+ * so the queries take constant time regardless of the number of senders.
+ * Samples expire when their time-to-live has passed; expiry times are kept
+ * in a binary heap so expiring does not need to scan the samples.</P>
+ *
+ * <P>All the data is kept in primitive arrays that grow when needed.</P>
+ */
+public class TrafficStateStore {
+	/** Number of directions per segment */
+	private static final int NROF_DIRS = 2;
+	/** Initial capacity of the arrays */
+	private static final int INIT_SIZE = 16;
+	/** Marker of an empty hash table slot */
+	private static final int EMPTY = -1;
+
+	/** how long a sample is valid after its creation (seconds) */
+	private double sampleTtl;
+
+	/* hash table: sender address -> sample slot */
+	private int[] senderKeys;
+	private int[] senderSlots;
+	private int nrofSenders;
+
+	/* latest sample of each sender, indexed by the sample slot */
+	private int[] sampleStat;
+	private double[] sampleSpeed;
+	private double[] sampleTime;
+	private int[] sampleVersion;
+	private boolean[] sampleValid;
+
+	/* hash table: segment*NROF_DIRS+direction -> statistics slot */
+	private int[] statKeys;
+	private int[] statSlots;
+	private int nrofStats;
+
+	/* statistics of each segment & direction, indexed by the stat slot */
+	private int[] statCount;
+	private double[] statMean;
+	private double[] statM2;
+
+	/* expiry heap of (time, sample slot, sample version) entries */
+	private double[] heapTime;
+	private int[] heapSlot;
+	private int[] heapVersion;
+	private int heapSize;
+
+	/**
+	 * Creates a new, empty, traffic state store.
+	 * @param sampleTtl How long (seconds) a sample is valid after its
+	 * creation
+	 */
+	public TrafficStateStore(double sampleTtl) {
+		this.sampleTtl = sampleTtl;
+
+		this.senderKeys = newTable(INIT_SIZE);
+		this.senderSlots = new int[INIT_SIZE];
+		this.sampleStat = new int[INIT_SIZE];
+		this.sampleSpeed = new double[INIT_SIZE];
+		this.sampleTime = new double[INIT_SIZE];
+		this.sampleVersion = new int[INIT_SIZE];
+		this.sampleValid = new boolean[INIT_SIZE];
+
+		this.statKeys = newTable(INIT_SIZE);
+		this.statSlots = new int[INIT_SIZE];
+		this.statCount = new int[INIT_SIZE];
+		this.statMean = new double[INIT_SIZE];
+		this.statM2 = new double[INIT_SIZE];
+
+		this.heapTime = new double[INIT_SIZE];
+		this.heapSlot = new int[INIT_SIZE];
+		this.heapVersion = new int[INIT_SIZE];
+	}
+
+	/**
+	 * Adds a speed sample. The sample replaces the previous sample of the
+	 * same sender unless the previous one was created later.
+	 * @param sender Address of the host that created the sample
+	 * @param segment ID of the road segment the sender was on
+	 * @param direction The sender's direction on the segment
+	 * @param speed The sender's speed
+	 * @param time Creation time of the sample
+	 */
+	public void addSample(int sender, int segment, int direction,
+			double speed, double time) {
+		int slot = senderSlot(sender);
+		if (sampleValid[slot]) {
+			if (sampleTime[slot] > time) {
+				return; // already have a newer sample from the sender
+			}
+			removeFromStats(sampleStat[slot], sampleSpeed[slot]);
+		}
+
+		int stat = statSlot(segment * NROF_DIRS + direction);
+		addToStats(stat, speed);
+
+		sampleStat[slot] = stat;
+		sampleSpeed[slot] = speed;
+		sampleTime[slot] = time;
+		sampleValid[slot] = true;
+		sampleVersion[slot]++;
+		heapPush(time + sampleTtl, slot, sampleVersion[slot]);
+	}
+
+	/**
+	 * Removes all the samples whose time-to-live has passed
+	 * @param now The current time
+	 */
+	public void expire(double now) {
+		while (heapSize > 0 && heapTime[0] <= now) {
+			int slot = heapSlot[0];
+			int version = heapVersion[0];
+			heapPop();
+			if (sampleValid[slot] && sampleVersion[slot] == version) {
+				removeFromStats(sampleStat[slot], sampleSpeed[slot]);
+				sampleValid[slot] = false;
+			}
+		}
+	}
+
+	/**
+	 * Returns the time when the next sample expires (or a replaced sample's
+	 * expiry entry is due)
+	 * @return The next expiry time or Double.MAX_VALUE if there are no 
+	 * samples
+	 */
+	public double nextExpiryTime() {
+		return heapSize > 0 ? heapTime[0] : Double.MAX_VALUE;
+	}
+
+	/**
+	 * Returns the number of valid samples for a segment and direction
+	 * @param segment ID of the segment
+	 * @param direction The direction
+	 * @return The number of samples
+	 */
+	public int getSampleCount(int segment, int direction) {
+		int stat = findStat(segment, direction);
+		return stat == EMPTY ? 0 : statCount[stat];
+	}
+
+	/**
+	 * Returns the mean speed of the samples of a segment and direction
+	 * @param segment ID of the segment
+	 * @param direction The direction
+	 * @return The mean speed or NaN if there are no samples
+	 */
+	public double getMeanSpeed(int segment, int direction) {
+		int stat = findStat(segment, direction);
+		if (stat == EMPTY || statCount[stat] == 0) {
+			return Double.NaN;
+		}
+		return statMean[stat];
+	}
+
+	/**
+	 * Returns the (population) variance of the speed samples of a segment
+	 * and direction
+	 * @param segment ID of the segment
+	 * @param direction The direction
+	 * @return The variance or NaN if there are no samples
+	 */
+	public double getSpeedVariance(int segment, int direction) {
+		int stat = findStat(segment, direction);
+		if (stat == EMPTY || statCount[stat] == 0) {
+			return Double.NaN;
+		}
+		return statM2[stat] / statCount[stat];
+	}
+
+	/**
+	 * Returns the number of hosts this store has (or has had) samples from
+	 * @return the number of senders
+	 */
+	public int getNrofSenders() {
+		return this.nrofSenders;
+	}
+
+	/**
+	 * Returns the statistics slot of a segment and direction
+	 * @return The slot or {@link #EMPTY} if there are no statistics
+	 */
+	private int findStat(int segment, int direction) {
+		int i = find(statKeys, segment * NROF_DIRS + direction);
+		return statKeys[i] == EMPTY ? EMPTY : statSlots[i];
+	}
+
+	/**
+	 * Adds a speed to statistics
+	 */
+	private void addToStats(int stat, double speed) {
+		statCount[stat]++;
+		double delta = speed - statMean[stat];
+		statMean[stat] += delta / statCount[stat];
+		statM2[stat] += delta * (speed - statMean[stat]);
+	}
+
+	/**
+	 * Removes a speed from statistics
+	 */
+	private void removeFromStats(int stat, double speed) {
+		if (statCount[stat] <= 1) {
+			statCount[stat] = 0;
+			statMean[stat] = 0;
+			statM2[stat] = 0;
+			return;
+		}
+
+		statCount[stat]--;
+		double delta = speed - statMean[stat];
+		statMean[stat] -= delta / statCount[stat];
+		statM2[stat] -= delta * (speed - statMean[stat]);
+		if (statM2[stat] < 0) {
+			statM2[stat] = 0; // rounding errors
+		}
+	}
+
+	/**
+	 * Returns the sample slot of a sender (creates one if needed)
+	 */
+	private int senderSlot(int sender) {
+		int i = find(senderKeys, sender);
+		if (senderKeys[i] != EMPTY) {
+			return senderSlots[i];
+		}
+
+		int slot = nrofSenders++;
+		if (slot == sampleStat.length) {
+			int size = slot * 2;
+			sampleStat = Arrays.copyOf(sampleStat, size);
+			sampleSpeed = Arrays.copyOf(sampleSpeed, size);
+			sampleTime = Arrays.copyOf(sampleTime, size);
+			sampleVersion = Arrays.copyOf(sampleVersion, size);
+			sampleValid = Arrays.copyOf(sampleValid, size);
+		}
+		senderKeys[i] = sender;
+		senderSlots[i] = slot;
+
+		if (nrofSenders * 2 > senderKeys.length) {
+			int[] oldKeys = senderKeys;
+			int[] oldSlots = senderSlots;
+			senderKeys = newTable(oldKeys.length * 2);
+			senderSlots = new int[oldKeys.length * 2];
+			rehash(oldKeys, oldSlots, senderKeys, senderSlots);
+		}
+		return slot;
+	}
+
+	/**
+	 * Returns the statistics slot of a key (creates one if needed)
+	 */
+	private int statSlot(int key) {
+		int i = find(statKeys, key);
+		if (statKeys[i] != EMPTY) {
+			return statSlots[i];
+		}
+
+		int slot = nrofStats++;
+		if (slot == statCount.length) {
+			int size = slot * 2;
+			statCount = Arrays.copyOf(statCount, size);
+			statMean = Arrays.copyOf(statMean, size);
+			statM2 = Arrays.copyOf(statM2, size);
+		}
+		statKeys[i] = key;
+		statSlots[i] = slot;
+
+		if (nrofStats * 2 > statKeys.length) {
+			int[] oldKeys = statKeys;
+			int[] oldSlots = statSlots;
+			statKeys = newTable(oldKeys.length * 2);
+			statSlots = new int[oldKeys.length * 2];
+			rehash(oldKeys, oldSlots, statKeys, statSlots);
+		}
+		return slot;
+	}
+
+	/**
+	 * Creates a new, empty, hash table of the given size (power of two)
+	 */
+	private static int[] newTable(int size) {
+		int[] table = new int[size];
+		Arrays.fill(table, EMPTY);
+		return table;
+	}
+
+	/**
+	 * Finds the hash table index of a (non-negative) key using linear
+	 * probing
+	 * @return Index of the key or index of the empty slot where the key
+	 * should be put
+	 */
+	private static int find(int[] keys, int key) {
+		int mask = keys.length - 1;
+		int i = (key * 0x9E3779B9) >>> 7 & mask;
+		while (keys[i] != EMPTY && keys[i] != key) {
+			i = (i + 1) & mask;
+		}
+		return i;
+	}
+
+	/**
+	 * Moves all the keys and values of a hash table to another table
+	 */
+	private static void rehash(int[] oldKeys, int[] oldValues,
+			int[] newKeys, int[] newValues) {
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != EMPTY) {
+				int j = find(newKeys, oldKeys[i]);
+				newKeys[j] = oldKeys[i];
+				newValues[j] = oldValues[i];
+			}
+		}
+	}
+
+	/**
+	 * Adds an entry to the expiry heap
+	 */
+	private void heapPush(double time, int slot, int version) {
+		if (heapSize == heapTime.length) {
+			int size = heapSize * 2;
+			heapTime = Arrays.copyOf(heapTime, size);
+			heapSlot = Arrays.copyOf(heapSlot, size);
+			heapVersion = Arrays.copyOf(heapVersion, size);
+		}
+
+		int i = heapSize++;
+		while (i > 0) {
+			int parent = (i - 1) / 2;
+			if (heapTime[parent] <= time) {
+				break;
+			}
+			heapSet(i, parent);
+			i = parent;
+		}
+		heapTime[i] = time;
+		heapSlot[i] = slot;
+		heapVersion[i] = version;
+	}
+
+	/**
+	 * Removes the first entry of the expiry heap
+	 */
+	private void heapPop() {
+		heapSize--;
+		if (heapSize == 0) {
+			return;
+		}
+
+		double time = heapTime[heapSize];
+		int slot = heapSlot[heapSize];
+		int version = heapVersion[heapSize];
+		int i = 0;
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= heapSize) {
+				break;
+			}
+			if (child + 1 < heapSize && heapTime[child + 1] < heapTime[child]) {
+				child++;
+			}
+			if (heapTime[child] >= time) {
+				break;
+			}
+			heapSet(i, child);
+			i = child;
+		}
+		heapTime[i] = time;
+		heapSlot[i] = slot;
+		heapVersion[i] = version;
+	}
+
+	/**
+	 * Copies a heap entry to another index
+	 */
+	private void heapSet(int to, int from) {
+		heapTime[to] = heapTime[from];
+		heapSlot[to] = heapSlot[from];
+		heapVersion[to] = heapVersion[from];
+	}
+}
@@ -35,10 +35,13 @@ import java.util.List;
 public abstract class Application {
 
 	private List<ApplicationListener> aListeners = null;
+	/** the simulation context the application was created in */
+	private SimContext context;
 	
 	public String	appID	= null;
 
 	public Application(){	
+		this.context = SimContext.getCurrent();
 	}
 	
 	/**
@@ -49,6 +52,15 @@ public abstract class Application {
 	public Application(Application app){	
 		this.aListeners = app.getAppListeners();
 		this.appID = app.appID;
+		this.context = app.context;
+	}
+
+	/**
+	 * Returns the simulation context the application was created in
+	 * @return The context of the application
+	 */
+	public SimContext getContext() {
+		return this.context;
 	}
 	
 	/**
@@ -101,6 +113,18 @@ public abstract class Application {
 	
 	public abstract Application replicate();
 	
+	/**
+	 * Returns the earliest simulation time when calling 
+	 * {@link #update(DTNHost)} may have some effect if the host has no 
+	 * connections and doesn't move. Used by the event driven mode of
+	 * {@link World}. This implementation returns the current time, i.e., 
+	 * the application must be updated on every update interval.
+	 * @return The next time the application needs to be updated
+	 */
+	public double nextUpdateTime() {
+		return context.getClock().getSimTime();
+	}
+	
 	public void setAppListeners (List<ApplicationListener> aListeners){
 		this.aListeners = aListeners;
 	}
@@ -11,7 +11,11 @@ import routing.MessageRouter;
  */
 public class CBRConnection extends Connection {
 	private int speed;
+	/** speed of the transfers (at most the speed of the connection) */
+	private double transferSpeed;
 	private double transferDoneTime;
+	/** the time of the latest change of the transfer speed */
+	private double speedChangeTime;
 
 	/**
 	 * Creates a new connection between nodes and sets the connection
@@ -27,6 +31,7 @@ public class CBRConnection extends Connection {
 			DTNHost toNode,	NetworkInterface toInterface, int connectionSpeed) {
 		super(fromNode, fromInterface, toNode, toInterface);
 		this.speed = connectionSpeed;
+		this.transferSpeed = connectionSpeed;
 		this.transferDoneTime = 0;
 
 	}
@@ -55,7 +60,8 @@ public class CBRConnection extends Connection {
 		if (retVal == MessageRouter.RCV_OK) {
 			this.msgOnFly = newMessage;
 			this.transferDoneTime = SimClock.getTime() + 
-			(1.0*m.getSize()) / this.speed;
+			(1.0*m.getSize()) / this.transferSpeed;
+			this.speedChangeTime = SimClock.getTime();
 		}
 
 		return retVal;
@@ -87,6 +93,29 @@ public class CBRConnection extends Connection {
 		return getRemainingByteCount() == 0;
 	}
 
+	/**
+	 * Sets the speed of the current and the following transfers, e.g., when
+	 * the bandwidth of a host is shared by multiple transfers. The rest of
+	 * the current transfer proceeds with the new speed starting from the
+	 * given time.
+	 * @param transferSpeed The new speed (Bps); at most the speed of the
+	 * connection
+	 * @param time The time when the speed changed; not after the current 
+	 * time. Times before the start of the current transfer or the previous
+	 * speed change are treated as the time of that event.
+	 */
+	public void setTransferSpeed(double transferSpeed, double time) {
+		double newSpeed = Math.min(transferSpeed, this.speed);
+		if (this.msgOnFly != null) {
+			time = Math.max(time, this.speedChangeTime);
+			double remaining = (this.transferDoneTime - time) * 
+				this.transferSpeed;
+			this.transferDoneTime = time + remaining / newSpeed;
+			this.speedChangeTime = time;
+		}
+		this.transferSpeed = newSpeed;
+	}
+
 	/**
 	 * returns the current speed of the connection
 	 */
@@ -108,7 +137,7 @@ public class CBRConnection extends Connection {
 		}
 
 		remaining = (int)((this.transferDoneTime - SimClock.getTime()) 
-				* this.speed);
+				* this.transferSpeed);
 
 		return (remaining > 0 ? remaining : 0);
 	}
@@ -17,7 +17,7 @@ import routing.RoutingInfo;
  * A DTN capable host.
  */
 public class DTNHost implements Comparable<DTNHost> {
-	private static int nextAddress = 0;
+	private SimContext context;
 	private int address;
 
 	private Coord location; 	// where is the host
@@ -53,9 +53,10 @@ public class DTNHost implements Comparable<DTNHost> {
 			String groupId, List<NetworkInterface> interf,
 			ModuleCommunicationBus comBus, 
 			MovementModel mmProto, MessageRouter mRouterProto) {
+		this.context = SimContext.getCurrent();
 		this.comBus = comBus;
 		this.location = new Coord(0,0);
-		this.address = getNextAddress();
+		this.address = context.nextHostAddress();
 		this.name = groupId+address;
 		this.net = new ArrayList<NetworkInterface>();
 
@@ -89,19 +90,18 @@ public class DTNHost implements Comparable<DTNHost> {
 	}
 	
 	/**
-	 * Returns a new network interface address and increments the address for
-	 * subsequent calls.
-	 * @return The next address.
+	 * Reset the host addresses of the current context
 	 */
-	private synchronized static int getNextAddress() {
-		return nextAddress++;	
+	public static void reset() {
+		SimContext.getCurrent().resetHostAddresses();
 	}
 
 	/**
-	 * Reset the host and its interfaces
+	 * Returns the simulation context this host belongs to
+	 * @return The context of the host
 	 */
-	public static void reset() {
-		nextAddress = 0;
+	public SimContext getContext() {
+		return this.context;
 	}
 
 	/**
@@ -340,7 +340,8 @@ public class DTNHost implements Comparable<DTNHost> {
 		double distance;
 		double dx, dy;
 
-		if (!isActive() || SimClock.getTime() < this.nextTimeToMove) {
+		if (!isActive() || 
+				context.getClock().getSimTime() < this.nextTimeToMove) {
 			return; 
 		}
 		if (this.destination == null) {
@@ -370,6 +371,85 @@ public class DTNHost implements Comparable<DTNHost> {
 		this.location.translate(dx, dy);
 	}	
 
+	/**
+	 * Moves the node towards the next waypoint if the node doesn't reach it
+	 * during the given time. Unlike {@link #move(double)}, this method never 
+	 * requests new waypoints or paths and doesn't inform the movement 
+	 * listeners so it can be called concurrently for different hosts.
+	 * @param timeIncrement How long time the node moves
+	 * @return True if the movement for the time increment was done (or
+	 * the node isn't moving), false if the node needs a new waypoint and
+	 * {@link #move(double)} should be called instead
+	 */
+	boolean moveOnSegment(double timeIncrement) {
+		double possibleMovement;
+		double distance;
+		double dx, dy;
+
+		if (!isActive() || 
+				context.getClock().getSimTime() < this.nextTimeToMove) {
+			return true; 
+		}
+		if (this.destination == null) {
+			return false;
+		}
+
+		possibleMovement = timeIncrement * speed;
+		distance = this.location.distance(this.destination);
+
+		if (possibleMovement >= distance) {
+			return false; // reaches the waypoint
+		}
+
+		dx = (possibleMovement/distance) * (this.destination.getX() -
+				this.location.getX());
+		dy = (possibleMovement/distance) * (this.destination.getY() -
+				this.location.getY());
+		this.location.translate(dx, dy);
+		return true;
+	}
+
+	/**
+	 * Returns the earliest simulation time when this node may start moving,
+	 * i.e., the current time if it is moving or about to request a new 
+	 * path, the end of its waiting time if it is waiting, or the next 
+	 * activeness change if it is inactive.
+	 * @return The next time the node may move
+	 */
+	double getNextMoveTime() {
+		double now = context.getClock().getSimTime();
+		double next = movement.nextActivenessChange();
+		if (!isActive()) {
+			return next;
+		}
+		if (this.path != null || this.nextTimeToMove <= now) {
+			return now;
+		}
+		return Math.min(next, this.nextTimeToMove);
+	}
+
+	/**
+	 * Returns the earliest simulation time when updating or moving this
+	 * node may have some effect. The node must be updated (or moved) on 
+	 * every update interval if it is moving, has connections, uses a 
+	 * scanning interval, or its router or applications so require.
+	 * @return The next time the node needs to be updated or moved
+	 * @see World#update()
+	 */
+	double getNextUpdateTime() {
+		double next = getNextMoveTime();
+		if (!isActive()) {
+			return next;
+		}
+		for (int i=0, n = net.size(); i < n; i++) {
+			NetworkInterface ni = net.get(i);
+			if (ni.getConnections().size() > 0 || !ni.scansContinuously()) {
+				return context.getClock().getSimTime();
+			}
+		}
+		return Math.min(next, this.router.nextUpdateTime());
+	}
+
 	/**
 	 * Sets the next destination and speed to correspond the next waypoint
 	 * on the path.
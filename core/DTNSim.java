@@ -78,11 +78,18 @@ public class DTNSim {
 		
 		if (batchMode) {
 			long startTime = System.currentTimeMillis();
-			for (int i=nrofRuns[0]; i<nrofRuns[1]; i++) {
-				print("Run " + (i+1) + "/" + nrofRuns[1]);
-				Settings.setRunIndex(i);
-				resetForNextRun();
-				new DTNSimTextUI().start();
+			int nrofThreads = getNrofParallelRuns(nrofRuns[1] - nrofRuns[0]);
+			if (nrofThreads > 1) {
+				new ParallelBatchRunner(confFiles, firstConfIndex,
+						nrofThreads).run(nrofRuns[0], nrofRuns[1]);
+			}
+			else {
+				for (int i=nrofRuns[0]; i<nrofRuns[1]; i++) {
+					print("Run " + (i+1) + "/" + nrofRuns[1]);
+					Settings.setRunIndex(i);
+					resetForNextRun();
+					new DTNSimTextUI().start();
+				}
 			}
 			double duration = (System.currentTimeMillis() - startTime)/1000.0;
 			print("---\nAll done in " + String.format("%.2f", duration) + "s");
@@ -93,6 +100,45 @@ public class DTNSim {
 		}
 	}
 	
+	/**
+	 * Runs a single batch run. Used by {@link ParallelBatchRunner} for the
+	 * runs that are executed concurrently: every run has its own copy of 
+	 * this class (loaded with a separate class loader) so the settings are 
+	 * read again and all the static state is private to the run.
+	 * @param confFiles The command line arguments
+	 * @param firstConfIndex Index of the first config file name
+	 * @param runIndex Index of the run
+	 * @param lastRun Number of the last run in the batch
+	 */
+	public static void runIsolated(String[] confFiles, int firstConfIndex,
+			int runIndex, int lastRun) {
+		java.util.Locale.setDefault(java.util.Locale.US);
+		initSettings(confFiles, firstConfIndex);
+		print("Run " + (runIndex+1) + "/" + lastRun);
+		Settings.setRunIndex(runIndex);
+		new DTNSimTextUI().start();
+	}
+
+	/**
+	 * Returns the number of batch runs to execute concurrently
+	 * @param nrofRuns Number of runs in the batch
+	 * @return The number of worker threads (1 for sequential runs)
+	 */
+	private static int getNrofParallelRuns(int nrofRuns) {
+		Settings s = new Settings(World.SETTINGS_NS);
+		int nrofThreads = World.DEF_PARALLEL_RUNS;
+		if (s.contains(World.PARALLEL_RUNS_S)) {
+			nrofThreads = s.getInt(World.PARALLEL_RUNS_S);
+		}
+		if (nrofThreads > 1 && 
+				new Settings().contains(Settings.SETTING_OUTPUT_S)) {
+			System.err.println("Warning: " + Settings.SETTING_OUTPUT_S + 
+					" is set; batch runs are executed sequentially");
+			return 1;
+		}
+		return Math.min(nrofThreads, nrofRuns);
+	}
+	
 	/**
 	 * Initializes Settings
 	 * @param confFiles File name paths where to read additional settings 
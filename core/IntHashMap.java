@@ -0,0 +1,236 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Hash map with primitive int keys. The keys and values are stored in
+ * arrays using open addressing with linear probing, so no entry objects or
+ * boxed keys are created. Null values are not allowed.
+ * @param <V> Type of the values
+ */
+public class IntHashMap<V> {
+	/** Initial capacity of the arrays (must be a power of two) */
+	private static final int INIT_CAPACITY = 16;
+
+	private int[] keys;
+	/** the values; null value means that the slot is free */
+	private Object[] values;
+	private int size;
+	private int mask;
+	/** number of modifications, for detecting concurrent modifications */
+	private int modCount;
+
+	/**
+	 * Constructor. Creates an empty map.
+	 */
+	public IntHashMap() {
+		this.keys = new int[INIT_CAPACITY];
+		this.values = new Object[INIT_CAPACITY];
+		this.mask = INIT_CAPACITY - 1;
+	}
+
+	/**
+	 * Returns the slot where the probing for a key starts
+	 * @param key The key
+	 * @return Index of the slot
+	 */
+	private int slotFor(int key) {
+		int h = key * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	/**
+	 * Returns the slot of a key
+	 * @param key The key
+	 * @return Index of the slot or -1 if the key isn't in the map
+	 */
+	private int find(int key) {
+		for (int i = slotFor(key); values[i] != null; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the value of a key
+	 * @param key The key
+	 * @return The value or null if the key isn't in the map
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(int key) {
+		int i = find(key);
+		return i >= 0 ? (V)values[i] : null;
+	}
+
+	/**
+	 * Returns true if the map contains a key
+	 * @param key The key
+	 * @return True if the key is in the map
+	 */
+	public boolean containsKey(int key) {
+		return find(key) >= 0;
+	}
+
+	/**
+	 * Sets the value of a key
+	 * @param key The key
+	 * @param value The value (not null)
+	 * @return The previous value of the key or null if it had none
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(int key, V value) {
+		if (value == null) {
+			throw new NullPointerException("Null values are not allowed");
+		}
+
+		int i = slotFor(key);
+		for (; values[i] != null; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				V old = (V)values[i];
+				values[i] = value;
+				return old;
+			}
+		}
+
+		keys[i] = key;
+		values[i] = value;
+		size++;
+		modCount++;
+		if (size * 2 > values.length) {
+			resize(values.length * 2);
+		}
+		return null;
+	}
+
+	/**
+	 * Removes a key from the map
+	 * @param key The key
+	 * @return The value of the removed key or null if it wasn't in the map
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(int key) {
+		int i = find(key);
+		if (i < 0) {
+			return null;
+		}
+
+		V old = (V)values[i];
+		/* shift the following entries of the probe sequence backwards */
+		for (int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+			int home = slotFor(keys[j]);
+			if (((j - home) & mask) >= ((j - i) & mask)) {
+				keys[i] = keys[j];
+				values[i] = values[j];
+				i = j;
+			}
+		}
+		values[i] = null;
+		size--;
+		modCount++;
+		return old;
+	}
+
+	/**
+	 * Returns the number of keys in the map
+	 * @return The number of keys
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Removes all the keys from the map
+	 */
+	public void clear() {
+		Arrays.fill(values, null);
+		size = 0;
+		modCount++;
+	}
+
+	/**
+	 * Returns a read-only view of the values of the map. The map must not be
+	 * modified while the view is iterated.
+	 * @return The values
+	 */
+	public Collection<V> values() {
+		return new AbstractCollection<V>() {
+			@Override
+			public Iterator<V> iterator() {
+				return new Iterator<V>() {
+					private int next = nextUsed(0);
+					private int expectedModCount = modCount;
+
+					public boolean hasNext() {
+						return next < values.length;
+					}
+
+					@SuppressWarnings("unchecked")
+					public V next() {
+						if (modCount != expectedModCount) {
+							throw new ConcurrentModificationException();
+						}
+						if (next >= values.length) {
+							throw new NoSuchElementException();
+						}
+						V value = (V)values[next];
+						next = nextUsed(next + 1);
+						return value;
+					}
+
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	/**
+	 * Returns the index of the first used slot starting from the given index
+	 */
+	private int nextUsed(int i) {
+		while (i < values.length && values[i] == null) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Moves the entries to new arrays of the given size
+	 * @param capacity The new size (a power of two)
+	 */
+	private void resize(int capacity) {
+		int[] oldKeys = keys;
+		Object[] oldValues = values;
+		keys = new int[capacity];
+		values = new Object[capacity];
+		mask = capacity - 1;
+
+		for (int j = 0; j < oldValues.length; j++) {
+			if (oldValues[j] != null) {
+				int i = slotFor(oldKeys[j]);
+				while (values[i] != null) {
+					i = (i + 1) & mask;
+				}
+				keys[i] = oldKeys[j];
+				values[i] = oldValues[j];
+			}
+		}
+	}
+}
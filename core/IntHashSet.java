@@ -0,0 +1,121 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+/**
+ * Hash set of primitive int values. The values are stored in an array
+ * using open addressing with linear probing, so no boxing is needed.
+ */
+public class IntHashSet {
+	/** Initial capacity of the arrays (must be a power of two) */
+	private static final int INIT_CAPACITY = 16;
+
+	private int[] elements;
+	/** which slots are in use */
+	private boolean[] used;
+	private int size;
+	private int mask;
+
+	/**
+	 * Constructor. Creates an empty set.
+	 */
+	public IntHashSet() {
+		this.elements = new int[INIT_CAPACITY];
+		this.used = new boolean[INIT_CAPACITY];
+		this.mask = INIT_CAPACITY - 1;
+	}
+
+	/**
+	 * Returns the slot where the probing for a value starts
+	 * @param value The value
+	 * @return Index of the slot
+	 */
+	private int slotFor(int value) {
+		int h = value * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	/**
+	 * Returns true if the set contains a value
+	 * @param value The value
+	 * @return True if the value is in the set
+	 */
+	public boolean contains(int value) {
+		for (int i = slotFor(value); used[i]; i = (i + 1) & mask) {
+			if (elements[i] == value) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Adds a value to the set
+	 * @param value The value
+	 * @return True if the value was added, false if it was already in the set
+	 */
+	public boolean add(int value) {
+		int i = slotFor(value);
+		for (; used[i]; i = (i + 1) & mask) {
+			if (elements[i] == value) {
+				return false;
+			}
+		}
+
+		elements[i] = value;
+		used[i] = true;
+		size++;
+		if (size * 2 > used.length) {
+			resize(used.length * 2);
+		}
+		return true;
+	}
+
+	/**
+	 * Adds all the values of another set to this set
+	 * @param set The other set
+	 * @return True if any values were added
+	 */
+	public boolean addAll(IntHashSet set) {
+		boolean changed = false;
+		for (int i = 0; i < set.used.length; i++) {
+			if (set.used[i]) {
+				changed |= add(set.elements[i]);
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Returns the number of values in the set
+	 * @return The number of values
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Moves the values to new arrays of the given size
+	 * @param capacity The new size (a power of two)
+	 */
+	private void resize(int capacity) {
+		int[] oldElements = elements;
+		boolean[] oldUsed = used;
+		elements = new int[capacity];
+		used = new boolean[capacity];
+		mask = capacity - 1;
+
+		for (int j = 0; j < oldUsed.length; j++) {
+			if (oldUsed[j]) {
+				int i = slotFor(oldElements[j]);
+				while (used[i]) {
+					i = (i + 1) & mask;
+				}
+				elements[i] = oldElements[j];
+				used[i] = true;
+			}
+		}
+	}
+}
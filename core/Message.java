@@ -4,14 +4,16 @@
  */
 package core;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 /**
  * A message that is created at a node or passed between nodes.
+ * Replicates of a message share the parts that are the same for all of
+ * them: the common beginning of their paths and, until one of them 
+ * modifies its properties, the properties.
  */
 public class Message implements Comparable<Message> {
 	/** Value for infinite TTL of message */
@@ -22,12 +24,15 @@ public class Message implements Comparable<Message> {
 	private String id;
 	/** Size of the message (bytes) */
 	private int size;
-	/** List of nodes this message has passed */
-	private List<DTNHost> path; 
-	/** Next unique identifier to be given */
-	private static int nextUniqueId;
+	/** Last node this message has passed; the rest of the nodes are linked
+	 * from it (the hops are shared by the replicates) */
+	private Hop lastHop;
+	/** List view of the nodes this message has passed (created lazily) */
+	private HopList hopList;
 	/** Unique ID of this message */
 	private int uniqueId;
+	/** Interned integer form of the identifier */
+	private int intId;
 	/** The time this message was received */
 	private double timeReceived;
 	/** The time when this message was created */
@@ -45,6 +50,9 @@ public class Message implements Comparable<Message> {
 	 * stored in the properties should be immutable because only a shallow
 	 * copy of the properties is made when replicating messages */
 	private Map<String, Object> properties;
+	/** Is the properties container shared with other replicates (and must
+	 * be copied before modifying it) */
+	private boolean propertiesShared;
 	
 	/** Application ID of the application that created the message */
 	private String	appID;
@@ -67,10 +75,12 @@ public class Message implements Comparable<Message> {
 		this.to = to;
 		this.id = id;
 		this.size = size;
-		this.path = new ArrayList<DTNHost>();
-		this.uniqueId = nextUniqueId;
+		SimContext context = from != null ? from.getContext() : 
+			SimContext.getCurrent();
+		this.uniqueId = context.nextMessageId();
+		this.intId = context.internMessageId(id);
 		
-		this.timeCreated = SimClock.getTime();
+		this.timeCreated = context.getClock().getSimTime();
 		this.timeReceived = this.timeCreated;
 		this.initTtl = INFINITE_TTL;
 		this.responseSize = 0;
@@ -78,10 +88,27 @@ public class Message implements Comparable<Message> {
 		this.properties = null;
 		this.appID = null;
 		
-		Message.nextUniqueId++;
 		addNodeOnPath(from);
 	}
 	
+	/**
+	 * Creates a replicate of a message. The replicate is identical except
+	 * for the unique ID and the receive time (which is the current time). 
+	 * @param m The message to replicate
+	 */
+	protected Message(Message m) {
+		this.from = m.from;
+		this.to = m.to;
+		this.id = m.id;
+		this.size = m.size;
+		SimContext context = from != null ? from.getContext() : 
+			SimContext.getCurrent();
+		this.uniqueId = context.nextMessageId();
+		this.intId = m.intId;
+		this.timeReceived = context.getClock().getSimTime();
+		copyFrom(m);
+	}
+	
 	/**
 	 * Returns the node this message is originally from
 	 * @return the node this message is originally from
@@ -106,6 +133,17 @@ public class Message implements Comparable<Message> {
 		return this.id;
 	}
 	
+	/**
+	 * Returns the integer form of the ID of the message. All the replicates
+	 * of a message (and only them) have the same integer ID, so it can be
+	 * used instead of {@link #getId()} for identifying messages.
+	 * @return The integer ID
+	 * @see SimContext#internMessageId(String)
+	 */
+	public int getIntId() {
+		return this.intId;
+	}
+	
 	/**
 	 * Returns an ID that is unique per message instance 
 	 * (different for replicates too)
@@ -128,15 +166,19 @@ public class Message implements Comparable<Message> {
 	 * @param node The node to add
 	 */
 	public void addNodeOnPath(DTNHost node) {
-		this.path.add(node);
+		this.lastHop = new Hop(node, this.lastHop);
+		this.hopList = null;
 	}
 	
 	/**
 	 * Returns a list of nodes this message has passed so far
-	 * @return The list as vector
+	 * @return The list (read-only)
 	 */
 	public List<DTNHost> getHops() {
-		return this.path;
+		if (this.hopList == null) {
+			this.hopList = new HopList(this.lastHop);
+		}
+		return this.hopList;
 	}
 	
 	/**
@@ -144,7 +186,7 @@ public class Message implements Comparable<Message> {
 	 * @return the amount of hops this message has passed
 	 */
 	public int getHopCount() {
-		return this.path.size() -1;
+		return (lastHop != null ? lastHop.count : 0) - 1;
 	}
 	
 	/** 
@@ -198,6 +240,18 @@ public class Message implements Comparable<Message> {
 		return this.timeCreated;
 	}
 	
+	/**
+	 * Returns the time when the initial TTL of this message has passed.
+	 * Messages with a smaller expiry time never have a larger TTL.
+	 * @return The expiry time or Double.MAX_VALUE if the TTL is infinite
+	 */
+	public double getExpiryTime() {
+		if (this.initTtl == INFINITE_TTL) {
+			return Double.MAX_VALUE;
+		}
+		return this.timeCreated + this.initTtl * 60;
+	}
+	
 	/**
 	 * If this message is a response to a request, sets the request message
 	 * @param request The request message
@@ -250,13 +304,16 @@ public class Message implements Comparable<Message> {
 	}
 
 	/**
-	 * Deep copies message data from other message. If new fields are
+	 * Copies message data from other message. The path and the properties
+	 * are shared with the other message and copied only when either of
+	 * the messages modifies them. If new fields are
 	 * introduced to this class, most likely they should be copied here too
 	 * (unless done in constructor).
 	 * @param m The message where the data is copied
 	 */
 	protected void copyFrom(Message m) {
-		this.path = new ArrayList<DTNHost>(m.path);
+		this.lastHop = m.lastHop;
+		this.hopList = null;
 		this.timeCreated = m.timeCreated;
 		this.responseSize = m.responseSize;
 		this.requestMsg  = m.requestMsg;
@@ -264,13 +321,28 @@ public class Message implements Comparable<Message> {
 		this.appID = m.appID;
 		
 		if (m.properties != null) {
-			Set<String> keys = m.properties.keySet();
-			for (String key : keys) {
-				updateProperty(key, m.getProperty(key));
+			if (this.properties == null) {
+				this.properties = m.properties;
+				this.propertiesShared = true;
+				m.propertiesShared = true;
+			}
+			else {
+				copyPropertiesIfShared();
+				this.properties.putAll(m.properties);
 			}
 		}
 	}
 	
+	/**
+	 * Makes a private copy of the properties if they are shared
+	 */
+	private void copyPropertiesIfShared() {
+		if (this.propertiesShared) {
+			this.properties = new HashMap<String, Object>(this.properties);
+			this.propertiesShared = false;
+		}
+	}
+	
 	/**
 	 * Adds a generic property for this message. The key can be any string but 
 	 * it should be such that no other class accidently uses the same value.
@@ -318,6 +390,7 @@ public class Message implements Comparable<Message> {
 			this.properties = new HashMap<String, Object>();
 		}		
 
+		copyPropertiesIfShared();
 		this.properties.put(key, value);
 	}
 	
@@ -326,9 +399,7 @@ public class Message implements Comparable<Message> {
 	 * @return A replicate of the message
 	 */
 	public Message replicate() {
-		Message m = new Message(from, to, id, size);
-		m.copyFrom(this);
-		return m;
+		return new Message(this);
 	}
 	
 	/**
@@ -343,7 +414,7 @@ public class Message implements Comparable<Message> {
 	 * Resets all static fields to default values
 	 */
 	public static void reset() {
-		nextUniqueId = 0;
+		SimContext.getCurrent().resetMessageIds();
 	}
 
 	/**
@@ -360,4 +431,62 @@ public class Message implements Comparable<Message> {
 		this.appID = appID;
 	}
 	
+	/**
+	 * A node on the path of a message. The hops are never modified so the
+	 * paths of the replicates can share them.
+	 */
+	private static final class Hop {
+		private final DTNHost node;
+		/** the previous hop or null if this is the first hop */
+		private final Hop prev;
+		/** number of hops up to and including this hop */
+		private final int count;
+		
+		public Hop(DTNHost node, Hop prev) {
+			this.node = node;
+			this.prev = prev;
+			this.count = (prev != null ? prev.count : 0) + 1;
+		}
+	}
+	
+	/**
+	 * Read-only list view of the hops of a path, first hop first. The
+	 * hops are copied to an array only when the list is accessed by index.
+	 */
+	private static final class HopList extends AbstractList<DTNHost> {
+		private final Hop last;
+		private DTNHost[] nodes;
+		
+		public HopList(Hop last) {
+			this.last = last;
+		}
+		
+		@Override
+		public DTNHost get(int index) {
+			if (nodes == null) {
+				nodes = new DTNHost[size()];
+				int i = nodes.length;
+				for (Hop h = last; h != null; h = h.prev) {
+					nodes[--i] = h.node;
+				}
+			}
+			return nodes[index];
+		}
+		
+		@Override
+		public int size() {
+			return last != null ? last.count : 0;
+		}
+		
+		@Override
+		public boolean contains(Object o) {
+			for (Hop h = last; h != null; h = h.prev) {
+				if (o == null ? h.node == null : o.equals(h.node)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+	
 }
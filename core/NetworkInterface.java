@@ -6,6 +6,7 @@ package core;
 
 import interfaces.ConnectivityGrid;
 import interfaces.ConnectivityOptimizer;
+import interfaces.SweepAndPruneOptimizer;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -21,6 +22,15 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	public static final String TRANSMIT_SPEED_S = "transmitSpeed";
 	/** scanning interval -setting id ({@value})*/
 	public static final String SCAN_INTERVAL_S = "scanInterval";
+	/** connectivity optimizer -setting id ({@value}). Name of the class
+	 * that is used for finding the interfaces that are close enough to be 
+	 * connected: {@value #GRID_OPTIMIZER} (default) or 
+	 * {@value #SAP_OPTIMIZER} */
+	public static final String OPTIMIZER_S = "connectivityOptimizer";
+	/** value of the optimizer setting for the cell grid optimizer */
+	public static final String GRID_OPTIMIZER = "ConnectivityGrid";
+	/** value of the optimizer setting for the sweep-and-prune optimizer */
+	public static final String SAP_OPTIMIZER = "SweepAndPruneOptimizer";
 	
 	/** {@link ModuleCommunicationBus} identifier for the "scanning interval" 
     variable. */
@@ -34,7 +44,6 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	
 	private static final int CON_UP = 1;
 	private static final int CON_DOWN = 2;
-	private static int nextAddress = 0;
 	private static Random rng;
 	protected DTNHost host = null;
 
@@ -45,6 +54,8 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	protected double transmitRange;
 	protected int transmitSpeed;
 	protected ConnectivityOptimizer optimizer = null;
+	/** name of the optimizer class */
+	private String optimizerType = GRID_OPTIMIZER;
 	/** scanning interval, or 0.0 if n/a */
 	private double scanInterval;
 	private double lastScanTime;
@@ -59,7 +70,7 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 * Resets the static fields of the class
 	 */
 	public static void reset() {
-		nextAddress = 0;
+		SimContext.getCurrent().resetInterfaceAddresses();
 		rng = new Random(0);
 	}
 	
@@ -80,6 +91,15 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		} else {
 			this.scanInterval = 0;
 		}
+		if (s.contains(OPTIMIZER_S)) {
+			this.optimizerType = s.getSetting(OPTIMIZER_S);
+			if (!optimizerType.equals(GRID_OPTIMIZER) && 
+					!optimizerType.equals(SAP_OPTIMIZER)) {
+				throw new SettingsError("Unknown connectivity optimizer '" + 
+						optimizerType + "' for " + s.getFullPropertyName(
+								OPTIMIZER_S));
+			}
+		}
 	}
 	
 	/**
@@ -102,6 +122,7 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		this.interfacetype = ni.interfacetype;
 		this.transmitRange = ni.transmitRange;
 		this.transmitSpeed = ni.transmitSpeed;
+		this.optimizerType = ni.optimizerType;
 		
 		/* draw lastScanTime of [0 -- scanInterval] */
 		this.lastScanTime = rng.nextDouble() * scanInterval;
@@ -124,8 +145,14 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		comBus.subscribe(RANGE_ID, this);
 		comBus.subscribe(SPEED_ID, this);
 		
-		optimizer = ConnectivityGrid.ConnectivityGridFactory(
-				this.interfacetype.hashCode(), transmitRange);
+		if (optimizerType.equals(SAP_OPTIMIZER)) {
+			optimizer = SweepAndPruneOptimizer.getOptimizer(
+					this.interfacetype.hashCode());
+		}
+		else {
+			optimizer = ConnectivityGrid.ConnectivityGridFactory(
+					this.interfacetype.hashCode(), transmitRange);
+		}
 		optimizer.addInterface(this);		
 	}
 
@@ -149,8 +176,8 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 * subsequent calls.
 	 * @return The next address.
 	 */
-	private synchronized static int getNextNetAddress() {
-		return nextAddress++;	
+	private static int getNextNetAddress() {
+		return SimContext.getCurrent().nextInterfaceAddress();	
 	}
 
 	/**
@@ -185,6 +212,15 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		return this.connections;
 	}
 	
+	/**
+	 * Returns true if this interface scans on every update (i.e., it has no
+	 * scanning interval)
+	 * @return true if the interface scans continuously
+	 */
+	boolean scansContinuously() {
+		return this.scanInterval == 0;
+	}
+	
 	/**
 	 * Checks if this interface is currently in the scanning mode
 	 * @return True if the interface is scanning; false if not
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * <P>Executes batch runs concurrently with a bounded pool of worker
+ * threads. The simulator keeps its state in static fields (see
+ * {@link DTNSim#registerForReset(String)}), so every run loads the
+ * simulator classes with its own class loader. This way each run has a
+ * private copy of all the static state, including the default
+ * {@link SimContext}, and the runs can't affect each other; the reports
+ * are identical to the ones of sequential runs.</P>
+ *
+ * <P>The standard output of every run is buffered and printed in the order
+ * of the run indexes, as soon as all the preceding runs have finished.
+ * Output is assigned to a run by the context class loader of the writing
+ * thread, so the output of the threads a run starts itself (e.g. the move
+ * pool of {@link World}) must be set to use the run's class loader.
+ * A progress line is printed whenever a run finishes.</P>
+ */
+public class ParallelBatchRunner {
+	/** Name of the method that runs a single isolated run */
+	public static final String RUN_METHOD_NAME = "runIsolated";
+
+	private String[] confFiles;
+	private int firstConfIndex;
+	private int nrofThreads;
+	private URL[] classPath;
+
+	/** the console's output stream */
+	private PrintStream console;
+	/** output buffers of the running runs by their class loaders */
+	private ConcurrentHashMap<ClassLoader, ByteArrayOutputStream> runOutputs;
+
+	/**
+	 * Constructor.
+	 * @param confFiles The command line arguments
+	 * @param firstConfIndex Index of the first config file name
+	 * @param nrofThreads Maximum number of concurrent runs
+	 */
+	public ParallelBatchRunner(String[] confFiles, int firstConfIndex,
+			int nrofThreads) {
+		this.confFiles = confFiles;
+		this.firstConfIndex = firstConfIndex;
+		this.nrofThreads = nrofThreads;
+		this.classPath = parseClassPath(System.getProperty("java.class.path"));
+		this.runOutputs = 
+			new ConcurrentHashMap<ClassLoader, ByteArrayOutputStream>();
+	}
+
+	/**
+	 * Executes the runs and returns when all of them have finished
+	 * @param firstRun Index of the first run
+	 * @param lastRun Index of the last run + 1
+	 */
+	public void run(int firstRun, int lastRun) {
+		int nrofRuns = lastRun - firstRun;
+		ExecutorService pool = Executors.newFixedThreadPool(nrofThreads);
+		CompletionService<byte[]> runs =
+			new ExecutorCompletionService<byte[]>(pool);
+		List<Future<byte[]>> futures = new ArrayList<Future<byte[]>>();
+
+		this.console = System.out;
+		System.setOut(new PrintStream(new RunOutputStream(), true));
+
+		try {
+			for (int i = firstRun; i < lastRun; i++) {
+				futures.add(runs.submit(new RunTask(i, lastRun)));
+			}
+
+			int nextToPrint = 0;
+			for (int done = 1; done <= nrofRuns; done++) {
+				Future<byte[]> finished = runs.take();
+				finished.get(); /* throws if the run failed */
+				console.println("Run " + (firstRun + futures.indexOf(finished)
+						+ 1) + " finished (" + done + "/" + nrofRuns + 
+						" runs done)");
+
+				/* print outputs of all finished runs that are in turn */
+				while (nextToPrint < nrofRuns && 
+						futures.get(nextToPrint).isDone()) {
+					byte[] output = futures.get(nextToPrint).get();
+					console.write(output, 0, output.length);
+					nextToPrint++;
+				}
+			}
+		} catch (InterruptedException e) {
+			throw new SimError("Batch run interrupted", e);
+		} catch (ExecutionException e) {
+			throw new SimError("Batch run failed", 
+					e.getCause() instanceof Exception ? 
+					(Exception)e.getCause() : e);
+		} finally {
+			System.setOut(console);
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Converts a class path string to an array of URLs
+	 * @param classPath The class path
+	 * @return URLs of the class path entries
+	 */
+	private static URL[] parseClassPath(String classPath) {
+		String[] entries = classPath.split(File.pathSeparator);
+		URL[] urls = new URL[entries.length];
+		try {
+			for (int i = 0; i < entries.length; i++) {
+				urls[i] = new File(entries[i]).toURI().toURL();
+			}
+		} catch (MalformedURLException e) {
+			throw new SimError("Invalid class path " + classPath, e);
+		}
+		return urls;
+	}
+
+	/**
+	 * Task that executes one run in its own class loader
+	 */
+	private class RunTask implements Callable<byte[]> {
+		private int runIndex;
+		private int lastRun;
+
+		public RunTask(int runIndex, int lastRun) {
+			this.runIndex = runIndex;
+			this.lastRun = lastRun;
+		}
+
+		/**
+		 * Executes the run and returns its standard output
+		 */
+		public byte[] call() throws Exception {
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			RunClassLoader loader = new RunClassLoader(classPath);
+			Thread thread = Thread.currentThread();
+			ClassLoader oldLoader = thread.getContextClassLoader();
+			runOutputs.put(loader, buffer);
+			thread.setContextClassLoader(loader);
+			try {
+				Class<?> sim = loader.loadClass(DTNSim.class.getName());
+				Method m = sim.getMethod(RUN_METHOD_NAME, String[].class,
+						int.class, int.class, int.class);
+				m.invoke(null, confFiles, firstConfIndex, runIndex, lastRun);
+			} catch (InvocationTargetException e) {
+				throw (Exception)(e.getCause() instanceof Exception ?
+						e.getCause() : e);
+			} finally {
+				thread.setContextClassLoader(oldLoader);
+				runOutputs.remove(loader);
+				loader.close();
+			}
+
+			return buffer.toByteArray();
+		}
+	}
+
+	/**
+	 * Output stream that directs the output of the runs to their buffers
+	 * and all other output to the console
+	 */
+	private class RunOutputStream extends OutputStream {
+		/**
+		 * Returns the output buffer of the run the calling thread works for
+		 * @return The buffer or null if the thread isn't running any run
+		 */
+		private ByteArrayOutputStream getBuffer() {
+			ClassLoader loader = Thread.currentThread().getContextClassLoader();
+			return loader != null ? runOutputs.get(loader) : null;
+		}
+		
+		@Override
+		public void write(int b) throws IOException {
+			ByteArrayOutputStream buffer = getBuffer();
+			if (buffer != null) {
+				buffer.write(b);
+			} else {
+				console.write(b);
+			}
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			ByteArrayOutputStream buffer = getBuffer();
+			if (buffer != null) {
+				buffer.write(b, off, len);
+			} else {
+				console.write(b, off, len);
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			console.flush();
+		}
+	}
+
+	/**
+	 * Class loader that loads the classes from the class path itself
+	 * before asking from the parent, so all the simulator classes (and their
+	 * static fields) are separate from the ones of other runs.
+	 */
+	private static class RunClassLoader extends URLClassLoader {
+		public RunClassLoader(URL[] urls) {
+			super(urls, RunClassLoader.class.getClassLoader());
+		}
+
+		@Override
+		protected Class<?> loadClass(String name, boolean resolve)
+			throws ClassNotFoundException {
+			synchronized (getClassLoadingLock(name)) {
+				Class<?> c = findLoadedClass(name);
+				if (c == null) {
+					try {
+						c = findClass(name);
+					} catch (ClassNotFoundException e) {
+						return super.loadClass(name, resolve);
+					}
+				}
+				if (resolve) {
+					resolveClass(c);
+				}
+				return c;
+			}
+		}
+	}
+}
@@ -35,8 +35,6 @@ import java.util.Stack;
  * </P> 
  */
 public class Settings {
-	/** properties object where the setting files are read into */
-	protected static Properties props;
 	/** file name of the default settings file ({@value}) */
 	public static final String DEF_SETTINGS_FILE ="default_settings.txt";
 	
@@ -55,8 +53,6 @@ public class Settings {
 	private static PrintStream out = null;
 	private static Set<String> writtenSettings = new HashSet<String>();
 	
-	/** run index for run-specific settings */
-	private static int runIndex = 0;
 	private String namespace = null; // namespace to look the settings from
 	private String secondaryNamespace = null;
 	private Stack<String> oldNamespaces;
@@ -97,7 +93,7 @@ public class Settings {
 	 * -1 to disable run indexing
 	 */
 	public static void setRunIndex(int index) {
-		runIndex = index;
+		SimContext.getCurrent().setRunIndex(index);
 		writtenSettings.clear();
 	}
 	
@@ -145,7 +141,8 @@ public class Settings {
 			return null;
 		}
 		
-		if (props.getProperty(getFullPropertyName(setting, false)) != null) {
+		if (getProperties().getProperty(getFullPropertyName(setting, false)) 
+				!= null) {
 			return getFullPropertyName(setting, false);
 		}
 		
@@ -202,7 +199,8 @@ public class Settings {
 	 * @throws SettingsError If loading the settings file(s) didn't succeed
 	 */
 	public static void init(String propFile) throws SettingsError {
-		String outFile;
+		String outFile;
+		Properties props;
 		try {
 			if (new File(DEF_SETTINGS_FILE).exists()) {
 				Properties defProperties = new Properties();
@@ -217,8 +215,9 @@ public class Settings {
 			}
 		} catch (IOException e) {
 			throw new SettingsError(e);
-		}
-
+		}
+		setProperties(props);
+
 		outFile = props.getProperty(SETTING_OUTPUT_S);
 		if (outFile != null) {
 			if (outFile.trim().length() == 0) {
@@ -243,11 +242,29 @@ public class Settings {
 	 */
 	public static void addSettings(String propFile) throws SettingsError {
 		try {
-			props.load(new FileInputStream(propFile));
+			getProperties().load(new FileInputStream(propFile));
 		} catch (IOException e) {
 			throw new SettingsError(e);
 		}
 	}
+
+	/**
+	 * Returns the properties object where the setting files are read into
+	 * (the settings of the current {@link SimContext})
+	 * @return The properties or null if the settings are not initialized
+	 */
+	protected static Properties getProperties() {
+		return SimContext.getCurrent().getSettings();
+	}
+
+	/**
+	 * Sets the properties object all Settings objects of the current
+	 * {@link SimContext} will use
+	 * @param props The properties
+	 */
+	protected static void setProperties(Properties props) {
+		SimContext.getCurrent().setSettings(props);
+	}
 	
 	/**
 	 * Writes the given setting string to the settings output (if any)
@@ -256,7 +273,8 @@ public class Settings {
 	private static void outputSetting(String setting) {
 		if (out != null && !writtenSettings.contains(setting)) {
 			if (writtenSettings.size() == 0) {
-				out.println("# Settings for run " + (runIndex + 1));
+				out.println("# Settings for run " + 
+						(SimContext.getCurrent().getRunIndex() + 1));
 			}
 			out.println(setting);
 			writtenSettings.add(setting);
@@ -313,8 +331,10 @@ public class Settings {
 	 */
 	public String getSetting(String name) {
 		String fullPropName;
+		Properties props = getProperties();
 		if (props == null) {
 			init(null);
+			props = getProperties();
 		}
 		fullPropName = getFullPropertyName(name, false);
 		String value = props.getProperty(fullPropName);
@@ -353,6 +373,7 @@ public class Settings {
 		final String RUN_ARRAY_END = "]";
 		final String RUN_ARRAY_DELIM = ";";
 		final int MIN_LENGTH = 3; // minimum run is one value. e.g. "[v]"
+		int runIndex = SimContext.getCurrent().getRunIndex();
 		
 		if (!value.startsWith(RUN_ARRAY_START) || 
 			!value.endsWith(RUN_ARRAY_END) || 
@@ -749,7 +770,7 @@ public class Settings {
 	 * @return a String representation of the stored settings 
 	 */
 	public String toString() {
-		return props.toString();
+		return getProperties().toString();
 	}
 	
 }
\ No newline at end of file
@@ -6,28 +6,29 @@ package core;
 
 
 /**
- * Wall clock for checking the simulation time.
+ * Wall clock for checking the simulation time. Every {@link SimContext} has
+ * its own clock and the static methods use the clock of the calling
+ * thread's current context.
  */
 public class SimClock {
-	private static double clockTime = 0.0;
-	private static SimClock clock = null;
+	private double clockTime = 0.0;
 	
-	private SimClock() {}
+	/**
+	 * Creates a new clock. Use {@link SimContext#getClock()} to get the 
+	 * clock of a simulation.
+	 */
+	SimClock() {}
 	
-	static {
+	static {
 		DTNSim.registerForReset(SimClock.class.getCanonicalName());
-		reset();
 	}
 	
 	/**
 	 * Get the instance of the class that can also change the time.
-	 * @return The instance of this clock
+	 * @return The clock of the current context
 	 */
 	public static SimClock getInstance() {
-		if (clock == null) {
-			clock = new SimClock();
-		}
-		return clock;
+		return SimContext.getCurrent().getClock();
 	}
 	
 	/**
@@ -35,7 +36,7 @@ public class SimClock {
 	 * @return Time as a double
 	 */
 	public static double getTime() {
-		return clockTime;
+		return SimContext.getCurrent().getClock().clockTime;
 	}
 	
 	/**
@@ -43,7 +44,17 @@ public class SimClock {
 	 * @return Time as integer
 	 */
 	public static int getIntTime() {
-		return (int)Math.round(clockTime);
+		return (int)Math.round(getTime());
+	}
+	
+	/**
+	 * Returns the time of this clock (seconds since start). Same as
+	 * {@link #getTime()} for the current context's clock, but doesn't
+	 * need to look up the context.
+	 * @return Time as a double
+	 */
+	public double getSimTime() {
+		return this.clockTime;
 	}
 	
 	/**
@@ -71,9 +82,9 @@ public class SimClock {
 	}
 	
 	/**
-	 * Resets the static fields of the class
+	 * Resets the clock of the current context
 	 */
 	public static void reset() {
-		clockTime = 0;
+		getInstance().setTime(0);
 	}
 }
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.util.HashMap;
+import java.util.Properties;
+
+/**
+ * <P>State of one simulation: the clock, the scenario, the settings,
+ * the address and message ID counters and the connectivity optimizers.
+ * The static APIs ({@link SimClock#getTime()},
+ * {@link SimScenario#getInstance()}, {@link Settings}, etc.) are facades
+ * for the current context of the calling thread. Unless a thread has been
+ * bound to a context of its own with {@link #setCurrent(SimContext)}, the
+ * JVM wide default context is used, so a single simulation per JVM works
+ * as before.</P>
+ *
+ * <P>Hosts, routers, applications and reports store the context they were
+ * created in (see e.g. {@link DTNHost#getContext()}) and can use it
+ * directly instead of the thread based lookup. A context only isolates the
+ * state listed above. The static state of other classes (registered with
+ * {@link DTNSim#registerForReset(String)}, e.g. the random number
+ * generators of the movement models) is shared by all the contexts, and
+ * code that uses the static APIs sees a context only from the threads
+ * bound to it. {@link ParallelBatchRunner} doesn't depend on the contexts:
+ * it gives every run a class loader, and thus a default context, of its
+ * own.</P>
+ */
+public class SimContext {
+	/** the context used by the threads that are not bound to a context */
+	private static final SimContext defaultContext = new SimContext();
+	/** contexts of the threads that are bound to a context */
+	private static final ThreadLocal<SimContext> threadContext =
+		new ThreadLocal<SimContext>();
+	/** has any thread ever been bound to a context */
+	private static volatile boolean threadsBound = false;
+
+	private SimClock clock;
+	private SimScenario scenario;
+	private Properties settings;
+	private int runIndex;
+	private int nextHostAddress;
+	private int nextInterfaceAddress;
+	private int nextMessageId;
+	/** integer forms of the message IDs, see #internMessageId(String) */
+	private HashMap<String, Integer> messageIds;
+	/** context specific objects of the classes, see #getRegistry(Class) */
+	private HashMap<Class<?>, HashMap<?, ?>> registries;
+
+	/**
+	 * Creates a new, empty simulation context. The settings of the calling
+	 * thread's current context (if any) are used as the default settings of
+	 * the new context.
+	 */
+	public SimContext() {
+		this.clock = new SimClock();
+		this.registries = new HashMap<Class<?>, HashMap<?, ?>>();
+		this.messageIds = new HashMap<String, Integer>();
+		if (defaultContext != null) {
+			SimContext current = getCurrent();
+			if (current.settings != null) {
+				this.settings = new Properties(current.settings);
+			}
+			this.runIndex = current.runIndex;
+		}
+	}
+
+	/**
+	 * Returns the simulation context of the calling thread
+	 * @return The context the thread is bound to, or the default context
+	 */
+	public static SimContext getCurrent() {
+		if (!threadsBound) {
+			return defaultContext;
+		}
+		SimContext context = threadContext.get();
+		return context != null ? context : defaultContext;
+	}
+
+	/**
+	 * Binds the calling thread to a simulation context. All the static
+	 * simulator APIs called from the thread use the context after this.
+	 * @param context The context or null to use the default context
+	 */
+	public static void setCurrent(SimContext context) {
+		if (context == null || context == defaultContext) {
+			threadContext.remove();
+			return;
+		}
+		threadsBound = true;
+		threadContext.set(context);
+	}
+
+	/**
+	 * Returns the clock of this context
+	 * @return the clock
+	 */
+	public SimClock getClock() {
+		return this.clock;
+	}
+
+	/**
+	 * Returns the scenario of this context or null if it hasn't been
+	 * created yet
+	 * @return the scenario
+	 */
+	public SimScenario getScenario() {
+		return this.scenario;
+	}
+
+	/**
+	 * Sets the scenario of this context
+	 * @param scenario The scenario
+	 */
+	void setScenario(SimScenario scenario) {
+		this.scenario = scenario;
+	}
+
+	/**
+	 * Returns the settings of this context
+	 * @return the settings or null if not initialized
+	 */
+	Properties getSettings() {
+		return this.settings;
+	}
+
+	/**
+	 * Sets the settings of this context
+	 * @param settings The settings
+	 */
+	void setSettings(Properties settings) {
+		this.settings = settings;
+	}
+
+	/**
+	 * Returns the run index of this context
+	 * @see Settings#setRunIndex(int)
+	 */
+	int getRunIndex() {
+		return this.runIndex;
+	}
+
+	/**
+	 * Sets the run index of this context
+	 * @see Settings#setRunIndex(int)
+	 */
+	void setRunIndex(int runIndex) {
+		this.runIndex = runIndex;
+	}
+
+	/**
+	 * Returns the next free host address and increments the address for
+	 * subsequent calls.
+	 */
+	synchronized int nextHostAddress() {
+		return nextHostAddress++;
+	}
+
+	/**
+	 * Returns the next free network interface address and increments the
+	 * address for subsequent calls.
+	 */
+	synchronized int nextInterfaceAddress() {
+		return nextInterfaceAddress++;
+	}
+
+	/**
+	 * Returns the next unique message ID and increments the ID for
+	 * subsequent calls.
+	 */
+	synchronized int nextMessageId() {
+		return nextMessageId++;
+	}
+
+	/**
+	 * Returns the integer form of a message ID. The same ID always has the
+	 * same integer and different IDs have different integers (until
+	 * the message IDs are reset), so the integers can be used instead of the
+	 * IDs for identifying messages and their replicas. A new integer is 
+	 * given to every ID that hasn't been seen before. The IDs are never
+	 * forgotten during a run since the delivered messages tables of the 
+	 * routers and the reports may refer to them at any time, so the table 
+	 * grows by one entry per message created in the run.
+	 * @param id The message ID
+	 * @return The integer form of the ID
+	 * @see #getMessageIntId(String)
+	 */
+	public synchronized int internMessageId(String id) {
+		Integer value = messageIds.get(id);
+		if (value == null) {
+			value = messageIds.size();
+			messageIds.put(id, value);
+		}
+		return value;
+	}
+
+	/**
+	 * Returns the integer form of a message ID without interning new IDs.
+	 * Used for looking up messages by their String IDs.
+	 * @param id The message ID
+	 * @return The integer form of the ID or -1 if no message has the ID
+	 * @see #internMessageId(String)
+	 */
+	public synchronized int getMessageIntId(String id) {
+		Integer value = messageIds.get(id);
+		return value != null ? value : -1;
+	}
+
+	/** Resets the host address counter */
+	void resetHostAddresses() {
+		this.nextHostAddress = 0;
+	}
+
+	/** Resets the network interface address counter */
+	void resetInterfaceAddresses() {
+		this.nextInterfaceAddress = 0;
+	}
+
+	/** Resets the unique message ID counter and the interned message IDs */
+	void resetMessageIds() {
+		this.nextMessageId = 0;
+		this.messageIds.clear();
+	}
+
+	/**
+	 * Returns a map for the context specific objects of a class, e.g., the
+	 * connectivity optimizers of the interface types. A new, empty map is
+	 * created on the first call.
+	 * @param owner The class whose objects are stored in the map
+	 * @return The map for the class in this context
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized <K, V> HashMap<K, V> getRegistry(Class<?> owner) {
+		HashMap<K, V> registry = (HashMap<K, V>)registries.get(owner);
+		if (registry == null) {
+			registry = new HashMap<K, V>();
+			registries.put(owner, registry);
+		}
+		return registry;
+	}
+
+	/**
+	 * Removes all the context specific objects of a class
+	 * @param owner The class whose objects are removed
+	 */
+	public synchronized void clearRegistry(Class<?> owner) {
+		registries.remove(owner);
+	}
+}
@@ -21,9 +21,6 @@ import routing.MessageRouter;
  * simulation run.
  */
 public class SimScenario implements Serializable {
-	
-	/** a way to get a hold of this... */	
-	private static SimScenario myinstance=null;
 
 	/** namespace of scenario settings ({@value})*/
 	public static final String SCENARIO_NS = "Scenario";
@@ -126,7 +123,7 @@ public class SimScenario implements Serializable {
 	}
 	
 	public static void reset() {
-		myinstance = null;
+		SimContext.getCurrent().setScenario(null);
 	}
 
 	/**
@@ -169,13 +166,15 @@ public class SimScenario implements Serializable {
 	}
 	
 	/**
-	 * Returns the SimScenario instance and creates one if it doesn't exist yet
+	 * Returns the SimScenario instance of the current context and creates 
+	 * one if it doesn't exist yet
 	 */
 	public static SimScenario getInstance() {
-		if (myinstance == null) {
-			myinstance = new SimScenario();
+		SimContext context = SimContext.getCurrent();
+		if (context.getScenario() == null) {
+			context.setScenario(new SimScenario());
 		}
-		return myinstance;
+		return context.getScenario();
 	}
 
 	/**
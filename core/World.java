@@ -13,6 +13,9 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * World contains all the nodes and is responsible for updating their
@@ -37,11 +40,47 @@ public class World {
 	 * Default is @link {@link #DEF_RANDOMIZE_UPDATES}.
 	 */
 	public static final String RANDOMIZE_UPDATES_S = "randomizeUpdateOrder";
+	/**
+	 * Number of worker threads used for moving the hosts -setting id 
+	 * ({@value}). Integer value. Values smaller than 2 disable the parallel
+	 * movement phase. Results are identical to the sequential mode.
+	 * Default value is {@link #DEF_PARALLEL_HOSTS}.
+	 */
+	public static final String PARALLEL_HOSTS_S = "parallelHosts";
+	/**
+	 * Should update intervals during which nothing can happen be skipped
+	 * -setting id ({@value}). Boolean (true/false) variable. If enabled,
+	 * the hosts are not moved or updated while none of them moves or has 
+	 * connections until the next external event, node activeness change 
+	 * or router/application update time. Results are identical to the 
+	 * normal mode. Default is {@link #DEF_EVENT_DRIVEN}.
+	 */
+	public static final String EVENT_DRIVEN_S = "eventDriven";
+	/**
+	 * Number of batch runs executed concurrently -setting id ({@value}).
+	 * Integer value. Every run has its own class loader and thus its own
+	 * static state, and the reports are identical to sequential runs.
+	 * Values smaller than 2 disable the parallel execution. Default value 
+	 * is {@link #DEF_PARALLEL_RUNS}.
+	 * @see ParallelBatchRunner
+	 */
+	public static final String PARALLEL_RUNS_S = "parallelRuns";
 	/** default value for cell size multiplier ({@value}) */
 	public static final int DEF_CON_CELL_SIZE_MULT = 5;
 	/** should the update order of nodes be randomized -setting's default value
 	 * ({@value}) */
 	public static final boolean DEF_RANDOMIZE_UPDATES = true;
+	/** default value for the number of host movement threads ({@value}) */
+	public static final int DEF_PARALLEL_HOSTS = 1;
+	/** default value for the event driven mode setting ({@value}) */
+	public static final boolean DEF_EVENT_DRIVEN = false;
+	/** default value for the number of concurrent batch runs ({@value}) */
+	public static final int DEF_PARALLEL_RUNS = 1;
+	/** smallest number of hosts a single movement task is split to */
+	private static final int MIN_HOSTS_PER_TASK = 64;
+	/** safety margin (seconds) for floating point rounding in the event 
+	 * driven mode's wake up time comparisons */
+	private static final double QUIET_MARGIN = 1e-6;
 
 	private int sizeX;
 	private int sizeY;
@@ -64,6 +103,16 @@ public class World {
 
 	/** single ConnectivityCell's size is biggest radio range times this */
 	private int conCellSizeMult;
+	/** worker pool for the parallel movement phase (null if not in use) */
+	private ForkJoinPool movePool;
+	/** flags for hosts whose movement must be finished sequentially */
+	private boolean[] deferredMoves;
+	/** is the event driven mode in use */
+	private boolean eventDriven;
+	/** simulation context of the world */
+	private SimContext context;
+	/** time until which nothing happens in the world (event driven mode) */
+	private double quietUntil;
 
 	/**
 	 * Constructor.
@@ -79,7 +128,8 @@ public class World {
 		this.simulateConnections = simulateConnections;
 		this.eventQueues = eventQueues;
 		
-		this.simClock = SimClock.getInstance();
+		this.context = SimContext.getCurrent();
+		this.simClock = context.getClock();
 		this.scheduledUpdates = new ScheduledUpdatesQueue();
 		this.isCancelled = false;		
 
@@ -117,6 +167,25 @@ public class World {
 			throw new SettingsError("Too small value (" + conCellSizeMult +
 					") for " + SETTINGS_NS + "." + CELL_SIZE_MULT_S);
 		}
+
+		int nrofMoveThreads = DEF_PARALLEL_HOSTS;
+		if (s.contains(PARALLEL_HOSTS_S)) {
+			nrofMoveThreads = s.getInt(PARALLEL_HOSTS_S);
+		}
+		if (nrofMoveThreads > 1) {
+			this.movePool = new ForkJoinPool(nrofMoveThreads, 
+					new MoveThreadFactory(), null, false);
+			this.deferredMoves = new boolean[this.hosts.size()];
+		}
+		else {
+			this.movePool = null;
+		}
+
+		this.eventDriven = DEF_EVENT_DRIVEN;
+		if (s.contains(EVENT_DRIVEN_S)) {
+			this.eventDriven = s.getBoolean(EVENT_DRIVEN_S);
+		}
+		this.quietUntil = -Double.MAX_VALUE;
 	}
 
 	/**
@@ -130,12 +199,21 @@ public class World {
 			return;
 		}
 
-		while(SimClock.getTime() < -updateInterval) {
+		double moveQuietUntil = -Double.MAX_VALUE;
+		while(simClock.getSimTime() < -updateInterval) {
+			if (simClock.getSimTime() + updateInterval < 
+					moveQuietUntil - QUIET_MARGIN) {
+				simClock.advance(updateInterval); /* no host moves */
+				continue;
+			}
 			moveHosts(updateInterval);
 			simClock.advance(updateInterval);
+			if (this.eventDriven) {
+				moveQuietUntil = getNextMoveTime();
+			}
 		}
 
-		double finalStep = -SimClock.getTime();
+		double finalStep = -simClock.getSimTime();
 
 		moveHosts(finalStep);
 		simClock.setTime(0);	
@@ -167,9 +245,17 @@ public class World {
 	 * this method is called and after one update interval.
 	 */
 	public void update () {
-		double runUntil = SimClock.getTime() + this.updateInterval;
-
-		setNextEventQueue();
+		double runUntil = simClock.getSimTime() + this.updateInterval;
+
+		if (runUntil < this.quietUntil - QUIET_MARGIN) {
+			/* event driven mode: nothing can happen during this interval */
+			simClock.setTime(runUntil);
+			shuffleUpdateOrder(); /* keeps the update order as in ticking */
+			updateListeners();
+			return;
+		}
+
+		setNextEventQueue();
 
 		/* process all events that are due until next interval update */
 		while (this.nextQueueEventTime <= runUntil) {
@@ -183,13 +269,51 @@ public class World {
 		moveHosts(this.updateInterval);
 		simClock.setTime(runUntil);
 
-		updateHosts();
+		updateHosts();
+		updateListeners();
+
+		if (this.eventDriven) {
+			updateQuietTime();
+		}
+	}
 
-		/* inform all update listeners */
+	/**
+	 * Informs all update listeners
+	 */
+	private void updateListeners() {
 		for (UpdateListener ul : this.updateListeners) {
 			ul.updated(this.hosts);
 		}
 	}
+
+	/**
+	 * Finds out the time until which nothing can happen in the world: the
+	 * time of the next external event or the earliest time when some host 
+	 * needs to be moved or updated (see {@link DTNHost#getNextUpdateTime()}).
+	 */
+	private void updateQuietTime() {
+		double now = simClock.getSimTime();
+		setNextEventQueue();
+		double quiet = this.nextQueueEventTime;
+		for (int i=0, n = hosts.size(); i < n && quiet > now; i++) {
+			quiet = Math.min(quiet, hosts.get(i).getNextUpdateTime());
+		}
+		this.quietUntil = quiet;
+	}
+
+	/**
+	 * Returns the earliest time when some host may move
+	 * (see {@link DTNHost#getNextMoveTime()}).
+	 * @return The next time some host may move
+	 */
+	private double getNextMoveTime() {
+		double now = simClock.getSimTime();
+		double next = Double.MAX_VALUE;
+		for (int i=0, n = hosts.size(); i < n && next > now; i++) {
+			next = Math.min(next, hosts.get(i).getNextMoveTime());
+		}
+		return next;
+	}
 
 	/**
 	 * Updates all hosts (calls update for every one of them). If update
@@ -206,10 +330,7 @@ public class World {
 			}
 		}
 		else { // update order randomizing is on
-			assert this.updateOrder.size() == this.hosts.size() : 
-				"Nrof hosts has changed unexpectedly";
-			Random rng = new Random(SimClock.getIntTime());
-			Collections.shuffle(this.updateOrder, rng); 
+			shuffleUpdateOrder();
 			for (int i=0, n = hosts.size();i < n; i++) {
 				if (this.isCancelled) {
 					break;
@@ -219,16 +340,65 @@ public class World {
 		}
 	}
 
+	/**
+	 * Shuffles the update order array (if update order randomizing is on)
+	 */
+	private void shuffleUpdateOrder() {
+		if (this.updateOrder == null) {
+			return;
+		}
+		assert this.updateOrder.size() == this.hosts.size() : 
+			"Nrof hosts has changed unexpectedly";
+		Random rng = new Random(SimClock.getIntTime());
+		Collections.shuffle(this.updateOrder, rng); 
+	}
+
 	/**
 	 * Moves all hosts in the world for a given amount of time
 	 * @param timeIncrement The time how long all nodes should move
 	 */
 	private void moveHosts(double timeIncrement) {
+		if (this.movePool != null) {
+			moveHostsInParallel(timeIncrement);
+			return;
+		}
+		
 		for (int i=0,n = hosts.size(); i<n; i++) {
 			DTNHost host = hosts.get(i);
 			host.move(timeIncrement);			
 		}		
 	}
+	
+	/**
+	 * Moves all hosts in two phases. First, all hosts that stay on their
+	 * current path segment (or don't move at all) are moved concurrently
+	 * by the worker pool. Then the rest of the hosts, i.e., the ones that
+	 * need a new waypoint or path, are moved in the host address order.
+	 * Only the latter ones use the movement models' shared random number
+	 * generator and inform the movement listeners, so the result is the
+	 * same as when moving all the hosts sequentially.
+	 * @param timeIncrement The time how long all nodes should move
+	 */
+	private void moveHostsInParallel(double timeIncrement) {
+		movePool.invoke(new MoveTask(timeIncrement, 0, hosts.size()));
+		
+		for (int i=0,n = hosts.size(); i<n; i++) {
+			if (deferredMoves[i]) {
+				hosts.get(i).move(timeIncrement);
+			}
+		}
+	}
+
+	/**
+	 * Finishes the simulation by stopping the worker threads that were
+	 * used for moving the nodes. The world must not be updated after this.
+	 */
+	public void done() {
+		if (this.movePool != null) {
+			this.movePool.shutdown();
+			this.movePool = null;
+		}
+	}
 
 	/**
 	 * Asynchronously cancels the currently running simulation
@@ -286,5 +456,62 @@ public class World {
 	 */
 	public void scheduleUpdate(double simTime) {
 		scheduledUpdates.addUpdate(simTime);
+		this.quietUntil = Math.min(this.quietUntil, simTime);
+	}
+
+	/**
+	 * Fork-join task that runs the concurrent part of the movement phase for
+	 * a range of hosts. Hosts that can't be moved concurrently are flagged
+	 * in the deferred moves array.
+	 */
+	private class MoveTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private double timeIncrement;
+		private int from;
+		private int to;
+		
+		/**
+		 * Creates a task for moving the hosts of the given index range
+		 * @param timeIncrement The time how long the hosts should move
+		 * @param from Index of the first host (inclusive)
+		 * @param to Index of the last host (exclusive)
+		 */
+		public MoveTask(double timeIncrement, int from, int to) {
+			this.timeIncrement = timeIncrement;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute() {
+			int n = to - from;
+			if (n > MIN_HOSTS_PER_TASK && 
+					n > hosts.size() / (4 * movePool.getParallelism())) {
+				int middle = from + n / 2;
+				invokeAll(new MoveTask(timeIncrement, from, middle),
+						new MoveTask(timeIncrement, middle, to));
+				return;
+			}
+			
+			SimContext.setCurrent(context); /* for the pool's threads */
+			for (int i=from; i<to; i++) {
+				deferredMoves[i] = !hosts.get(i).moveOnSegment(timeIncrement);
+			}
+		}
+	}
+	
+	/**
+	 * Creates the threads of the move pool. The threads use the class 
+	 * loader of the simulator as their context class loader so that 
+	 * {@link ParallelBatchRunner} can tell which run their output belongs to.
+	 */
+	private static class MoveThreadFactory 
+			implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+		public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+			ForkJoinWorkerThread t = ForkJoinPool.
+				defaultForkJoinWorkerThreadFactory.newThread(pool);
+			t.setContextClassLoader(World.class.getClassLoader());
+			return t;
+		}
 	}
 }
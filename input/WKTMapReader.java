@@ -10,7 +10,6 @@ import java.io.IOException;
 import java.io.Reader;
 import java.util.Collection;
 import java.util.Hashtable;
-import java.util.List;
 import java.util.Map;
 
 import movement.map.MapNode;
@@ -25,6 +24,10 @@ import core.Coord;
  */
 public class WKTMapReader extends WKTReader {
 	private Hashtable<Coord, MapNode> nodes;
+	/** the same nodes indexed by the primitive coordinate values */
+	private CoordIndex nodeIndex;
+	/** initial size of the coordinate index (a power of two) */
+	private static final int INIT_INDEX_SIZE = 1024;
 	/** are all paths bidirectional */
 	private boolean bidirectionalPaths = true;
 	private int nodeType = -1;
@@ -37,6 +40,7 @@ public class WKTMapReader extends WKTReader {
 	public WKTMapReader(boolean bidi) {
 		this.bidirectionalPaths = bidi;
 		this.nodes = new Hashtable<Coord, MapNode>();
+		this.nodeIndex = new CoordIndex();
 	}
 	
 	/**
@@ -93,53 +97,61 @@ public class WKTMapReader extends WKTReader {
 	public void addPaths(Reader input, int nodeType) throws IOException {
 		this.nodeType = nodeType;
 		String type;
-		String contents;
+		WKTTokenizer tokenizer = new WKTTokenizer(input);
 		
-		init(input);
-		
-		while((type = nextType()) != null) {
+		while((type = tokenizer.nextType()) != null) {
 			if (type.equals(LINESTRING)) {
-				contents = readNestedContents();
-				updateMap(parseLineString(contents));
+				updateMap(tokenizer);
 			}
 			else if (type.equals(MULTILINESTRING)) {
-				for (List<Coord> list : parseMultilinestring()) {
-					updateMap(list);
+				tokenizer.enterList();
+				while (tokenizer.nextList()) {
+					updateMap(tokenizer);
 				}
 			}
 			else {
 				// known type but not interesting -> skip
-				readNestedContents();
+				tokenizer.skipNested();
 			}
 		}
 	}
 	
 	/**
-	 * Updates simulation map with coordinates in the list
-	 * @param coords The list of coordinates
+	 * Updates simulation map with the next list of coordinates
+	 * @param tokenizer The tokenizer where the coordinates are read from
+	 * @throws IOException if reading the coordinates fails
 	 */
-	private void updateMap(List<Coord> coords) {
+	private void updateMap(WKTTokenizer tokenizer) throws IOException {
+		int count = tokenizer.readCoords();
+		double[] xs = tokenizer.getXs();
+		double[] ys = tokenizer.getYs();
 		MapNode previousNode = null;
-		for (Coord c : coords) {
-			previousNode = createOrUpdateNode(c, previousNode);
+		for (int i = 0; i < count; i++) {
+			previousNode = createOrUpdateNode(xs[i], ys[i], previousNode);
 		}
 	}
 		
 	/**
-	 * Creates or updates a node that is in location c and next to 
+	 * Creates or updates a node that is in location (x,y) and next to 
 	 * node previous
-	 * @param c The location coordinates of the node
-	 * @param previous Previous node whose neighbor node at c is
+	 * @param x The x coordinate of the node
+	 * @param y The y coordinate of the node
+	 * @param previous Previous node whose neighbor node at (x,y) is
 	 * @return The created/updated node
 	 */
-	private MapNode createOrUpdateNode(Coord c, MapNode previous) {
+	private MapNode createOrUpdateNode(double x, double y, MapNode previous) {
 		MapNode n = null;
 		
-		n = nodes.get(c);	// try to get the node at that location
+		n = nodeIndex.get(x, y);	// try to get the node at that location
 		
 		if (n == null) { 	// no node in that location -> create new
-			n = new MapNode(c);
-			nodes.put(c, n);
+			Coord c = new Coord(x, y);
+			n = nodes.get(c);
+			if (n == null) {
+				n = new MapNode(c);
+				nodes.put(c, n);
+			}
+			nodeIndex.put(x, y, n);
 		}
 
 		if (previous != null) {
@@ -155,5 +167,86 @@ public class WKTMapReader extends WKTReader {
 		
 		return n;
 	}
-
+	
+	/**
+	 * Hash index of map nodes by their coordinates. The keys are the bits
+	 * of the coordinate values, so looking up a node doesn't need a Coord
+	 * object or its (string based) hash code. Nodes with NaN coordinates are
+	 * not indexed because they are never equal to other nodes.
+	 */
+	private static class CoordIndex {
+		private long[] keyXs;
+		private long[] keyYs;
+		/** the nodes; null means that the slot is free */
+		private MapNode[] values;
+		private int size;
+		private int mask;
+		
+		private CoordIndex() {
+			this.keyXs = new long[INIT_INDEX_SIZE];
+			this.keyYs = new long[INIT_INDEX_SIZE];
+			this.values = new MapNode[INIT_INDEX_SIZE];
+			this.mask = INIT_INDEX_SIZE - 1;
+		}
+		
+		private int slotFor(long kx, long ky) {
+			long h = (kx * 0x9E3779B97F4A7C15L) ^ ky;
+			h *= 0xC2B2AE3D27D4EB4FL;
+			return (int)(h ^ (h >>> 32)) & mask;
+		}
+		
+		/**
+		 * Returns the node at the given location or null if there's none
+		 */
+		private MapNode get(double x, double y) {
+			long kx = Double.doubleToLongBits(x);
+			long ky = Double.doubleToLongBits(y);
+			for (int i = slotFor(kx, ky); values[i] != null; i = (i+1) & mask) {
+				if (keyXs[i] == kx && keyYs[i] == ky) {
+					return values[i];
+				}
+			}
+			return null;
+		}
+		
+		/**
+		 * Adds a node that is not yet in the index
+		 */
+		private void put(double x, double y, MapNode node) {
+			if (x != x || y != y) {
+				return; // NaN
+			}
+			if ((size + 1) * 2 > values.length) {
+				resize();
+			}
+			insert(Double.doubleToLongBits(x), Double.doubleToLongBits(y),
+					node);
+			size++;
+		}
+		
+		private void insert(long kx, long ky, MapNode node) {
+			int i = slotFor(kx, ky);
+			while (values[i] != null) {
+				i = (i + 1) & mask;
+			}
+			keyXs[i] = kx;
+			keyYs[i] = ky;
+			values[i] = node;
+		}
+		
+		private void resize() {
+			long[] oldXs = keyXs;
+			long[] oldYs = keyYs;
+			MapNode[] oldValues = values;
+			keyXs = new long[oldValues.length * 2];
+			keyYs = new long[oldValues.length * 2];
+			values = new MapNode[oldValues.length * 2];
+			mask = values.length - 1;
+			for (int j = 0; j < oldValues.length; j++) {
+				if (oldValues[j] != null) {
+					insert(oldXs[j], oldYs[j], oldValues[j]);
+				}
+			}
+		}
+	}
 }
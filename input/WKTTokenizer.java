@@ -0,0 +1,267 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * <P>Streaming tokenizer for "Well-known text syntax" data. The input is
+ * read to a character buffer in blocks and parsed directly from the buffer
+ * without splitting it to lines or tokens. The coordinates of a coordinate
+ * list are put to primitive arrays that are reused for the next lists.</P>
+ * @see WKTMapReader
+ */
+public class WKTTokenizer {
+	/** Size of the input buffer */
+	private static final int BUFFER_SIZE = 64 * 1024;
+	/** Initial size of the coordinate arrays */
+	private static final int INIT_COORDS = 64;
+	/** Maximum length of a number */
+	private static final int MAX_NUMBER_LENGTH = 64;
+	/** Value for end of input */
+	private static final int EOF = -1;
+
+	private Reader input;
+	private char[] buffer;
+	/** index of the next character in the buffer */
+	private int pos;
+	/** number of characters in the buffer */
+	private int limit;
+
+	private char[] number;
+	private double[] xs;
+	private double[] ys;
+
+	/**
+	 * Constructor.
+	 * @param input The input to read the data from
+	 */
+	public WKTTokenizer(Reader input) {
+		this.input = input;
+		this.buffer = new char[BUFFER_SIZE];
+		this.number = new char[MAX_NUMBER_LENGTH];
+		this.xs = new double[INIT_COORDS];
+		this.ys = new double[INIT_COORDS];
+	}
+
+	/**
+	 * Returns the next character without consuming it
+	 * @return The character or {@link #EOF} at the end of input
+	 * @throws IOException if reading the input fails
+	 */
+	private int peek() throws IOException {
+		if (pos == limit) {
+			limit = input.read(buffer, 0, buffer.length);
+			pos = 0;
+			if (limit <= 0) {
+				limit = 0;
+				return EOF;
+			}
+		}
+		return buffer[pos];
+	}
+
+	/**
+	 * Skips whitespace and returns the next character without consuming it
+	 * @return The character or {@link #EOF} at the end of input
+	 * @throws IOException if reading the input fails
+	 */
+	private int peekNonWhitespace() throws IOException {
+		int c;
+		while ((c = peek()) != EOF && Character.isWhitespace(c)) {
+			pos++;
+		}
+		return c;
+	}
+
+	/**
+	 * Consumes characters until the given character has been consumed or
+	 * the input ends
+	 * @param until The character
+	 * @return True if the character was found, false if the input ended
+	 * @throws IOException if reading the input fails
+	 */
+	private boolean skipPast(char until) throws IOException {
+		int c;
+		while ((c = peek()) != EOF) {
+			pos++;
+			if (c == until) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Reads the next type word, i.e., the characters up to the next
+	 * whitespace or opening parenthesis
+	 * @return The type or null if there are no more types
+	 * @throws IOException if reading the input fails
+	 */
+	public String nextType() throws IOException {
+		int c = peekNonWhitespace();
+		if (c == EOF) {
+			return null;
+		}
+		StringBuilder type = new StringBuilder();
+		while (c != EOF && c != '(' && !Character.isWhitespace(c)) {
+			type.append((char)c);
+			pos++;
+			c = peek();
+		}
+		return type.toString();
+	}
+
+	/**
+	 * Skips the next parenthesized contents, including any nested
+	 * parentheses
+	 * @throws IOException if reading the input fails
+	 */
+	public void skipNested() throws IOException {
+		if (!skipPast('(')) {
+			return;
+		}
+		int open = 1;
+		int c;
+		while (open > 0 && (c = peek()) != EOF) {
+			pos++;
+			if (c == '(') {
+				open++;
+			}
+			else if (c == ')') {
+				open--;
+			}
+		}
+	}
+
+	/**
+	 * Enters a list of coordinate lists (e.g., MULTILINESTRING contents) by
+	 * consuming its opening parenthesis
+	 * @throws IOException if reading the input fails
+	 * @see #nextList()
+	 */
+	public void enterList() throws IOException {
+		skipPast('(');
+	}
+
+	/**
+	 * Returns true if there is another coordinate list in the list that was
+	 * entered with {@link #enterList()}. If not, consumes the end of the
+	 * list.
+	 * @return True if {@link #readCoords()} can read the next coordinate
+	 * list, false if the list ended
+	 * @throws IOException if reading the input fails
+	 */
+	public boolean nextList() throws IOException {
+		int c;
+		while ((c = peekNonWhitespace()) == ',') {
+			pos++;
+		}
+		if (c == '(') {
+			return true;
+		}
+		skipPast(')');
+		return false;
+	}
+
+	/**
+	 * Reads the next parenthesized list of coordinate tuples. Only the
+	 * first two values of every tuple are read. The coordinates can be
+	 * retrieved with {@link #getXs()} and {@link #getYs()}.
+	 * @return Number of coordinates read
+	 * @throws IOException if reading the input fails or the coordinates are
+	 * not valid
+	 */
+	public int readCoords() throws IOException {
+		int count = 0;
+		if (!skipPast('(')) {
+			return 0;
+		}
+		if (peekNonWhitespace() == ')') { // empty list
+			pos++;
+			return 0;
+		}
+
+		while (true) {
+			if (count == xs.length) {
+				xs = Arrays.copyOf(xs, count * 2);
+				ys = Arrays.copyOf(ys, count * 2);
+			}
+			xs[count] = readNumber();
+			ys[count] = readNumber();
+			count++;
+
+			int c;
+			while ((c = peek()) != ',' && c != ')') { // skip any other values
+				if (c == EOF || c == '(') {
+					throw new IOException("Unterminated coordinate list");
+				}
+				pos++;
+			}
+			pos++;
+			if (c == ')') {
+				return count;
+			}
+		}
+	}
+
+	/**
+	 * Returns the x coordinates read by the last {@link #readCoords()} call.
+	 * The array is reused by the next call.
+	 * @return The x coordinates
+	 */
+	public double[] getXs() {
+		return this.xs;
+	}
+
+	/**
+	 * Returns the y coordinates read by the last {@link #readCoords()} call.
+	 * The array is reused by the next call.
+	 * @return The y coordinates
+	 */
+	public double[] getYs() {
+		return this.ys;
+	}
+
+	/**
+	 * Reads a number
+	 * @return The value of the number
+	 * @throws IOException if the number is not valid
+	 */
+	private double readNumber() throws IOException {
+		int c = peekNonWhitespace();
+		int len = 0;
+		while (c != EOF && c != ',' && c != '(' && c != ')' &&
+				!Character.isWhitespace(c)) {
+			if (len == number.length) {
+				throw new IOException("Too long coordinate value");
+			}
+			number[len++] = (char)c;
+			pos++;
+			c = peek();
+		}
+		if (len == 0) {
+			throw new IOException("Missing coordinate value");
+		}
+		return parseNumber(len);
+	}
+
+	/**
+	 * Parses a number from the number buffer
+	 * @param len Number of characters in the buffer
+	 * @return The value of the number
+	 * @throws IOException if the number is not valid
+	 */
+	private double parseNumber(int len) throws IOException {
+		String value = new String(number, 0, len);
+		try {
+			return Double.parseDouble(value);
+		} catch (NumberFormatException e) {
+			throw new IOException("Bad coordinate value: '" + value + "'");
+		}
+	}
+}
@@ -6,7 +6,9 @@ package interfaces;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 
 import movement.MovementModel;
 
@@ -14,6 +16,7 @@ import core.Coord;
 import core.DTNSim;
 import core.NetworkInterface;
 import core.Settings;
+import core.SimContext;
 
 /**
  * <P>
@@ -32,6 +35,11 @@ import core.Settings;
  * connection. Then only that subset of interfaces is checked for possible
  * connectivity. 
  * </P>
+ * 
+ * <P>Each cell caches the list of interfaces in the cell and its neighboring
+ * cells. The cached lists are marked dirty when an interface enters or 
+ * leaves one of the cells and rebuilt only when they are requested, so 
+ * getting the near interfaces doesn't allocate anything.</P>
  * <P>
  * <strong>Note:</strong> this class does NOT support negative
  * coordinates. Also, it makes sense to normalize the coordinates to start
@@ -43,23 +51,16 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	private int cellSize;
 	private int rows;
 	private int cols;
-	private static int worldSizeX;
-	private static int worldSizeY;
-
-	static HashMap<Integer,ConnectivityGrid> gridobjects;
 
 	static {
 		DTNSim.registerForReset(ConnectivityGrid.class.getCanonicalName());
-		reset();
 	}
 	
+	/**
+	 * Removes the grids of the current simulation context
+	 */
 	public static void reset() {
-		gridobjects = new HashMap<Integer,ConnectivityGrid>();
-
-		Settings s = new Settings(MovementModel.MOVEMENT_MODEL_NS);
-		int [] worldSize = s.getCsvInts(MovementModel.WORLD_SIZE,2);
-		worldSizeX = worldSize[0];
-		worldSizeY = worldSize[1];
+		SimContext.getCurrent().clearRegistry(ConnectivityGrid.class);
 	}
 
 	/**
@@ -69,6 +70,11 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	 * 	radio coverage's diameter)
 	 */
 	private ConnectivityGrid(int cellSize) {
+		Settings s = new Settings(MovementModel.MOVEMENT_MODEL_NS);
+		int [] worldSize = s.getCsvInts(MovementModel.WORLD_SIZE,2);
+		int worldSizeX = worldSize[0];
+		int worldSizeY = worldSize[1];
+
 		this.rows = worldSizeY/cellSize + 1;
 		this.cols = worldSizeX/cellSize + 1;
 		// leave empty cells on both sides to make neighbor search easier 
@@ -77,7 +83,7 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 
 		for (int i=0; i<rows+2; i++) {
 			for (int j=0; j<cols+2; j++) {
-				this.cells[i][j] = new GridCell();
+				this.cells[i][j] = new GridCell(i, j);
 			}
 		}
 		ginterfaces = new HashMap<NetworkInterface,GridCell>();
@@ -92,6 +98,8 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	 */
 	public static ConnectivityGrid ConnectivityGridFactory(int key, 
 			double cellSize) {
+		HashMap<Integer,ConnectivityGrid> gridobjects = 
+			SimContext.getCurrent().getRegistry(ConnectivityGrid.class);
 		if (gridobjects.containsKey((Integer)key)) {
 			return (ConnectivityGrid)gridobjects.get((Integer)key);
 		} else {
@@ -110,6 +118,7 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 		GridCell c = cellFromCoord(ni.getLocation());
 		c.addInterface(ni);
 		ginterfaces.put(ni,c);
+		markNearDirty(c);
 	}
 
 	/** 
@@ -120,6 +129,7 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 		GridCell c = ginterfaces.get(ni);
 		if (c != null) {
 			c.removeInterface(ni);
+			markNearDirty(c);
 		}
 		ginterfaces.remove(ni);
 	}
@@ -145,34 +155,22 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 		if (newCell != oldCell) {
 			oldCell.moveInterface(ni, newCell);
 			ginterfaces.put(ni,newCell);
+			markNearDirty(oldCell);
+			markNearDirty(newCell);
 		}
 	}
 
 	/**
-	 * Finds all neighboring cells and the cell itself based on the coordinates
-	 * @param c The coordinates
-	 * @return Array of neighboring cells 
+	 * Marks the near interface lists of a cell and its neighboring cells 
+	 * dirty (i.e., the lists that contain the interfaces of the cell)
+	 * @param c The cell whose interfaces changed
 	 */
-	private GridCell[] getNeighborCellsByCoord(Coord c) {
-		// +1 due empty cells on both sides of the matrix
-		int row = (int)(c.getY()/cellSize) + 1;
-		int col = (int)(c.getX()/cellSize) + 1;
-		return getNeighborCells(row,col);
-	}
-
-	/**
-	 * Returns an array of Cells that contains the neighbors of a certain
-	 * cell and the cell itself.
-	 * @param row Row index of the cell
-	 * @param col Column index of the cell
-	 * @return Array of neighboring Cells
-	 */
-	private GridCell[] getNeighborCells(int row, int col) {
-		return new GridCell[] {
-			cells[row-1][col-1],cells[row-1][col],cells[row-1][col+1],//1st row
-			cells[row][col-1],cells[row][col],cells[row][col+1],//2nd row
-			cells[row+1][col-1],cells[row+1][col],cells[row+1][col+1]//3rd row
-		};
+	private void markNearDirty(GridCell c) {
+		for (int i = c.row - 1; i <= c.row + 1; i++) {
+			for (int j = c.col - 1; j <= c.col + 1; j++) {
+				cells[i][j].nearDirty = true;
+			}
+		}
 	}
 
 	/**
@@ -200,22 +198,17 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 
 	/**
 	 * Returns all interfaces using the same technology and channel that are in
-	 * neighboring cells
+	 * neighboring cells. The returned list is shared and it is valid only 
+	 * until the next change in the grid; it must not be modified.
 	 */
-	public Collection<NetworkInterface> getNearInterfaces(
+	public List<NetworkInterface> getNearInterfaces(
 			NetworkInterface netinterf) {
-		ArrayList<NetworkInterface> ni = new ArrayList<NetworkInterface>();
-		ni.clear();
-
 		GridCell loc = (GridCell)ginterfaces.get(netinterf);
-		if (loc != null) {	
-			GridCell[] neighbors = 
-				getNeighborCellsByCoord(netinterf.getLocation());
-			for (int i=0; i < neighbors.length; i++) {
-				ni.addAll(neighbors[i].getInterfaces());
-			}
+		if (loc == null) {
+			return Collections.emptyList();
 		}
-		return ni;
+		
+		return cellFromCoord(netinterf.getLocation()).getNearInterfaces();
 	}
 
 
@@ -236,10 +229,20 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 		// how large array is initially chosen
 		private static final int EXPECTED_INTERFACE_COUNT = 5;
 		private ArrayList<NetworkInterface> interfaces;
+		/** interfaces in this and the neighboring cells */
+		private ArrayList<NetworkInterface> near;
+		/** true if the near interfaces list needs to be rebuilt */
+		private boolean nearDirty;
+		/** row & column indexes of the cell in the grid */
+		private final int row;
+		private final int col;
 
-		private GridCell() {
+		private GridCell(int row, int col) {
 			this.interfaces = new ArrayList<NetworkInterface>(
 					EXPECTED_INTERFACE_COUNT);
+			this.row = row;
+			this.col = col;
+			this.nearDirty = true;
 		}
 
 		/**
@@ -250,6 +253,29 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 			return this.interfaces;
 		}
 
+		/**
+		 * Returns a list of interfaces in this cell and the neighboring
+		 * cells. The list is rebuilt if some of the cells have changed
+		 * since the last call.
+		 * @return a list of interfaces in this and the neighboring cells
+		 */
+		public List<NetworkInterface> getNearInterfaces() {
+			if (this.near == null) {
+				this.near = new ArrayList<NetworkInterface>(
+						EXPECTED_INTERFACE_COUNT * 9);
+			}
+			if (this.nearDirty) {
+				this.near.clear();
+				for (int i = row - 1; i <= row + 1; i++) {
+					for (int j = col - 1; j <= col + 1; j++) {
+						this.near.addAll(cells[i][j].interfaces);
+					}
+				}
+				this.nearDirty = false;
+			}
+			return this.near;
+		}
+
 		/**
 		 * Adds an interface to this cell
 		 * @param ni The interface to add
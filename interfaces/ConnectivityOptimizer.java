@@ -5,6 +5,7 @@
 package interfaces;
 
 import java.util.Collection;
+import java.util.List;
 
 import core.NetworkInterface;
 
@@ -35,9 +36,10 @@ abstract public class ConnectivityOptimizer {
 	 * connected with the network interface
 	 * 
 	 * @param ni network interface that needs to be connected
-	 * @return A collection of network interfaces within proximity
+	 * @return A list of network interfaces within proximity. The list may be
+	 * reused by the optimizer so it must not be modified or stored.
 	 */
-	abstract public Collection<NetworkInterface> getNearInterfaces(
+	abstract public List<NetworkInterface> getNearInterfaces(
 			NetworkInterface ni);
 
 	/**
@@ -4,7 +4,7 @@
  */
 package interfaces;
 
-import java.util.Collection;
+import java.util.List;
 
 import core.Connection;
 import core.DTNHost;
@@ -95,10 +95,11 @@ public class InterferenceLimitedInterface extends NetworkInterface {
 			}
 		}
 		// Then find new possible connections
-		Collection<NetworkInterface> interfaces = 
+		List<NetworkInterface> interfaces = 
 			optimizer.getNearInterfaces(this);
-		for (NetworkInterface i : interfaces) 
-			connect(i);
+		for (int i=0, n=interfaces.size(); i < n; i++) {
+			connect(interfaces.get(i));
+		}
 
 		// Find the current number of transmissions
 		// (to calculate the current transmission speed
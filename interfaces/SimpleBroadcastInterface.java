@@ -4,7 +4,7 @@
  */
 package interfaces;
 
-import java.util.Collection;
+import java.util.List;
 
 import core.CBRConnection;
 import core.Connection;
@@ -84,10 +84,10 @@ public class SimpleBroadcastInterface extends NetworkInterface {
 			}
 		}
 		// Then find new possible connections
-		Collection<NetworkInterface> interfaces =
+		List<NetworkInterface> interfaces =
 			optimizer.getNearInterfaces(this);
-		for (NetworkInterface i : interfaces) {
-			connect(i);
+		for (int i=0, n=interfaces.size(); i < n; i++) {
+			connect(interfaces.get(i));
 		}
 	}
 
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package interfaces;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import core.DTNSim;
+import core.NetworkInterface;
+import core.SimContext;
+
+/**
+ * <P>Sweep-and-prune connectivity optimizer. The interfaces are kept in a
+ * list that is sorted by the interfaces' x coordinates and the interfaces
+ * that might be in range of an interface are found by sweeping the list
+ * to both directions until the x distance exceeds the interface's
+ * transmit range. Interfaces whose y distance is too large are pruned
+ * from the result.</P>
+ *
+ * <P>Unlike {@link ConnectivityGrid}, this optimizer has no cell size to
+ * tune, so fast moving interfaces don't cause cell changes and long
+ * ranges don't result in large candidate lists. Since the interfaces
+ * usually move only a little between updates, the list is re-sorted with
+ * insertion sort which takes close to linear time for nearly sorted data.
+ * The list is re-sorted lazily, only when some interface has moved along
+ * the x axis since the last sort.</P>
+ *
+ * <P>The optimizer is selected per interface type with the
+ * {@link NetworkInterface#OPTIMIZER_S} setting.</P>
+ */
+public class SweepAndPruneOptimizer extends ConnectivityOptimizer {
+	/** Initial capacity of the arrays */
+	private static final int INIT_SIZE = 16;
+
+	/** interfaces sorted by their x coordinate */
+	private ArrayList<NetworkInterface> sorted;
+	/** x coordinates of the sorted interfaces at the time of the last sort */
+	private double[] xs;
+	/** indexes of the interfaces in the sorted list, indexed by address */
+	private int[] positions;
+	/** true if the list needs to be re-sorted */
+	private boolean dirty;
+	/** reused list of near interfaces */
+	private ArrayList<NetworkInterface> near;
+
+	static {
+		DTNSim.registerForReset(
+				SweepAndPruneOptimizer.class.getCanonicalName());
+	}
+
+	/**
+	 * Removes the optimizers of the current simulation context
+	 */
+	public static void reset() {
+		SimContext.getCurrent().clearRegistry(SweepAndPruneOptimizer.class);
+	}
+
+	private SweepAndPruneOptimizer() {
+		this.sorted = new ArrayList<NetworkInterface>();
+		this.xs = new double[INIT_SIZE];
+		this.positions = new int[INIT_SIZE];
+		this.near = new ArrayList<NetworkInterface>();
+		this.dirty = false;
+	}
+
+	/**
+	 * Returns a sweep-and-prune optimizer object based on a hash value
+	 * @param key A hash value that separates different interfaces from each
+	 * other
+	 * @return The optimizer object for a specific interface
+	 */
+	public static SweepAndPruneOptimizer getOptimizer(int key) {
+		HashMap<Integer, SweepAndPruneOptimizer> optimizers =
+			SimContext.getCurrent().getRegistry(SweepAndPruneOptimizer.class);
+		SweepAndPruneOptimizer sap = optimizers.get(key);
+		if (sap == null) {
+			sap = new SweepAndPruneOptimizer();
+			optimizers.put(key, sap);
+		}
+		return sap;
+	}
+
+	/**
+	 * Adds a network interface to the optimizer (unless it is already
+	 * present)
+	 * @param ni The new network interface
+	 */
+	public void addInterface(NetworkInterface ni) {
+		int address = ni.getAddress();
+		if (address < positions.length && positions[address] < sorted.size()
+				&& sorted.get(positions[address]) == ni) {
+			return; /* already added */
+		}
+
+		if (address >= positions.length) {
+			positions = Arrays.copyOf(positions,
+					Math.max(address + 1, positions.length * 2));
+		}
+		int index = sorted.size();
+		if (index == xs.length) {
+			xs = Arrays.copyOf(xs, index * 2);
+		}
+
+		sorted.add(ni);
+		xs[index] = ni.getLocation().getX();
+		positions[address] = index;
+		this.dirty = true;
+	}
+
+	/**
+	 * Adds interfaces to the optimizer
+	 * @param interfaces Collection of interfaces to add
+	 */
+	public void addInterfaces(Collection<NetworkInterface> interfaces) {
+		for (NetworkInterface n : interfaces) {
+			addInterface(n);
+		}
+	}
+
+	/**
+	 * Checks if the interface has moved along the x axis since the last
+	 * sort (and the sorted list needs to be updated)
+	 * @param ni The interface to update
+	 */
+	public void updateLocation(NetworkInterface ni) {
+		if (!dirty && xs[positions[ni.getAddress()]] !=
+				ni.getLocation().getX()) {
+			this.dirty = true;
+		}
+	}
+
+	/**
+	 * Returns all interfaces that are close enough (in both x and y
+	 * direction) to be within the transmit range of the given interface.
+	 * The interfaces are in the order of their x coordinates. The returned
+	 * list is reused on the next call; it must not be modified.
+	 */
+	public List<NetworkInterface> getNearInterfaces(NetworkInterface ni) {
+		near.clear();
+		if (sorted.isEmpty()) {
+			return near;
+		}
+		if (dirty) {
+			sort();
+		}
+
+		double range = ni.getTransmitRange();
+		double x = ni.getLocation().getX();
+		double y = ni.getLocation().getY();
+		int index = positions[ni.getAddress()];
+
+		int first = index;
+		while (first > 0 && x - xs[first - 1] <= range) {
+			first--;
+		}
+		for (int i = first, n = sorted.size(); i < n; i++) {
+			if (xs[i] - x > range) {
+				break;
+			}
+			NetworkInterface other = sorted.get(i);
+			if (Math.abs(other.getLocation().getY() - y) <= range) {
+				near.add(other);
+			}
+		}
+
+		return near;
+	}
+
+	/**
+	 * Updates the x coordinates of all the interfaces and sorts the list
+	 * using insertion sort
+	 */
+	private void sort() {
+		int n = sorted.size();
+		for (int i = 0; i < n; i++) {
+			xs[i] = sorted.get(i).getLocation().getX();
+		}
+
+		for (int i = 1; i < n; i++) {
+			double x = xs[i];
+			if (xs[i - 1] <= x) {
+				continue;
+			}
+			NetworkInterface ni = sorted.get(i);
+			int j = i - 1;
+			while (j >= 0 && xs[j] > x) {
+				xs[j + 1] = xs[j];
+				sorted.set(j + 1, sorted.get(j));
+				j--;
+			}
+			xs[j + 1] = x;
+			sorted.set(j + 1, ni);
+		}
+
+		for (int i = 0; i < n; i++) {
+			positions[sorted.get(i).getAddress()] = i;
+		}
+		this.dirty = false;
+	}
+
+	/**
+	 * Returns all interfaces that use the same technology and channel
+	 */
+	public Collection<NetworkInterface> getAllInterfaces() {
+		return Collections.unmodifiableList(sorted);
+	}
+
+	/**
+	 * Returns a string representation of the object
+	 * @return a string representation of the object
+	 */
+	public String toString() {
+		return getClass().getSimpleName() + " with " + sorted.size() +
+			" interfaces";
+	}
+}
@@ -78,20 +78,51 @@ public class ActivenessHandler {
 			return true; // no inactive times 
 		}
 		
-		if (curRange == null) {
-			return false; // out of active times
-		}
-		
-		double time = SimClock.getTime();
-		
-		if (this.curRange.isOut(time)) { // time for the next time range
-			this.curRange = activeTimes.poll();
+		/* the handler is shared by all replicas of a movement model and
+		 * hosts may be moved concurrently (see World's parallel moves) */
+		synchronized (this) {
 			if (curRange == null) {
 				return false; // out of active times
 			}
+			
+			double time = SimClock.getTime();
+			
+			if (this.curRange.isOut(time)) { // time for the next time range
+				this.curRange = activeTimes.poll();
+				if (curRange == null) {
+					return false; // out of active times
+				}
+			}
+			
+			return curRange.isInRange(time);
+		}
+	}
+
+	/**
+	 * Returns the next time when the activeness of the node may change
+	 * @return The time of the next change (or Double.MAX_VALUE if the 
+	 * activeness won't change any more)
+	 */
+	public double nextChangeTime() {
+		if (this.activeTimes == null) {
+			return Double.MAX_VALUE;
 		}
 		
-		return curRange.isInRange(time);
+		synchronized (this) {
+			if (curRange == null) {
+				return Double.MAX_VALUE;
+			}
+			
+			double time = SimClock.getTime();
+			if (time < curRange.start) {
+				return curRange.start;
+			}
+			if (!curRange.isOut(time)) {
+				return curRange.end;
+			}
+			TimeRange next = activeTimes.peek();
+			return next == null ? Double.MAX_VALUE : next.start;
+		}
 	}
 
 	/**
@@ -72,7 +72,7 @@ public class EveningActivityMovement extends MapBasedMovement
 	public EveningActivityMovement(Settings settings) {
 		super(settings);
 		super.backAllowed = false;
-		pathFinder = new DijkstraPathFinder(null);
+		pathFinder = new DijkstraPathFinder(null, getMap());
 		mode = WALKING_TO_MEETING_SPOT_MODE;
 		
 		nrOfMeetingSpots = settings.getInt(NR_OF_MEETING_SPOTS_SETTING);
@@ -153,6 +153,11 @@ public class ExternalMovement extends MovementModel {
 	public boolean isActive() {
 		return isActive;
 	}
+	
+	@Override
+	public double nextActivenessChange() {
+		return SimClock.getTime(); /* changes as the movement data is read */
+	}
 
 	/**
 	 * Adds a new location with a time to this model's move pattern. If the
@@ -9,15 +9,17 @@ import input.WKTMapReader;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
 import java.util.Set;
-import java.util.Vector;
 
+import movement.map.MapCache;
 import movement.map.MapNode;
+import movement.map.RoadGraph;
 import movement.map.SimMap;
 import core.Coord;
 import core.Settings;
@@ -45,6 +47,19 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 	public static final String NROF_FILES_S = "nrofMapFiles";
 	/** map file -setting id ({@value})*/
 	public static final String FILE_S = "mapFile";
+	/**
+	 * Directory for compiled maps -setting id ({@value}). If set, the map
+	 * read from the map files is compiled to a binary file in this directory
+	 * and later runs load the compiled map instead of parsing the files, as
+	 * long as the contents of the map files don't change. 
+	 * Default is not to use compiled maps.
+	 * @see MapCache
+	 */
+	public static final String CACHE_DIR_S = "mapCacheDir";
+	/** Prefix of the compiled map file names ({@value}) */
+	public static final String CACHE_FILE_PREFIX = "map_";
+	/** Suffix of the compiled map file names ({@value}) */
+	public static final String CACHE_FILE_SUFFIX = ".bin";
 	
 	/** 
 	 * Per node group setting for selecting map node types that are OK for
@@ -57,6 +72,10 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 	
 	/** the indexes of the OK map files or null if all maps are OK */
 	private int [] okMapNodeTypes;
+	/** type mask of the OK map node types */
+	private int okMapNodeMask;
+	/** road graph of the map (or of the last map node's component) */
+	private RoadGraph roadGraph;
 	
 	/** how many map files are read */
 	private int nrofMapFilesRead = 0;
@@ -64,6 +83,8 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 	private static SimMap cachedMap = null;
 	/** names of the previously cached map's files (for hit comparison) */
 	private static List<String> cachedMapFiles = null;
+	/** has failing to write a compiled map been warned about already */
+	private static boolean cacheWriteWarned = false;
 	
 	/**
 	 * Creates a new MapBasedMovement based on a Settings object's settings.
@@ -120,6 +141,8 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 		else {
 			this.okMapNodeTypes = null;
 		}		
+		this.okMapNodeMask = okMapNodeTypes != null ? 
+				RoadGraph.toTypeMask(okMapNodeTypes) : 0;
 	}
 	
 	/**
@@ -129,6 +152,8 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 	protected MapBasedMovement(MapBasedMovement mbm) {
 		super(mbm);
 		this.okMapNodeTypes = mbm.okMapNodeTypes;
+		this.okMapNodeMask = mbm.okMapNodeMask;
+		this.roadGraph = mbm.roadGraph;
 		this.map = mbm.map;
 		this.minPathLength = mbm.minPathLength;
 		this.maxPathLength = mbm.maxPathLength;
@@ -180,58 +205,84 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 	@Override
 	public Path getPath() {
 		Path p = new Path(generateSpeed());
-		MapNode curNode = lastMapNode;
-		MapNode prevNode = lastMapNode;
-		MapNode nextNode = null;	
-		List<MapNode> neighbors;
-		Coord nextCoord;
 		
 		assert lastMapNode != null: "Tried to get a path before placement";
 		
+		RoadGraph graph = getRoadGraph(lastMapNode);
+		int curNode = graph.getIndex(lastMapNode);
+		int prevNode = curNode;
+		int nextNode;
+		
 		// start paths from current node 
-		p.addWaypoint(curNode.getLocation());
+		p.addWaypoint(lastMapNode.getLocation());
 		
 		int pathLength = rng.nextInt(maxPathLength-minPathLength) + 
 			minPathLength;
 
 		for (int i=0; i<pathLength; i++) {
-			neighbors = curNode.getNeighbors();
-			Vector<MapNode> n2 = new Vector<MapNode>(neighbors);
-			if (!this.backAllowed) {
-				n2.remove(prevNode); // to prevent going back
-			}	
-				
-			if (okMapNodeTypes != null) { //remove neighbor nodes that aren't ok
-				for (int j=0; j < n2.size(); ){
-					if (!n2.get(j).isType(okMapNodeTypes)) {
-						n2.remove(j);
-					}
-					else {
-						j++;
-					}
+			int first = graph.getEdgeStart(curNode);
+			int end = graph.getEdgeEnd(curNode);
+			int nrofOk = 0;
+			for (int e = first; e < end; e++) {
+				if (isOkNextNode(graph, graph.getNeighbor(e), prevNode)) {
+					nrofOk++;
 				}
 			}
 			
-			if (n2.size() == 0) { // only option is to go back
-				nextNode = prevNode;
-			}
-			else { // choose a random node from remaining neighbors
-				nextNode = n2.get(rng.nextInt(n2.size()));
+			nextNode = prevNode; // if there are no OK nodes, go back
+			if (nrofOk > 0) { // choose a random node from OK neighbors
+				int choice = rng.nextInt(nrofOk);
+				for (int e = first; e < end; e++) {
+					int n = graph.getNeighbor(e);
+					if (isOkNextNode(graph, n, prevNode) && choice-- == 0) {
+						nextNode = n;
+						break;
+					}
+				}
 			}
 			
 			prevNode = curNode;
-		
-			nextCoord = nextNode.getLocation();
 			curNode = nextNode;
 			
-			p.addWaypoint(nextCoord);
+			p.addWaypoint(graph.getNode(nextNode).getLocation());
 		}
 		
-		lastMapNode = curNode;
+		lastMapNode = graph.getNode(curNode);
 
 		return p;
 	}
 	
+	/**
+	 * Returns true if a neighbor node can be chosen as the next node of a
+	 * path
+	 * @param graph The road graph
+	 * @param node Index of the neighbor node
+	 * @param prevNode Index of the previous node of the path
+	 * @return True if the node's type is OK and, unless going back is
+	 * allowed, it is not the previous node
+	 */
+	private boolean isOkNextNode(RoadGraph graph, int node, int prevNode) {
+		if (!this.backAllowed && node == prevNode) {
+			return false; // to prevent going back
+		}
+		return okMapNodeTypes == null || graph.isType(node, okMapNodeMask);
+	}
+	
+	/**
+	 * Returns a road graph that contains the given node. Normally that is
+	 * the map's shared road graph.
+	 * @param node The node
+	 * @return The road graph
+	 */
+	private RoadGraph getRoadGraph(MapNode node) {
+		if (this.roadGraph == null || this.roadGraph.getIndex(node) < 0) {
+			RoadGraph mapGraph = map.getRoadGraph();
+			this.roadGraph = mapGraph.getIndex(node) >= 0 ? mapGraph :
+				new RoadGraph(Collections.singletonList(node));
+		}
+		return this.roadGraph;
+	}
+	
 	/**
 	 * Selects and returns a random node that is OK from a list of nodes.
 	 * Whether node is OK, is determined by the okMapNodeTypes list.
@@ -283,32 +334,72 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 			}
 		}
 
+		int nrofMapFiles = settings.getInt(NROF_FILES_S);
+		List<File> files = new ArrayList<File>();
+		for (int i = 1; i <= nrofMapFiles; i++ ) {
+			String pathFile = settings.getSetting(FILE_S + i);
+			cachedMapFiles.add(pathFile);
+			files.add(new File(pathFile));
+		}
+		nrofMapFilesRead = nrofMapFiles;
+		
 		try {
-			int nrofMapFiles = settings.getInt(NROF_FILES_S);
-
-			for (int i = 1; i <= nrofMapFiles; i++ ) {
-				String pathFile = settings.getSetting(FILE_S + i);
-				cachedMapFiles.add(pathFile);
-				r.addPaths(new File(pathFile), i);
+			File compiled = null;
+			String key = null;
+			simMap = null;
+			if (settings.contains(CACHE_DIR_S)) {
+				key = MapCache.getKey(files);
+				compiled = new File(settings.getSetting(CACHE_DIR_S), 
+						CACHE_FILE_PREFIX + key + CACHE_FILE_SUFFIX);
+				simMap = MapCache.read(compiled, key);
 			}
 			
-			nrofMapFilesRead = nrofMapFiles;
+			if (simMap == null) {
+				for (int i = 1; i <= nrofMapFiles; i++ ) {
+					r.addPaths(files.get(i-1), i);
+				}
+				simMap = r.getMap();
+				checkMapConnectedness(simMap.getNodes());
+				// mirrors the map (y' = -y) and moves its upper left corner 
+				// to origo
+				simMap.mirror();
+				Coord offset = simMap.getMinBound().clone();		
+				simMap.translate(-offset.getX(), -offset.getY());
+				
+				if (compiled != null) {
+					writeCompiledMap(compiled, key, simMap);
+				}
+			}
 		} catch (IOException e) {
 			throw new SimError(e.toString(),e);
 		}
-
-		simMap = r.getMap();
-		checkMapConnectedness(simMap.getNodes());
-		// mirrors the map (y' = -y) and moves its upper left corner to origo
-		simMap.mirror();
-		Coord offset = simMap.getMinBound().clone();		
-		simMap.translate(-offset.getX(), -offset.getY());
+		
 		checkCoordValidity(simMap.getNodes());
 		
 		cachedMap = simMap;
 		return simMap;
 	}
 	
+	/**
+	 * Writes a compiled map for the later runs. The compiled map is only an
+	 * optimization, so a failure is warned about (once) and otherwise
+	 * ignored.
+	 * @param compiled The compiled map file
+	 * @param key Key of the map files
+	 * @param map The map to write
+	 */
+	private void writeCompiledMap(File compiled, String key, SimMap map) {
+		try {
+			MapCache.write(compiled, key, map);
+		} catch (IOException e) {
+			if (!cacheWriteWarned) {
+				System.err.println("Warning: can't write compiled map " + 
+						compiled + " (" + e + "); using the parsed map");
+				cacheWriteWarned = true;
+			}
+		}
+	}
+	
 	/**
 	 * Checks that all map nodes can be reached from all other map nodes
 	 * @param nodes The list of nodes to check
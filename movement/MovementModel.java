@@ -210,6 +210,15 @@ public abstract class MovementModel {
 	public boolean isActive() {
 		return ah.isActive();
 	}
+	
+	/**
+	 * Returns the next time when the node's activeness may change
+	 * @return The time of the next change (or Double.MAX_VALUE if the 
+	 * activeness won't change any more)
+	 */
+	public double nextActivenessChange() {
+		return ah.nextChangeTime();
+	}
 		
 	/**
 	 * Returns a sim time when the next path is available. This implementation
@@ -4,65 +4,69 @@
  */
 package movement.map;
 
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Queue;
-import java.util.Set;
+
+import routing.util.DijkstraEngine;
 
 /**
- * Implementation of the Dijkstra's shortest path algorithm.
+ * Implementation of the Dijkstra's shortest path algorithm. The searches are
+ * done in a {@link RoadGraph} using a reusable {@link DijkstraEngine}, so
+ * a search doesn't create any objects except the returned path. The engine
+ * identifies the nodes by their coordinate order ranks, so equally distant
+ * nodes are handled in the order of their coordinates.
  */
 public class DijkstraPathFinder {
-	/** Value for infinite distance  */
-	private static final Double INFINITY = Double.MAX_VALUE;
-	/** Initial size of the priority queue */
-	private static final int PQ_INIT_SIZE = 11;
-
-	/** Map of node distances from the source node */
-	private DistanceMap distances;
-	/** Set of already visited nodes (where the shortest path is known) */
-	private Set<MapNode> visited;
-	/** Priority queue of unvisited nodes discovered so far */
-	private Queue<MapNode> unvisited;
-	/** Map of previous nodes on the shortest path(s) */
-	private Map<MapNode, MapNode> prevNodes;
+	/** The graph where the paths are searched from */
+	private RoadGraph graph;
+	/** State of the searches */
+	private DijkstraEngine engine;
+	/** Ranks of the previous nodes on the shortest paths, indexed by rank */
+	private int[] prevNodes;
+	/** Type mask of the nodes that are OK for paths */
+	private int okMapNodeMask;
+	/** Are all nodes OK for paths (no node types were given) */
+	private boolean allNodesOk;
 
-	private int [] okMapNodes;
-	
 	/**
-	 * Constructor.
+	 * Constructor. The paths are searched from a graph of the nodes 
+	 * reachable from the path's source node. The graph is created on the
+	 * first search and when a path is requested from a node that is not in
+	 * the graph, so the map nodes must not change between the searches.
 	 * @param okMapNodes The map node types that are OK for paths or null if
 	 * all nodes are OK
 	 */
 	public DijkstraPathFinder(int [] okMapNodes) {
-		super();
-		this.okMapNodes = okMapNodes;
+		this(okMapNodes, null);
 	}
 
 	/**
-	 * Initializes a new search with a source node
-	 * @param node The path's source node
+	 * Constructor. The paths are searched from the map's shared road graph.
+	 * @param okMapNodes The map node types that are OK for paths or null if
+	 * all nodes are OK
+	 * @param map The map whose nodes the paths are requested for or null
+	 * if the paths are between nodes of no specific map
+	 * @see SimMap#getRoadGraph()
 	 */
-	private void initWith(MapNode node) {
-		assert (okMapNodes != null ? node.isType(okMapNodes) : true);
-		
-		// create needed data structures
-		this.unvisited = new PriorityQueue<MapNode>(PQ_INIT_SIZE, 
-				new DistanceComparator());
-		this.visited = new HashSet<MapNode>();
-		this.prevNodes = new HashMap<MapNode, MapNode>();
-		this.distances = new DistanceMap();
-		
-		// set distance to source 0 and initialize unvisited queue
-		this.distances.put(node, 0);
-		this.unvisited.add(node);
+	public DijkstraPathFinder(int [] okMapNodes, SimMap map) {
+		this.allNodesOk = okMapNodes == null;
+		this.okMapNodeMask = allNodesOk ? 0 : RoadGraph.toTypeMask(okMapNodes);
+		this.engine = new DijkstraEngine();
+		if (map != null) {
+			setGraph(map.getRoadGraph());
+		}
 	}
-	
+
+	/**
+	 * Sets the graph where the paths are searched from
+	 * @param graph The graph
+	 */
+	private void setGraph(RoadGraph graph) {
+		this.graph = graph;
+		this.prevNodes = new int[graph.getNrofNodes()];
+	}
+
 	/**
 	 * Finds and returns a shortest path between two map nodes
 	 * @param from The source of the path
@@ -71,36 +75,43 @@ public class DijkstraPathFinder {
 	 * a list of MapNodes or an empty list if such path is not available
 	 */
 	public List<MapNode> getShortestPath(MapNode from, MapNode to) {
-		List<MapNode> path = new LinkedList<MapNode>();
+		List<MapNode> path = new ArrayList<MapNode>();
 		
 		if (from.compareTo(to) == 0) { // source and destination are the same
 			path.add(from); // return a list containing only source node
 			return path;
 		}
 		
-		initWith(from);
-		MapNode node = null;
+		assert allNodesOk || (from.getTypeMask() & okMapNodeMask) != 0;
+		
+		if (graph == null || graph.getIndex(from) < 0) {
+			setGraph(new RoadGraph(Collections.singletonList(from)));
+		}
+		int source = graph.getRank(graph.getIndex(from));
+		int target = graph.getIndex(to);
+		if (target < 0) {
+			return path; // not reachable from the source
+		}
+		target = graph.getRank(target);
+		
+		engine.init(source, 0);
+		int node;
 		
 		// always take the node with shortest distance
-		while ((node = unvisited.poll()) != null) {
-			if (node == to) {
+		while ((node = engine.poll()) >= 0) {
+			if (node == target) {
 				break; // we found the destination -> no need to search further
 			}
-			
-			visited.add(node); // mark the node as visited
 			relax(node); // add/update neighbor nodes' distances
 		}
 		
 		// now we either have the path or such path wasn't available
-		if (node == to) { // found a path
-			path.add(0,to); 
-			MapNode prev = prevNodes.get(to); 
-			while (prev != from) { 
-				path.add(0, prev);	// always put previous node to beginning
-				prev = prevNodes.get(prev);
+		if (node == target) { // found a path
+			for (node = target; node != source; node = prevNodes[node]) {
+				path.add(graph.getNode(graph.getByRank(node)));
 			}
-			
-			path.add(0, from); // finally put the source node to first node
+			path.add(from); // finally put the source node to last node
+			Collections.reverse(path);
 		}
 		
 		return path;
@@ -108,121 +119,23 @@ public class DijkstraPathFinder {
 	
 	/**
 	 * Relaxes the neighbors of a node (updates the shortest distances).
-	 * @param node The node whose neighbors are relaxed
+	 * @param rank Rank of the node whose neighbors are relaxed
 	 */
-	private void relax(MapNode node) {
-		double nodeDist = distances.get(node);
-		for (MapNode n : node.getNeighbors()) {
-			if (visited.contains(n)) {
-				continue; // skip visited nodes
-			}
-			
-			if (okMapNodes != null && !n.isType(okMapNodes)) {
+	private void relax(int rank) {
+		double nodeDist = engine.getDistance(rank);
+		int node = graph.getByRank(rank);
+		for (int e = graph.getEdgeStart(node), end = graph.getEdgeEnd(node);
+				e < end; e++) {
+			int n = graph.getNeighbor(e);
+			if (!allNodesOk && !graph.isType(n, okMapNodeMask)) {
 				continue; // skip nodes that are not OK
 			}
 			
 			// n node's distance from path's source node
-			double nDist = nodeDist + getDistance(node, n);
-			
-			if (distances.get(n) > nDist) { // stored distance > found dist?
-				prevNodes.put(n, node);
-				setDistance(n, nDist);
+			int nRank = graph.getRank(n);
+			if (engine.offer(nRank, nodeDist + graph.getLength(e))) {
+				prevNodes[nRank] = rank;
 			}
 		}
 	}
-	
-	/**
-	 * Sets the distance from source node to a node
-	 * @param n The node whose distance is set
-	 * @param distance The distance of the node from the source node
-	 */
-	private void setDistance(MapNode n, double distance) {
-		unvisited.remove(n); // remove node from old place in the queue
-		distances.put(n, distance); // update distance
-		unvisited.add(n); // insert node to the new place in the queue
-	}
-	
-	/**
-	 * Returns the (euclidean) distance between the two map nodes
-	 * @param from The first node
-	 * @param to The second node
-	 * @return Euclidean distance between the two map nodes
-	 */
-	private double getDistance(MapNode from, MapNode to) {
-		return from.getLocation().distance(to.getLocation());
-	}
-	
-	/**
-	 * Comparator that compares two map nodes by their distance from
-	 * the source node.
-	 */
-	private class DistanceComparator implements Comparator<MapNode> {
-		
-		/**
-		 * Compares two map nodes by their distance from the source node
-		 * @return -1, 0 or 1 if node1's distance is smaller, equal to, or
-		 * bigger than node2's distance
-		 */
-		public int compare(MapNode node1, MapNode node2) {
-			double dist1 = distances.get(node1);
-			double dist2 = distances.get(node2);
-			
-			if (dist1 > dist2) {
-				return 1;
-			}
-			else if (dist1 < dist2) {
-				return -1;
-			}
-			else {
-				return node1.compareTo(node2);
-			}
-		}
-	}
-	
-	/**
-	 * Simple Map implementation for storing distances. 
-	 */
-	private class DistanceMap {
-		private HashMap<MapNode, Double> map;
-		
-		/**
-		 * Constructor. Creates an empty distance map
-		 */
-		public DistanceMap() {
-			this.map = new HashMap<MapNode, Double>(); 
-		}
-		
-		/**
-		 * Returns the distance to a node. If no distance value
-		 * is found, returns {@link DijkstraPathFinder#INFINITY} as the value.
-		 * @param node The node whose distance is requested
-		 * @return The distance to that node
-		 */
-		public double get(MapNode node) {
-			Double value = map.get(node);
-			if (value != null) {
-				return value;
-			}
-			else {
-				return INFINITY;
-			}
-		}
-		
-		/**
-		 * Puts a new distance value for a map node
-		 * @param node The node
-		 * @param distance Distance to that node
-		 */
-		public void  put(MapNode node, double distance) {
-			map.put(node, distance);
-		}
-		
-		/**
-		 * Returns a string representation of the map's contents
-		 * @return a string representation of the map's contents
-		 */
-		public String toString() {
-			return map.toString();
-		}
-	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package movement.map;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import core.Coord;
+
+/**
+ * <P>Compiled binary form of a {@link SimMap}. The file contains the node
+ * coordinates, node type masks, neighbors in compressed sparse row form and
+ * the map's offset, so a map can be loaded without parsing the map files
+ * again. The file is read through a memory mapped buffer.</P>
+ *
+ * <P>Every compiled map has a key that is the SHA-1 hash of the contents of
+ * the source map files. A compiled map is only loaded if its key matches
+ * the key of the current source files. The order of the nodes and
+ * neighbors is the same as in the original map, so the simulation results
+ * don't depend on whether the map was compiled or parsed.</P>
+ */
+public class MapCache {
+	/** Identifier at the start of compiled map files */
+	private static final int MAGIC = 0x4F4E454D; // "ONEM"
+	/** Version of the file format */
+	private static final int VERSION = 1;
+	/** Size of the buffer used for hashing files */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/** Not used; this class has only static methods */
+	private MapCache() { }
+
+	/**
+	 * Returns the key of the map that is read from the given files. The key
+	 * changes if any of the files' contents or their order changes.
+	 * @param files The map files in the order they are read
+	 * @return The key as a hexadecimal string
+	 * @throws IOException if reading a file fails
+	 */
+	public static String getKey(List<File> files) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+
+		byte[] buffer = new byte[BUFFER_SIZE];
+		for (File f : files) {
+			long length = f.length();
+			for (int i = 0; i < 8; i++) { // separates the files' contents
+				digest.update((byte)(length >>> (8 * i)));
+			}
+			InputStream in = new FileInputStream(f);
+			try {
+				int n;
+				while ((n = in.read(buffer)) > 0) {
+					digest.update(buffer, 0, n);
+				}
+			} finally {
+				in.close();
+			}
+		}
+
+		StringBuilder key = new StringBuilder();
+		for (byte b : digest.digest()) {
+			key.append(String.format("%02x", b));
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Reads a compiled map
+	 * @param file The compiled map file
+	 * @param key Key of the current source files
+	 * @return The map or null if the file doesn't exist, is not a compiled
+	 * map, is truncated or corrupted, or was compiled from different source
+	 * files
+	 * @throws IOException if reading the file fails
+	 */
+	public static SimMap read(File file, String key) throws IOException {
+		if (!file.isFile()) {
+			return null;
+		}
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY,
+					0, channel.size());
+			return read(buf, key);
+		} catch (BufferUnderflowException e) {
+			return null; // truncated file
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Reads a compiled map from a buffer
+	 * @param buf The buffer
+	 * @param key Key of the current source files
+	 * @return The map or null if the buffer doesn't contain a valid map 
+	 * with the right key
+	 */
+	private static SimMap read(MappedByteBuffer buf, String key) {
+		if (buf.remaining() < 12 || buf.getInt() != MAGIC ||
+				buf.getInt() != VERSION) {
+			return null;
+		}
+		if (buf.getInt() != key.length()) {
+			return null;
+		}
+		byte[] fileKey = new byte[key.length()];
+		buf.get(fileKey);
+		if (!key.equals(new String(fileKey))) {
+			return null;
+		}
+
+		int nrofNodes = buf.getInt();
+		/* every node has coordinates, a type mask and an edge start index */
+		if (nrofNodes < 0 || nrofNodes > buf.remaining() / (16 + 4 + 4)) {
+			return null;
+		}
+		Coord offset = new Coord(buf.getDouble(), buf.getDouble());
+		boolean isMirrored = buf.get() != 0;
+
+		List<MapNode> nodes = new ArrayList<MapNode>(nrofNodes);
+		for (int i = 0; i < nrofNodes; i++) {
+			nodes.add(new MapNode(new Coord(buf.getDouble(), buf.getDouble())));
+		}
+		for (MapNode n : nodes) {
+			int types = buf.getInt();
+			for (int t = MapNode.MIN_TYPE; t <= MapNode.MAX_TYPE; t++) {
+				if ((types & (1 << t)) != 0) {
+					n.addType(t);
+				}
+			}
+		}
+		int[] edgeStart = new int[nrofNodes + 1];
+		buf.asIntBuffer().get(edgeStart);
+		buf.position(buf.position() + 4 * edgeStart.length);
+		if (edgeStart[0] != 0 || edgeStart[nrofNodes] > buf.remaining() / 4) {
+			return null;
+		}
+		for (int i = 0; i < nrofNodes; i++) {
+			if (edgeStart[i+1] < edgeStart[i]) {
+				return null;
+			}
+		}
+		for (int i = 0; i < nrofNodes; i++) {
+			MapNode n = nodes.get(i);
+			for (int e = edgeStart[i]; e < edgeStart[i+1]; e++) {
+				int neighbor = buf.getInt();
+				if (neighbor < 0 || neighbor >= nrofNodes) {
+					return null;
+				}
+				n.addNeighbor(nodes.get(neighbor));
+			}
+		}
+
+		return new SimMap(nodes, offset, isMirrored);
+	}
+
+	/**
+	 * Writes a compiled map. The map is first written to a temporary file
+	 * that is then renamed, so concurrent readers never see partial files.
+	 * @param file The compiled map file
+	 * @param key Key of the map's source files
+	 * @param map The map
+	 * @throws IOException if writing the file fails
+	 */
+	public static void write(File file, String key, SimMap map)
+			throws IOException {
+		List<MapNode> nodes = map.getNodes();
+		Map<MapNode, Integer> indexes = new HashMap<MapNode, Integer>();
+		for (int i = 0; i < nodes.size(); i++) {
+			indexes.put(nodes.get(i), i);
+		}
+
+		File dir = file.getAbsoluteFile().getParentFile();
+		dir.mkdirs();
+		File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(tmp)));
+		boolean written = false;
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(key.length());
+			out.writeBytes(key);
+
+			out.writeInt(nodes.size());
+			out.writeDouble(map.getOffset().getX());
+			out.writeDouble(map.getOffset().getY());
+			out.writeBoolean(map.isMirrored());
+			for (MapNode n : nodes) {
+				out.writeDouble(n.getLocation().getX());
+				out.writeDouble(n.getLocation().getY());
+			}
+			for (MapNode n : nodes) {
+				out.writeInt(n.getTypeMask());
+			}
+			int nrofEdges = 0;
+			out.writeInt(nrofEdges);
+			for (MapNode n : nodes) {
+				nrofEdges += n.getNeighbors().size();
+				out.writeInt(nrofEdges);
+			}
+			for (MapNode n : nodes) {
+				for (MapNode neighbor : n.getNeighbors()) {
+					out.writeInt(indexes.get(neighbor));
+				}
+			}
+			written = true;
+		} finally {
+			out.close();
+			if (!written) {
+				tmp.delete();
+			}
+		}
+
+		try {
+			Files.move(tmp.toPath(), file.toPath(),
+					StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			tmp.delete();
+			throw e;
+		}
+	}
+}
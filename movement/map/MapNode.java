@@ -77,6 +77,14 @@ public class MapNode implements Comparable<MapNode> {
 		return false;
 	}
 	
+	/**
+	 * Returns the bit mask of this node's types
+	 * @return the bit mask of this node's types or 0 if it has no types
+	 */
+	int getTypeMask() {
+		return this.type;
+	}
+	
 	/**
 	 * Converts type integer to a bit mask for setting & checking type
 	 * @param type The type to convert
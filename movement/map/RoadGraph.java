@@ -0,0 +1,276 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package movement.map;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <P>Immutable road graph of map nodes in compressed sparse row form. Every
+ * node gets an integer index from range [0, {@link #getNrofNodes()}) and
+ * the coordinates, neighbors and edge lengths are stored in primitive
+ * arrays, so random walks, path searches and other hot paths
+ * don't need to touch the {@link MapNode} objects or create any objects.
+ * </P>
+ *
+ * <P>The nodes are indexed in the order they were given to the constructor
+ * (the nodes that are only reachable from them come last) and the
+ * neighbors of every node are in the same order as in the node's neighbor
+ * list. Every node also has a rank that tells its position in the order of
+ * the coordinates (see {@link MapNode#compareTo(MapNode)}). The graph can
+ * be shared by all the users of a map.</P>
+ *
+ * @see SimMap#getRoadGraph()
+ */
+public class RoadGraph {
+	/** The nodes, indexed by node index */
+	private MapNode[] nodes;
+	/** indexes of the nodes */
+	private Map<MapNode, Integer> indexes;
+	/** coordinates of the nodes */
+	private double[] xs;
+	private double[] ys;
+	/** coordinate order ranks of the nodes */
+	private int[] ranks;
+	/** indexes of the nodes in the coordinate order */
+	private int[] byRank;
+	/** index of the first edge of each node in {@link #neighbors} */
+	private int[] edgeStart;
+	/** end node indexes of all edges, one node's edges after another */
+	private int[] neighbors;
+	/** lengths of the edges */
+	private double[] lengths;
+
+	/**
+	 * Creates a graph of the given nodes and all the nodes reachable from
+	 * them.
+	 * @param roots The nodes
+	 */
+	public RoadGraph(Collection<MapNode> roots) {
+		createNodes(roots);
+		createEdges();
+	}
+
+	/**
+	 * Collects and indexes the nodes
+	 * @param roots The nodes where the collecting starts from
+	 */
+	private void createNodes(Collection<MapNode> roots) {
+		Map<MapNode, Integer> found = new IdentityHashMap<MapNode, Integer>();
+		List<MapNode> all = new ArrayList<MapNode>(roots.size());
+		for (MapNode n : roots) {
+			if (found.put(n, 0) == null) {
+				all.add(n);
+			}
+		}
+		for (int i = 0; i < all.size(); i++) { // breadth-first search
+			for (MapNode n : all.get(i).getNeighbors()) {
+				if (found.put(n, 0) == null) {
+					all.add(n);
+				}
+			}
+		}
+
+		this.nodes = all.toArray(new MapNode[all.size()]);
+		this.indexes = found;
+		this.xs = new double[nodes.length];
+		this.ys = new double[nodes.length];
+		for (int i = 0; i < nodes.length; i++) {
+			indexes.put(nodes[i], i);
+			xs[i] = nodes[i].getLocation().getX();
+			ys[i] = nodes[i].getLocation().getY();
+		}
+
+		Collections.sort(all);
+		this.ranks = new int[nodes.length];
+		this.byRank = new int[nodes.length];
+		for (int r = 0; r < nodes.length; r++) {
+			byRank[r] = indexes.get(all.get(r));
+			ranks[byRank[r]] = r;
+		}
+	}
+
+	/**
+	 * Creates the edge arrays from the neighbor lists of the nodes
+	 */
+	private void createEdges() {
+		this.edgeStart = new int[nodes.length + 1];
+		for (int i = 0; i < nodes.length; i++) {
+			edgeStart[i+1] = edgeStart[i] + nodes[i].getNeighbors().size();
+		}
+
+		this.neighbors = new int[edgeStart[nodes.length]];
+		this.lengths = new double[neighbors.length];
+		for (int i = 0; i < nodes.length; i++) {
+			int e = edgeStart[i];
+			for (MapNode n : nodes[i].getNeighbors()) {
+				neighbors[e] = indexes.get(n);
+				lengths[e] = nodes[i].getLocation().distance(n.getLocation());
+				e++;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of nodes in the graph
+	 * @return the number of nodes in the graph
+	 */
+	public int getNrofNodes() {
+		return this.nodes.length;
+	}
+
+	/**
+	 * Returns the index of a node
+	 * @param node The node
+	 * @return The index of the node or -1 if the node is not in this graph
+	 */
+	public int getIndex(MapNode node) {
+		Integer index = indexes.get(node);
+		return index != null ? index : -1;
+	}
+
+	/**
+	 * Returns the node with the given index
+	 * @param index Index of the node
+	 * @return The node
+	 */
+	public MapNode getNode(int index) {
+		return this.nodes[index];
+	}
+
+	/**
+	 * Returns the x coordinate of a node
+	 * @param node Index of the node
+	 * @return The x coordinate
+	 */
+	public double getX(int node) {
+		return this.xs[node];
+	}
+
+	/**
+	 * Returns the y coordinate of a node
+	 * @param node Index of the node
+	 * @return The y coordinate
+	 */
+	public double getY(int node) {
+		return this.ys[node];
+	}
+
+	/**
+	 * Returns the rank of a node in the order of the nodes' coordinates.
+	 * Nodes whose coordinates are equal have consecutive ranks.
+	 * @param node Index of the node
+	 * @return The rank from range [0, {@link #getNrofNodes()})
+	 */
+	public int getRank(int node) {
+		return this.ranks[node];
+	}
+
+	/**
+	 * Returns the node with the given coordinate order rank
+	 * @param rank The rank
+	 * @return Index of the node
+	 * @see #getRank(int)
+	 */
+	public int getByRank(int rank) {
+		return this.byRank[rank];
+	}
+
+	/**
+	 * Returns the index of the first edge of a node. The edges of the node
+	 * are the ones from this index up to (but not including)
+	 * {@link #getEdgeEnd(int)}.
+	 * @param node Index of the node
+	 * @return Index of the node's first edge
+	 */
+	public int getEdgeStart(int node) {
+		return this.edgeStart[node];
+	}
+
+	/**
+	 * Returns the index after the last edge of a node
+	 * @param node Index of the node
+	 * @return Index after the node's last edge
+	 * @see #getEdgeStart(int)
+	 */
+	public int getEdgeEnd(int node) {
+		return this.edgeStart[node + 1];
+	}
+
+	/**
+	 * Returns the index of the node an edge leads to
+	 * @param edge Index of the edge
+	 * @return Index of the neighbor node
+	 */
+	public int getNeighbor(int edge) {
+		return this.neighbors[edge];
+	}
+
+	/**
+	 * Returns true if there is an edge from a node to another
+	 * @param from Index of the start node
+	 * @param to Index of the end node
+	 * @return True if the end node is one of the start node's neighbors
+	 */
+	public boolean hasEdge(int from, int to) {
+		for (int e = edgeStart[from]; e < edgeStart[from + 1]; e++) {
+			if (neighbors[e] == to) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the (euclidean) length of an edge
+	 * @param edge Index of the edge
+	 * @return Length of the edge
+	 */
+	public double getLength(int edge) {
+		return this.lengths[edge];
+	}
+
+	/**
+	 * Returns the type bit mask of a node. The types are not copied to the
+	 * graph because they can be added to the nodes after the graph has
+	 * been created.
+	 * @param node Index of the node
+	 * @return The type mask of the node or 0 if the node has no types
+	 */
+	public int getTypeMask(int node) {
+		return this.nodes[node].getTypeMask();
+	}
+
+	/**
+	 * Returns true if a node is of any of the types in a type mask
+	 * @param node Index of the node
+	 * @param typeMask The type mask
+	 * @return True if the node's types and the mask have a common type
+	 * @see #toTypeMask(int[])
+	 */
+	public boolean isType(int node, int typeMask) {
+		return (getTypeMask(node) & typeMask) != 0;
+	}
+
+	/**
+	 * Converts an array of node types to a type mask
+	 * @param types The types (integers from range [{@value MapNode#MIN_TYPE},
+	 * {@value MapNode#MAX_TYPE}])
+	 * @return A bit mask with the bits of all the types set
+	 */
+	public static int toTypeMask(int[] types) {
+		int mask = 0;
+		for (int type : types) {
+			assert type >= MapNode.MIN_TYPE && type <= MapNode.MAX_TYPE :
+				"Invalid node type " + type;
+			mask |= 1 << type;
+		}
+		return mask;
+	}
+}
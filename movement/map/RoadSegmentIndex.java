@@ -0,0 +1,378 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package movement.map;
+
+import java.awt.geom.Line2D;
+
+import core.Coord;
+
+/**
+ * <P>Immutable spatial index of the road segments (edges between neighboring
+ * map nodes) of a {@link SimMap}. Every undirected segment gets an integer
+ * ID from range [0, {@link #getNrofSegments()}) and the endpoints of the
+ * segments are stored in primitive arrays.</P>
+ *
+ * <P>The segments are put in the cells of a uniform grid (a segment is in
+ * every cell its bounding box overlaps) so nearest segment queries only need
+ * to check the cells around the query location. Queries don't allocate any
+ * objects and the index can be shared by all hosts.</P>
+ *
+ * @see SimMap#getSegmentIndex()
+ */
+public class RoadSegmentIndex {
+	/** Default edge length of a grid cell ({@value} meters) */
+	public static final double DEF_CELL_SIZE = 50;
+	/** Value returned by the queries if there are no segments */
+	public static final int NO_SEGMENT = -1;
+	/** Direction ID for moving from the start node towards the end node */
+	public static final int DIR_FORWARD = 0;
+	/** Direction ID for moving from the end node towards the start node */
+	public static final int DIR_BACKWARD = 1;
+	/** Distances closer than this ({@value} m) are considered equal */
+	private static final double DIST_EPSILON = 0.001;
+
+	private double[] x1;
+	private double[] y1;
+	private double[] x2;
+	private double[] y2;
+	private MapNode[] startNodes;
+	private MapNode[] endNodes;
+
+	private double minX;
+	private double minY;
+	private double cellSize;
+	private int cols;
+	private int rows;
+	/** index of the first segment of each cell in {@link #cellSegments} */
+	private int[] cellStart;
+	/** segment IDs of all cells one cell after another */
+	private int[] cellSegments;
+
+	/**
+	 * Creates an index of the given map's segments using the default cell
+	 * size.
+	 * @param map The map whose segments are indexed
+	 */
+	public RoadSegmentIndex(SimMap map) {
+		this(map, DEF_CELL_SIZE);
+	}
+
+	/**
+	 * Creates an index of the given map's segments.
+	 * @param map The map whose segments are indexed
+	 * @param cellSize Edge length of a grid cell
+	 */
+	public RoadSegmentIndex(SimMap map, double cellSize) {
+		this.cellSize = cellSize;
+		createSegments(map.getRoadGraph(), map.getNodes().size());
+		createGrid(map.getMinBound(), map.getMaxBound());
+	}
+
+	/**
+	 * Collects all the undirected segments of the map's road graph
+	 * @param graph The road graph of the map
+	 * @param nrofNodes Number of the map's nodes (the first nodes of the
+	 * graph)
+	 */
+	private void createSegments(RoadGraph graph, int nrofNodes) {
+		int nrofSegments = 0;
+		for (int pass = 0; pass < 2; pass++) {
+			int seg = 0;
+			for (int i=0; i<nrofNodes; i++) {
+				for (int e = graph.getEdgeStart(i), end = graph.getEdgeEnd(i);
+						e < end; e++) {
+					int j = graph.getNeighbor(e);
+					/* take every edge once; edges that are defined only in
+					 * one direction are taken from the defining node */
+					if (j >= nrofNodes || (j < i && graph.hasEdge(j, i))) {
+						continue;
+					}
+					if (pass == 1) {
+						setSegment(seg, graph, i, j);
+					}
+					seg++;
+				}
+			}
+
+			if (pass == 0) {
+				nrofSegments = seg;
+				this.x1 = new double[nrofSegments];
+				this.y1 = new double[nrofSegments];
+				this.x2 = new double[nrofSegments];
+				this.y2 = new double[nrofSegments];
+				this.startNodes = new MapNode[nrofSegments];
+				this.endNodes = new MapNode[nrofSegments];
+			}
+		}
+	}
+
+	/**
+	 * Stores a segment's data
+	 * @param seg ID of the segment
+	 * @param graph The road graph
+	 * @param a Index of the start node
+	 * @param b Index of the end node
+	 */
+	private void setSegment(int seg, RoadGraph graph, int a, int b) {
+		x1[seg] = graph.getX(a);
+		y1[seg] = graph.getY(a);
+		x2[seg] = graph.getX(b);
+		y2[seg] = graph.getY(b);
+		startNodes[seg] = graph.getNode(a);
+		endNodes[seg] = graph.getNode(b);
+	}
+
+	/**
+	 * Puts the segments to the grid cells
+	 * @param min The minimum coordinates of the map
+	 * @param max The maximum coordinates of the map
+	 */
+	private void createGrid(Coord min, Coord max) {
+		int nrofSegments = x1.length;
+		this.minX = nrofSegments > 0 ? min.getX() : 0;
+		this.minY = nrofSegments > 0 ? min.getY() : 0;
+		double width = nrofSegments > 0 ? max.getX() - minX : 0;
+		double height = nrofSegments > 0 ? max.getY() - minY : 0;
+		this.cols = (int)(width / cellSize) + 1;
+		this.rows = (int)(height / cellSize) + 1;
+
+		int[] counts = new int[cols * rows + 1];
+		for (int pass = 0; pass < 2; pass++) {
+			for (int seg = 0; seg < nrofSegments; seg++) {
+				int c1 = colOf(Math.min(x1[seg], x2[seg]));
+				int c2 = colOf(Math.max(x1[seg], x2[seg]));
+				int r1 = rowOf(Math.min(y1[seg], y2[seg]));
+				int r2 = rowOf(Math.max(y1[seg], y2[seg]));
+				for (int r = r1; r <= r2; r++) {
+					for (int c = c1; c <= c2; c++) {
+						int cell = r * cols + c;
+						if (pass == 0) {
+							counts[cell]++;
+						}
+						else {
+							cellSegments[cellStart[cell] + counts[cell]] = seg;
+							counts[cell]++;
+						}
+					}
+				}
+			}
+
+			if (pass == 0) {
+				this.cellStart = new int[cols * rows + 1];
+				for (int i = 0; i < cols * rows; i++) {
+					cellStart[i+1] = cellStart[i] + counts[i];
+					counts[i] = 0;
+				}
+				this.cellSegments = new int[cellStart[cols * rows]];
+			}
+		}
+	}
+
+	/**
+	 * Returns the (clamped) grid column of an x coordinate
+	 */
+	private int colOf(double x) {
+		int c = (int)((x - minX) / cellSize);
+		return c < 0 ? 0 : (c >= cols ? cols - 1 : c);
+	}
+
+	/**
+	 * Returns the (clamped) grid row of an y coordinate
+	 */
+	private int rowOf(double y) {
+		int r = (int)((y - minY) / cellSize);
+		return r < 0 ? 0 : (r >= rows ? rows - 1 : r);
+	}
+
+	/**
+	 * Returns the number of segments in the index
+	 * @return the number of segments in the index
+	 */
+	public int getNrofSegments() {
+		return this.x1.length;
+	}
+
+	/**
+	 * Returns the segment that is nearest to the given location
+	 * @param c The location
+	 * @return ID of the nearest segment or {@link #NO_SEGMENT} if the
+	 * index is empty
+	 */
+	public int getNearestSegment(Coord c) {
+		return getNearestSegment(c.getX(), c.getY(), Double.NaN, Double.NaN);
+	}
+
+	/**
+	 * Returns the segment that is nearest to the given location. If many
+	 * segments are equally near (e.g., the location is at a map node), the
+	 * segment that ends at the given heading location is preferred.
+	 * @param c The location
+	 * @param heading The location where the host is heading to (e.g., its
+	 * next waypoint) or null if not known
+	 * @return ID of the nearest segment or {@link #NO_SEGMENT} if the
+	 * index is empty
+	 */
+	public int getNearestSegment(Coord c, Coord heading) {
+		if (heading == null) {
+			return getNearestSegment(c);
+		}
+		return getNearestSegment(c.getX(), c.getY(),
+				heading.getX(), heading.getY());
+	}
+
+	/**
+	 * Returns the segment that is nearest to the given location.
+	 * @param x X coordinate of the location
+	 * @param y Y coordinate of the location
+	 * @param hx X coordinate of the heading location or NaN if not known
+	 * @param hy Y coordinate of the heading location or NaN if not known
+	 * @return ID of the nearest segment or {@link #NO_SEGMENT} if the
+	 * index is empty
+	 * @see #getNearestSegment(Coord, Coord)
+	 */
+	public int getNearestSegment(double x, double y, double hx, double hy) {
+		int best = NO_SEGMENT;
+		double bestDist = Double.MAX_VALUE;
+		boolean bestHeads = false;
+
+		int col = colOf(x);
+		int row = rowOf(y);
+		boolean inside = x >= minX && y >= minY &&
+			x <= minX + cols * cellSize && y <= minY + rows * cellSize;
+		int maxRing = Math.max(cols, rows);
+
+		for (int ring = 0; ring <= maxRing; ring++) {
+			for (int r = row - ring; r <= row + ring; r++) {
+				if (r < 0 || r >= rows) {
+					continue;
+				}
+				boolean edgeRow = (r == row - ring || r == row + ring);
+				for (int c = col - ring; c <= col + ring;
+						c += (edgeRow ? 1 : 2 * ring)) {
+					if (c >= 0 && c < cols) {
+						int cell = r * cols + c;
+						for (int i = cellStart[cell]; i < cellStart[cell+1];
+								i++) {
+							int seg = cellSegments[i];
+							double d = distance(seg, x, y);
+							boolean heads = endsAt(seg, hx, hy);
+							if (d < bestDist - DIST_EPSILON ||
+									(d <= bestDist + DIST_EPSILON &&
+									 heads && !bestHeads)) {
+								best = seg;
+								bestDist = d;
+								bestHeads = heads;
+							}
+						}
+					}
+					if (ring == 0) {
+						break;
+					}
+				}
+			}
+
+			/* segments of the next rings are at least ring*cellSize away */
+			if (best != NO_SEGMENT && inside &&
+					bestDist + DIST_EPSILON < ring * cellSize) {
+				break;
+			}
+		}
+
+		return best;
+	}
+
+	/**
+	 * Returns true if the segment has an endpoint at the given location
+	 */
+	private boolean endsAt(int seg, double x, double y) {
+		return (x1[seg] == x && y1[seg] == y) || (x2[seg] == x && y2[seg] == y);
+	}
+
+	/**
+	 * Returns the distance from a location to a segment
+	 * @param seg ID of the segment
+	 * @param x X coordinate of the location
+	 * @param y Y coordinate of the location
+	 * @return The shortest distance between the location and the segment
+	 */
+	public double distance(int seg, double x, double y) {
+		double dx = x2[seg] - x1[seg];
+		double dy = y2[seg] - y1[seg];
+		double lenSq = dx*dx + dy*dy;
+		double t = 0;
+
+		if (lenSq > 0) {
+			t = ((x - x1[seg]) * dx + (y - y1[seg]) * dy) / lenSq;
+			t = t < 0 ? 0 : (t > 1 ? 1 : t);
+		}
+
+		double px = x1[seg] + t * dx - x;
+		double py = y1[seg] + t * dy - y;
+		return Math.sqrt(px*px + py*py);
+	}
+
+	/**
+	 * Returns the direction a host is traveling on a segment
+	 * @param seg ID of the segment
+	 * @param heading The location where the host is heading to
+	 * @return {@link #DIR_FORWARD} if the heading location is nearer to the
+	 * end node than the start node of the segment, {@link #DIR_BACKWARD} if
+	 * not
+	 */
+	public int getDirection(int seg, Coord heading) {
+		double ex = heading.getX() - x2[seg];
+		double ey = heading.getY() - y2[seg];
+		double sx = heading.getX() - x1[seg];
+		double sy = heading.getY() - y1[seg];
+		return (ex*ex + ey*ey <= sx*sx + sy*sy) ? DIR_FORWARD : DIR_BACKWARD;
+	}
+
+	/**
+	 * Returns the start node of a segment
+	 * @param seg ID of the segment
+	 * @return the start node of the segment
+	 */
+	public MapNode getStartNode(int seg) {
+		return this.startNodes[seg];
+	}
+
+	/**
+	 * Returns the end node of a segment
+	 * @param seg ID of the segment
+	 * @return the end node of the segment
+	 */
+	public MapNode getEndNode(int seg) {
+		return this.endNodes[seg];
+	}
+
+	/**
+	 * Returns the length of a segment
+	 * @param seg ID of the segment
+	 * @return the length of the segment
+	 */
+	public double getLength(int seg) {
+		double dx = x2[seg] - x1[seg];
+		double dy = y2[seg] - y1[seg];
+		return Math.sqrt(dx*dx + dy*dy);
+	}
+
+	/**
+	 * Creates a new line object of a segment
+	 * @param seg ID of the segment
+	 * @return A line from the start node to the end node of the segment
+	 */
+	public Line2D createLine(int seg) {
+		return new Line2D.Double(x1[seg], y1[seg], x2[seg], y2[seg]);
+	}
+
+	/**
+	 * Returns a string representation of the index
+	 * @return a string representation of the index
+	 */
+	public String toString() {
+		return getClass().getSimpleName() + " with " + getNrofSegments() +
+			" segments in " + cols + "x" + rows + " cells of size " + cellSize;
+	}
+}
@@ -6,6 +6,7 @@ package movement.map;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -28,6 +29,10 @@ public class SimMap implements Serializable {
 	
 	/** is re-hash needed before using hash mode (some coordinates changed) */
 	private boolean needsRehash = false;
+	/** spatial index of the road segments (created when first needed) */
+	private transient RoadSegmentIndex segmentIndex = null;
+	/** road graph for path searches (created when first needed) */
+	private transient RoadGraph roadGraph = null;
 	
 	public SimMap(Map<Coord, MapNode> nodes) {
 		this.offset = new Coord(0,0);
@@ -37,6 +42,25 @@ public class SimMap implements Serializable {
 		setBounds();
 	}
 	
+	/**
+	 * Creates a map of nodes whose coordinates have already been translated
+	 * and/or mirrored.
+	 * @param nodes The nodes in the order they were in the original map
+	 * @param offset Offset of the translations
+	 * @param isMirrored Has the map been mirrored
+	 * @see MapCache
+	 */
+	SimMap(List<MapNode> nodes, Coord offset, boolean isMirrored) {
+		this.offset = offset;
+		this.nodes = new ArrayList<MapNode>(nodes);
+		this.nodesMap = new HashMap<Coord, MapNode>();
+		for (MapNode node : nodes) {
+			nodesMap.put(node.getLocation(), node);
+		}
+		this.isMirrored = isMirrored;
+		setBounds();
+	}
+	
 	/**
 	 * Returns all the map nodes in a list
 	 * @return all the map nodes in a list
@@ -62,6 +86,30 @@ public class SimMap implements Serializable {
 		return nodesMap.get(c);
 	}
 	
+	/**
+	 * Returns the spatial index of this map's road segments. The index is
+	 * created on the first call and shared by all the callers after that.
+	 * @return The road segment index of this map
+	 */
+	public synchronized RoadSegmentIndex getSegmentIndex() {
+		if (this.segmentIndex == null) {
+			this.segmentIndex = new RoadSegmentIndex(this);
+		}
+		return this.segmentIndex;
+	}
+	
+	/**
+	 * Returns the road graph of this map. The graph is created on the first
+	 * call and shared by all the callers after that.
+	 * @return The road graph of this map
+	 */
+	public synchronized RoadGraph getRoadGraph() {
+		if (this.roadGraph == null) {
+			this.roadGraph = new RoadGraph(this.nodes);
+		}
+		return this.roadGraph;
+	}
+	
 	/**
 	 * Returns the upper left corner coordinate of the map
 	 * @return the upper left corner coordinate of the map
@@ -111,6 +159,8 @@ public class SimMap implements Serializable {
 		offset.translate(dx, dy);
 		
 		needsRehash = true;
+		segmentIndex = null;
+		roadGraph = null;
 	}
 	
 	/**
@@ -127,6 +177,8 @@ public class SimMap implements Serializable {
 		setBounds();
 		this.isMirrored = true;
 		needsRehash = true;
+		segmentIndex = null;
+		roadGraph = null;
 	}
 	
 	/**
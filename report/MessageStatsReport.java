@@ -5,11 +5,10 @@
 package report;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import core.DTNHost;
+import core.IntHashMap;
 import core.Message;
 import core.MessageListener;
 
@@ -22,7 +21,8 @@ import core.MessageListener;
  * double values and zero for integer median(s).
  */
 public class MessageStatsReport extends Report implements MessageListener {
-	private Map<String, Double> creationTimes;
+	/** creation times of the messages by integer message ID */
+	private IntHashMap<Double> creationTimes;
 	private List<Double> latencies;
 	private List<Integer> hopCounts;
 	private List<Double> msgBufferTime;
@@ -48,7 +48,7 @@ public class MessageStatsReport extends Report implements MessageListener {
 	@Override
 	protected void init() {
 		super.init();
-		this.creationTimes = new HashMap<String, Double>();
+		this.creationTimes = new IntHashMap<Double>();
 		this.latencies = new ArrayList<Double>();
 		this.msgBufferTime = new ArrayList<Double>();
 		this.hopCounts = new ArrayList<Integer>();
@@ -100,7 +100,7 @@ public class MessageStatsReport extends Report implements MessageListener {
 		this.nrofRelayed++;
 		if (finalTarget) {
 			this.latencies.add(getSimTime() - 
-				this.creationTimes.get(m.getId()) );
+				this.creationTimes.get(m.getIntId()) );
 			this.nrofDelivered++;
 			this.hopCounts.add(m.getHops().size() - 1);
 			
@@ -118,7 +118,7 @@ public class MessageStatsReport extends Report implements MessageListener {
 			return;
 		}
 		
-		this.creationTimes.put(m.getId(), getSimTime());
+		this.creationTimes.put(m.getIntId(), getSimTime());
 		this.nrofCreated++;
 		if (m.getResponseSize() > 0) {
 			this.nrofResponseReqCreated++;
@@ -15,7 +15,7 @@ import java.util.List;
 import java.util.Set;
 
 import core.Settings;
-import core.SimClock;
+import core.SimContext;
 import core.SimError;
 import core.SimScenario;
 
@@ -67,6 +67,8 @@ public abstract class Report {
 	private double lastReportTime;
 	private String outFileName;
 	private String scenarioName;
+	/** the simulation context the report was created in */
+	private SimContext context;
 	
 	/**
 	 * Constructor.
@@ -75,6 +77,7 @@ public abstract class Report {
 	 * scenarioname_classname.txt is used as the file name.
 	 */
 	public Report(){
+		this.context = SimContext.getCurrent();
 		this.lastOutputSuffix = 0;
 		this.outputInterval = -1;
 		this.warmupIDs = null;
@@ -162,8 +165,8 @@ public abstract class Report {
 			if (!createDirs(directory.getParentFile())) {
 				return false;
 			}
-			if (!directory.mkdir()) {
-				return false;
+			if (!directory.mkdir() && !directory.isDirectory()) {
+				return false; /* not created, not even by a concurrent run */
 			} else {
 				return true;
 			}
@@ -263,13 +266,30 @@ public abstract class Report {
 	protected String getScenarioName() {
 		return this.scenarioName;
 	}
+
+	/**
+	 * Returns the simulation context the report was created in
+	 * @return The context of the report
+	 */
+	protected SimContext getContext() {
+		return this.context;
+	}
+	
+	/**
+	 * Returns the name of the report's (non-intervalled) output file
+	 * @return the name of the output file
+	 */
+	protected String getOutFileName() {
+		return this.outFileName;
+	}
 	
 	/**
-	 * Returns the current simulation time from the SimClock
+	 * Returns the current simulation time from the SimClock of the report's
+	 * simulation context
 	 * @return the current simulation time from the SimClock
 	 */
 	protected double getSimTime() {
-		return SimClock.getTime();
+		return context.getClock().getSimTime();
 	}
 	
 	/**
@@ -277,7 +297,7 @@ public abstract class Report {
 	 * @return true if the warm up period is still ongoing, false if not
 	 */
 	protected boolean isWarmup() {
-		return this.warmupTime > SimClock.getTime();
+		return this.warmupTime > getSimTime();
 	}
 	
 	/**
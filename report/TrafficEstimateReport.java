@@ -0,0 +1,326 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package report;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import applications.TrafficApp;
+import applications.TrafficStateStore;
+import core.Application;
+import core.ApplicationListener;
+import core.DTNHost;
+import core.Settings;
+import core.SimError;
+import core.UpdateListener;
+import movement.Path;
+import movement.map.RoadSegmentIndex;
+
+/**
+ * <P>Report for the accuracy of the {@link TrafficApp}'s speed estimates.
+ * Once every "granularity" seconds, the speed estimate of every host is
+ * compared to the ground truth: the mean speed ({@link Path#getSpeed()})
+ * of the moving hosts that are on the same road segment and direction.</P>
+ *
+ * <P>The per-host estimates are written to a binary file (the text output
+ * file's name with ".bin" suffix, unless {@link #BINARY_OUTPUT_S} is set)
+ * using {@link DataOutputStream} encoding:</P>
+ * <PRE>
+ * int magic ({@link #MAGIC}), int format version ({@link #VERSION})
+ * for each snapshot:
+ *   double simulation time, int number of records
+ *   for each record:
+ *     int host address, int segment, byte direction,
+ *     float estimate, float ground truth, int number of samples
+ * </PRE>
+ * <P>The text output contains one line per snapshot (time, number of
+ * estimates, number of moving hosts, mean absolute error and root mean
+ * square error) and the totals, including the number of beacons sent and
+ * received. Snapshots are not created during the warm up period.</P>
+ */
+public class TrafficEstimateReport extends Report
+	implements ApplicationListener, UpdateListener {
+	/** Snapshot interval -setting id ({@value}). Defines how often
+	 * (seconds) the estimates are compared to the ground truth. Default is
+	 * {@link #DEF_GRANULARITY} */
+	public static final String GRANULARITY_S = "granularity";
+	/** Default snapshot interval */
+	public static final double DEF_GRANULARITY = 60;
+	/** Binary output file name -setting id ({@value}) */
+	public static final String BINARY_OUTPUT_S = "binaryOutput";
+	/** Suffix of the binary output file */
+	public static final String BINARY_SUFFIX = ".bin";
+	/** First integer of the binary output */
+	public static final int MAGIC = 0x54524645;
+	/** Version of the binary output format */
+	public static final int VERSION = 1;
+
+	private double granularity;
+	private double lastSnapshot;
+	private String binFileName;
+	private DataOutputStream binOut;
+
+	/** traffic applications of the hosts, indexed by host address */
+	private TrafficApp[] apps;
+	/* ground truth speed sums & counts indexed by segment*2+direction */
+	private double[] truthSum;
+	private int[] truthCount;
+	/** truth array indexes that were updated in the current snapshot */
+	private int[] touched;
+	private int nrofTouched;
+
+	private int nrofBeaconsSent;
+	private int nrofBeaconsReceived;
+	private int nrofEstimates;
+	private int nrofSnapshots;
+	private double totalAbsError;
+	private double totalSqError;
+
+	/**
+	 * Constructor. Reads the settings and initializes the report module.
+	 */
+	public TrafficEstimateReport() {
+		Settings s = getSettings();
+		this.granularity = DEF_GRANULARITY;
+		if (s.contains(GRANULARITY_S)) {
+			this.granularity = s.getDouble(GRANULARITY_S);
+		}
+		if (s.contains(BINARY_OUTPUT_S)) {
+			this.binFileName = s.valueFillString(
+					s.getSetting(BINARY_OUTPUT_S));
+		}
+		else {
+			String name = getOutFileName();
+			if (name.endsWith(OUT_SUFFIX)) {
+				name = name.substring(0, name.length() - OUT_SUFFIX.length());
+			}
+			this.binFileName = name + BINARY_SUFFIX;
+		}
+
+		init();
+	}
+
+	@Override
+	protected void init() {
+		super.init();
+		this.lastSnapshot = 0;
+		this.apps = null;
+		this.nrofBeaconsSent = 0;
+		this.nrofBeaconsReceived = 0;
+		this.nrofEstimates = 0;
+		this.nrofSnapshots = 0;
+		this.totalAbsError = 0;
+		this.totalSqError = 0;
+		write("# time estimates moving_hosts mean_abs_error rms_error");
+
+		try {
+			this.binOut = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(binFileName)));
+			binOut.writeInt(MAGIC);
+			binOut.writeInt(VERSION);
+		} catch (IOException e) {
+			throw new SimError("Couldn't open file '" + binFileName +
+					"' for report output\n" + e.getMessage(), e);
+		}
+	}
+
+	public void gotEvent(String event, Object params, Application app,
+			DTNHost host) {
+		if (!(app instanceof TrafficApp)) {
+			return;
+		}
+
+		if (event.equals("SentPing")) {
+			this.nrofBeaconsSent++;
+		}
+		else if (event.equals("GotPing")) {
+			this.nrofBeaconsReceived++;
+		}
+	}
+
+	/**
+	 * Creates a new snapshot of the estimates if "granularity" seconds have
+	 * passed since the last snapshot.
+	 * @param hosts All the hosts in the world
+	 */
+	public void updated(List<DTNHost> hosts) {
+		if (isWarmup()) {
+			return;
+		}
+		double simTime = getSimTime();
+		if (simTime - lastSnapshot < granularity) {
+			return;
+		}
+		this.lastSnapshot = simTime - simTime % granularity;
+
+		if (apps == null) {
+			resolveApps(hosts);
+			if (apps == null) {
+				return; /* no traffic application or map */
+			}
+		}
+
+		try {
+			createSnapshot(hosts, simTime);
+		} catch (IOException e) {
+			throw new SimError("Couldn't write to '" + binFileName + "'", e);
+		}
+	}
+
+	/**
+	 * Looks up the traffic applications of the hosts and initializes the
+	 * ground truth arrays
+	 * @param hosts All the hosts in the world
+	 */
+	private void resolveApps(List<DTNHost> hosts) {
+		TrafficApp[] found = new TrafficApp[hosts.size()];
+		RoadSegmentIndex index = null;
+		for (DTNHost h : hosts) {
+			for (Application a : h.getRouter().getApplications(
+					TrafficApp.APP_ID)) {
+				if (a instanceof TrafficApp) {
+					found[h.getAddress()] = (TrafficApp)a;
+					if (index == null) {
+						index = ((TrafficApp)a).getSegmentIndex();
+					}
+					break;
+				}
+			}
+		}
+		if (index == null) {
+			return;
+		}
+
+		int size = index.getNrofSegments() * 2;
+		this.truthSum = new double[size];
+		this.truthCount = new int[size];
+		this.touched = new int[size];
+		this.apps = found;
+	}
+
+	/**
+	 * Creates a snapshot of the estimates and the ground truth
+	 * @param hosts All the hosts in the world
+	 * @param simTime Current simulation time
+	 */
+	private void createSnapshot(List<DTNHost> hosts, double simTime)
+		throws IOException {
+		/* ground truth of the segments that have moving hosts */
+		int nrofMoving = 0;
+		for (DTNHost h : hosts) {
+			TrafficApp app = apps[h.getAddress()];
+			Path p = h.getPath();
+			if (app == null || p == null ||
+					app.getMyRoadId() == RoadSegmentIndex.NO_SEGMENT) {
+				continue;
+			}
+			int i = app.getMyRoadId() * 2 + app.getMyRoadDirection();
+			if (truthCount[i] == 0) {
+				touched[nrofTouched++] = i;
+			}
+			truthSum[i] += p.getSpeed();
+			truthCount[i]++;
+			nrofMoving++;
+		}
+
+		/* count the records first so that the snapshot can be streamed */
+		int nrofRecords = 0;
+		for (DTNHost h : hosts) {
+			if (hasEstimate(h)) {
+				nrofRecords++;
+			}
+		}
+
+		binOut.writeDouble(simTime);
+		binOut.writeInt(nrofRecords);
+		double absError = 0;
+		double sqError = 0;
+		for (DTNHost h : hosts) {
+			if (!hasEstimate(h)) {
+				continue;
+			}
+			TrafficApp app = apps[h.getAddress()];
+			int segment = app.getMyRoadId();
+			int direction = app.getMyRoadDirection();
+			int i = segment * 2 + direction;
+			double estimate = app.getEstimatedSpeed();
+			double truth = truthSum[i] / truthCount[i];
+			TrafficStateStore state = app.getTrafficState();
+
+			binOut.writeInt(h.getAddress());
+			binOut.writeInt(segment);
+			binOut.writeByte(direction);
+			binOut.writeFloat((float)estimate);
+			binOut.writeFloat((float)truth);
+			binOut.writeInt(state.getSampleCount(segment, direction));
+
+			double error = estimate - truth;
+			absError += Math.abs(error);
+			sqError += error * error;
+		}
+
+		for (int j = 0; j < nrofTouched; j++) {
+			truthSum[touched[j]] = 0;
+			truthCount[touched[j]] = 0;
+		}
+		nrofTouched = 0;
+
+		this.nrofSnapshots++;
+		this.nrofEstimates += nrofRecords;
+		this.totalAbsError += absError;
+		this.totalSqError += sqError;
+
+		write(format(simTime) + " " + nrofRecords + " " + nrofMoving + " " +
+				errorString(absError, nrofRecords) + " " +
+				errorString(Math.sqrt(sqError), Math.sqrt(nrofRecords)));
+	}
+
+	/**
+	 * Returns true if the host is moving and has a speed estimate for the
+	 * road segment it is on
+	 * @param h The host
+	 * @return true if the estimate can be compared to the ground truth
+	 */
+	private boolean hasEstimate(DTNHost h) {
+		TrafficApp app = apps[h.getAddress()];
+		return app != null && h.getPath() != null &&
+			app.getMyRoadId() != RoadSegmentIndex.NO_SEGMENT &&
+			!Double.isNaN(app.getEstimatedSpeed());
+	}
+
+	/**
+	 * Returns the formatted quotient or {@link #NAN} if the divisor is zero
+	 */
+	private String errorString(double value, double divisor) {
+		if (divisor == 0) {
+			return NAN;
+		}
+		return format(value / divisor);
+	}
+
+	@Override
+	public void done() {
+		write("Traffic estimate stats for scenario " + getScenarioName() +
+				"\nsim_time: " + format(getSimTime()));
+		write("snapshots: " + this.nrofSnapshots +
+				"\nbeacons_sent: " + this.nrofBeaconsSent +
+				"\nbeacons_received: " + this.nrofBeaconsReceived +
+				"\nestimates: " + this.nrofEstimates +
+				"\nmean_abs_error: " + errorString(this.totalAbsError,
+						this.nrofEstimates) +
+				"\nrms_error: " + errorString(Math.sqrt(this.totalSqError),
+						Math.sqrt(this.nrofEstimates)));
+
+		try {
+			binOut.close();
+		} catch (IOException e) {
+			throw new SimError("Couldn't close '" + binFileName + "'", e);
+		}
+		super.done();
+	}
+}
@@ -5,17 +5,20 @@
 package routing;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Random;
 
+import routing.util.SummaryVector;
+
+import core.CBRConnection;
 import core.Connection;
 import core.DTNHost;
 import core.Message;
 import core.MessageListener;
 import core.Settings;
-import core.SimClock;
+import core.SettingsError;
 import core.Tuple;
 
 /**
@@ -32,6 +35,34 @@ public abstract class ActiveRouter extends MessageRouter {
 	 * from message buffer */
 	protected boolean deleteDelivered;
 	
+	/** Summary vector size -setting id ({@value}). Integer value in bits.
+	 * If greater than zero, routers exchange Bloom filter summary vectors of
+	 * the messages they carry or have received when they meet, and messages
+	 * that are in the summary of the other host are not offered to it unless
+	 * it is their destination. 
+	 * Exchanging the vectors takes time like any transfer. Default=0
+	 * (no summary vectors; receiving host checks every offered message). */
+	public static final String SUMMARY_VECTOR_SIZE_S = "summaryVectorSize";
+	/** Number of summary vector hash functions -setting id ({@value}).
+	 * Integer value. Default={@link SummaryVector#DEF_NROF_HASHES} */
+	public static final String SUMMARY_VECTOR_HASHES_S = "summaryVectorHashes";
+	/** Maximum number of concurrent transfers -setting id ({@value}).
+	 * Integer value. A host can send and receive messages over this many 
+	 * connections at the same time. All the transfers a host sends or
+	 * receives share its bandwidth fairly (with constant bit-rate 
+	 * connections) and every transfer gets the smaller share of its two 
+	 * ends. Transfers are still finalized on the updates, so the receive 
+	 * times (and latencies) are quantized to the update interval like with
+	 * single transfers. Default=1 */
+	public static final String MAX_TRANSFERS_S = "maxTransfers";
+	/** Drop messages at expiry -setting id ({@value}). Boolean valued.
+	 * If set to true, messages are dropped as soon as their whole TTL has 
+	 * passed (or, if the message is being sent, when the transfer is over). 
+	 * If false, the TTLs are checked every {@link #TTL_CHECK_INTERVAL} 
+	 * seconds and messages with less than a minute of TTL left are dropped.
+	 * Default=false */
+	public static final String DROP_AT_EXPIRY_S = "dropAtExpiry";
+	
 	/** prefix of all response message IDs */
 	public static final String RESPONSE_PREFIX = "R_";
 	/** how often TTL check (discarding old messages) is performed */
@@ -39,7 +70,18 @@ public abstract class ActiveRouter extends MessageRouter {
 	/** connection(s) that are currently used for sending */
 	protected ArrayList<Connection> sendingConnections;
 	/** sim time when the last TTL check was done */
-	private double lastTtlCheck;
+	private double lastTtlCheck;
+	/** size of the summary vectors in bits (0 = no summary vectors) */
+	private int summaryVectorSize;
+	private int summaryVectorHashes;
+	/** summary vector of this router's messages (null if not used) */
+	private SummaryVector summaryVector;
+	/** summary vectors received from the connected hosts */
+	private HashMap<Connection, PeerSummary> peerSummaries;
+	/** maximum number of concurrent transfers */
+	private int maxTransfers;
+	/** should messages be dropped at the exact expiry time */
+	private boolean dropAtExpiry;
 	
 
 	/**
@@ -55,7 +97,34 @@ public abstract class ActiveRouter extends MessageRouter {
 		}
 		else {
 			this.deleteDelivered = false;
-		}
+		}
+		
+		this.summaryVectorSize = 0;
+		this.summaryVectorHashes = SummaryVector.DEF_NROF_HASHES;
+		if (s.contains(SUMMARY_VECTOR_SIZE_S)) {
+			this.summaryVectorSize = s.getInt(SUMMARY_VECTOR_SIZE_S);
+		}
+		if (s.contains(SUMMARY_VECTOR_HASHES_S)) {
+			this.summaryVectorHashes = s.getInt(SUMMARY_VECTOR_HASHES_S);
+			if (summaryVectorHashes < 1) {
+				throw new SettingsError("Invalid value for " + 
+						s.getFullPropertyName(SUMMARY_VECTOR_HASHES_S));
+			}
+		}
+		
+		this.maxTransfers = 1;
+		if (s.contains(MAX_TRANSFERS_S)) {
+			this.maxTransfers = s.getInt(MAX_TRANSFERS_S);
+			if (maxTransfers < 1) {
+				throw new SettingsError("Invalid value for " + 
+						s.getFullPropertyName(MAX_TRANSFERS_S));
+			}
+		}
+		
+		this.dropAtExpiry = false;
+		if (s.contains(DROP_AT_EXPIRY_S)) {
+			this.dropAtExpiry = s.getBoolean(DROP_AT_EXPIRY_S);
+		}
 	}
 	
 	/**
@@ -63,8 +132,12 @@ public abstract class ActiveRouter extends MessageRouter {
 	 * @param r The router prototype where setting values are copied from
 	 */
 	protected ActiveRouter(ActiveRouter r) {
-		super(r);
+		super(r);
 		this.deleteDelivered = r.deleteDelivered;
+		this.summaryVectorSize = r.summaryVectorSize;
+		this.summaryVectorHashes = r.summaryVectorHashes;
+		this.maxTransfers = r.maxTransfers;
+		this.dropAtExpiry = r.dropAtExpiry;
 	}
 	
 	@Override
@@ -72,14 +145,31 @@ public abstract class ActiveRouter extends MessageRouter {
 		super.init(host, mListeners);
 		this.sendingConnections = new ArrayList<Connection>(1);
 		this.lastTtlCheck = 0;
+		if (summaryVectorSize > 0) {
+			this.summaryVector = new SummaryVector(summaryVectorSize, 
+					summaryVectorHashes);
+			this.peerSummaries = new HashMap<Connection, PeerSummary>();
+		}
 	}
 	
 	/**
-	 * Called when a connection's state changes. This version doesn't do 
-	 * anything but subclasses may want to override this.
+	 * Called when a connection's state changes. This version exchanges the
+	 * summary vectors over a connection that came up and forgets the
+	 * vector received over a connection that went down. Subclasses
+	 * that override this should call this version too.
 	 */
 	@Override
-	public void changedConnection(Connection con) { }
+	public void changedConnection(Connection con) {
+		if (peerSummaries == null) {
+			return;
+		}
+		if (con.isUp()) {
+			peerSummaries.put(con, exchangeSummaries(con));
+		}
+		else {
+			peerSummaries.remove(con);
+		}
+	}
 	
 	@Override
 	public boolean requestDeliverableMessages(Connection con) {
@@ -122,6 +212,12 @@ public abstract class ActiveRouter extends MessageRouter {
 	@Override
 	public Message messageTransferred(String id, DTNHost from) {
 		Message m = super.messageTransferred(id, from);
+		
+		if (summaryVector != null && m.getTo() == getHost() && 
+				isDeliveredMessage(m)) {
+			/* delivered IDs are never removed from the vector */
+			summaryVector.add(m.getIntId());
+		}
 
 		/**
 		 *  N.B. With application support the following if-block
@@ -162,7 +258,22 @@ public abstract class ActiveRouter extends MessageRouter {
 		if (!con.isReadyForTransfer()) {
 			return TRY_LATER_BUSY;
 		}
-		
+		
+		PeerSummary peer = (peerSummaries != null ? peerSummaries.get(con) :
+			null);
+		if (peer != null) {
+			if (peer.readyTime > getContext().getClock().getSimTime()) {
+				return TRY_LATER_BUSY; // summary vectors are being exchanged
+			}
+			/* a false positive must not keep a message from its destination;
+			 * the destination checks for duplicates itself */
+			if (peer.vector != null && 
+					m.getTo() != con.getOtherNode(getHost()) &&
+					peer.vector.mightContain(m.getIntId())) {
+				return DENIED_OLD; // the other host (probably) has it already
+			}
+		}
+		
 		retVal = con.startTransfer(getHost(), m);
 		if (retVal == RCV_OK) { // started transfer
 			addToSendingConnections(con);
@@ -170,12 +281,35 @@ public abstract class ActiveRouter extends MessageRouter {
 		else if (deleteDelivered && retVal == DENIED_OLD && 
 				m.getTo() == con.getOtherNode(this.getHost())) {
 			/* final recipient has already received the msg -> delete it */
-			this.deleteMessage(m.getId(), false);
+			this.deleteMessage(m, false);
 		}
 		
 		return retVal;
 	}
 	
+	/**
+	 * Exchanges the summary vectors with the other host of a connection 
+	 * that just came up. The exchange is modeled as a transfer of both 
+	 * vectors over the connection that must be finished before any 
+	 * messages can be sent.
+	 * @param con The connection
+	 * @return Summary of the other host
+	 */
+	private PeerSummary exchangeSummaries(Connection con) {
+		MessageRouter other = con.getOtherNode(getHost()).getRouter();
+		SummaryVector vector = null;
+		double readyTime = getContext().getClock().getSimTime();
+		if (other instanceof ActiveRouter && 
+				((ActiveRouter)other).summaryVector != null) {
+			vector = ((ActiveRouter)other).summaryVector.copy();
+			int bytes = vector.getByteSize() + summaryVector.getByteSize();
+			if (con.getSpeed() > 0) {
+				readyTime += bytes / con.getSpeed();
+			}
+		}
+		return new PeerSummary(vector, readyTime);
+	}
+	
 	/**
 	 * Makes rudimentary checks (that we have at least one message and one
 	 * connection) about can this router start transfer.
@@ -209,11 +343,11 @@ public abstract class ActiveRouter extends MessageRouter {
 			return TRY_LATER_BUSY; // only one connection at a time
 		}
 	
-		if ( hasMessage(m.getId()) || isDeliveredMessage(m) ){
+		if ( hasMessage(m.getIntId()) || isDeliveredMessage(m) ){
 			return DENIED_OLD; // already seen this message -> reject it
 		}
 		
-		if (m.getTtl() <= 0 && m.getTo() != getHost()) {
+		if (isExpired(m) && m.getTo() != getHost()) {
 			/* TTL has expired and this host is not the final recipient */
 			return DENIED_TTL; 
 		}
@@ -248,7 +382,7 @@ public abstract class ActiveRouter extends MessageRouter {
 			}			
 			
 			/* delete message from the buffer as "drop" */
-			deleteMessage(m.getId(), true);
+			deleteMessage(m, true);
 			freeBuffer += m.getSize();
 		}
 		
@@ -256,16 +390,57 @@ public abstract class ActiveRouter extends MessageRouter {
 	}
 	
 	/**
-	 * Drops messages whose TTL is less than zero.
+	 * Returns true if the TTL of a message has expired, i.e., there's less
+	 * than a minute of it left or, if {@link #DROP_AT_EXPIRY_S} is set, 
+	 * none of it left.
+	 * @param m The message
+	 * @return True if the TTL has expired
+	 */
+	protected boolean isExpired(Message m) {
+		if (dropAtExpiry) {
+			return m.getExpiryTime() <= getContext().getClock().getSimTime();
+		}
+		return m.getTtl() <= 0;
+	}
+	
+	/**
+	 * Drops messages whose TTL has expired (see {@link #isExpired(Message)}).
+	 * With {@link #DROP_AT_EXPIRY_S}, messages that are being sent are 
+	 * dropped later, when the transfers are over.
 	 */
 	protected void dropExpiredMessages() {
-		Message[] messages = getMessageCollection().toArray(new Message[0]);
-		for (int i=0; i<messages.length; i++) {
-			int ttl = messages[i].getTtl(); 
-			if (ttl <= 0) {
-				deleteMessage(messages[i].getId(), true);
+		Message m;
+		while ((m = getFirstToExpire()) != null && isExpired(m)) {
+			if (dropAtExpiry && isSending(m.getIntId())) {
+				/* skip the message(s) being sent but drop the rest */
+				double now = getContext().getClock().getSimTime();
+				for (Message expired : getExpiredMessages(now)) {
+					if (!isSending(expired.getIntId())) {
+						deleteMessage(expired, true);
+					}
+				}
+				return;
 			}
+			deleteMessage(m, true);
+		}
+	}
+	
+	@Override
+	protected void addToMessages(Message m, boolean newMessage) {
+		boolean isNew = summaryVector != null && !hasMessage(m.getIntId());
+		super.addToMessages(m, newMessage);
+		if (isNew) {
+			summaryVector.add(m.getIntId());
+		}
+	}
+	
+	@Override
+	protected Message removeFromMessages(int id) {
+		Message m = super.removeFromMessages(id);
+		if (m != null && summaryVector != null) {
+			summaryVector.remove(m.getIntId());
 		}
+		return m;
 	}
 	
 	/**
@@ -291,23 +466,15 @@ public abstract class ActiveRouter extends MessageRouter {
 	 * exludeMsgBeingSent is true)
 	 */
 	protected Message getOldestMessage(boolean excludeMsgBeingSent) {
-		Collection<Message> messages = this.getMessageCollection();
-		Message oldest = null;
-		for (Message m : messages) {
-			
-			if (excludeMsgBeingSent && isSending(m.getId())) {
+		/* the message collection is in the order of receive times */
+		for (Message m : this.getMessageCollection()) {
+			if (excludeMsgBeingSent && isSending(m.getIntId())) {
 				continue; // skip the message(s) that router is sending
 			}
-			
-			if (oldest == null ) {
-				oldest = m;
-			}
-			else if (oldest.getReceiveTime() > m.getReceiveTime()) {
-				oldest = m;
-			}
+			return m;
 		}
 		
-		return oldest;
+		return null;
 	}
 	
 	/**
@@ -388,23 +555,29 @@ public abstract class ActiveRouter extends MessageRouter {
 	 * are first iterated in the order they are in the list and for every
 	 * connection, the messages are tried in the order they are in the list.
 	 * Once an accepting connection is found, no other connections or messages
-	 * are tried.
+	 * are tried, unless the router can still start more concurrent transfers.
 	 * @param messages The list of Messages to try
 	 * @param connections The list of Connections to try
-	 * @return The connections that started a transfer or null if no connection
-	 * accepted a message.
+	 * @return The (first) connection that started a transfer or null if no 
+	 * connection accepted a message.
 	 */
 	protected Connection tryMessagesToConnections(List<Message> messages,
 			List<Connection> connections) {
+		Connection first = null;
 		for (int i=0, n=connections.size(); i<n; i++) {
 			Connection con = connections.get(i);
 			Message started = tryAllMessages(con, messages); 
 			if (started != null) { 
-				return con;
+				if (first == null) {
+					first = con;
+				}
+				if (isTransferring()) {
+					break; // no room for more transfers
+				}
 			}
 		}
 		
-		return null;
+		return first;
 	}
 	
 	/**
@@ -421,9 +594,7 @@ public abstract class ActiveRouter extends MessageRouter {
 			return null;
 		}
 
-		List<Message> messages = 
-			new ArrayList<Message>(this.getMessageCollection());
-		this.sortByQueueMode(messages);
+		List<Message> messages = this.getMessagesByQueueMode();
 
 		return tryMessagesToConnections(messages, connections);
 	}
@@ -472,7 +643,8 @@ public abstract class ActiveRouter extends MessageRouter {
 			return; // nothing to shuffle
 		}
 		
-		Random rng = new Random(SimClock.getIntTime());
+		Random rng = new Random(
+				(int)Math.round(getContext().getClock().getSimTime()));
 		Collections.shuffle(messages, rng);	
 	}
 	
@@ -484,14 +656,23 @@ public abstract class ActiveRouter extends MessageRouter {
 	 */
 	protected void addToSendingConnections(Connection con) {
 		this.sendingConnections.add(con);
+		if (maxTransfers > 1) {
+			shareBandwidth(con, getContext().getClock().getSimTime());
+		}
 	}
 		
 	/**
 	 * Returns true if this router is transferring something at the moment or
-	 * some transfer has not been finalized.
+	 * some transfer has not been finalized. If concurrent transfers are
+	 * allowed (see {@link #MAX_TRANSFERS_S}), returns true only if there are
+	 * as many transfers as allowed.
 	 * @return true if this router is transferring something
 	 */
 	public boolean isTransferring() {
+		if (maxTransfers > 1) {
+			return getNrofTransfers() >= maxTransfers;
+		}
+		
 		if (this.sendingConnections.size() > 0) {
 			return true; // sending something
 		}
@@ -511,6 +692,24 @@ public abstract class ActiveRouter extends MessageRouter {
 		return false;		
 	}
 	
+	/**
+	 * Returns the number of transfers this router is sending or receiving
+	 * (including the ones that have not been finalized yet).
+	 * @return the number of transfers
+	 */
+	protected int getNrofTransfers() {
+		int nrof = this.sendingConnections.size();
+		List<Connection> connections = getConnections();
+		for (int i=0, n=connections.size(); i<n; i++) {
+			Connection con = connections.get(i);
+			if (!con.isReadyForTransfer() && 
+					!this.sendingConnections.contains(con)) {
+				nrof++; // receiving
+			}
+		}
+		return nrof;
+	}
+	
 	/**
 	 * Returns true if this router is currently sending a message with 
 	 * <CODE>msgId</CODE>.
@@ -529,6 +728,23 @@ public abstract class ActiveRouter extends MessageRouter {
 		return false;
 	}
 	
+	/**
+	 * Returns true if this router is currently sending a message with 
+	 * the given integer ID.
+	 * @param msgId The integer ID of the message (see 
+	 * {@link Message#getIntId()})
+	 * @return True if the message is being sent false if not
+	 */
+	public boolean isSending(int msgId) {
+		for (Connection con : this.sendingConnections) {
+			Message m = con.getMessage();
+			if (m != null && m.getIntId() == msgId) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
 	/**
 	 * Checks out all sending connections to finalize the ready ones 
 	 * and abort those whose connection went down. Also drops messages
@@ -538,10 +754,15 @@ public abstract class ActiveRouter extends MessageRouter {
 	@Override
 	public void update() {
 		
-		super.update();
+		super.update();
+		
+		if (maxTransfers > 1) {
+			updateConcurrentTransfers();
+		}
 		
-		/* in theory we can have multiple sending connections even though
-		  currently all routers allow only one concurrent sending connection */
+		/* with concurrent transfers, only the connections that have gone
+		 * down without finishing their transfer are left for this loop */
+		int nrofSending = this.sendingConnections.size();
 		for (int i=0; i<this.sendingConnections.size(); ) {
 			boolean removeCurrent = false;
 			Connection con = sendingConnections.get(i);
@@ -564,6 +785,10 @@ public abstract class ActiveRouter extends MessageRouter {
 			} 
 			
 			if (removeCurrent) {
+				if (maxTransfers > 1) {
+					shareBandwidth(con.getOtherNode(getHost()), 
+							getContext().getClock().getSimTime());
+				}
 				// if the message being sent was holding excess buffer, free it
 				if (this.getFreeBufferSize() < 0) {
 					this.makeRoomForMessage(0);
@@ -576,12 +801,129 @@ public abstract class ActiveRouter extends MessageRouter {
 			}
 		}
 		
+		double now = getContext().getClock().getSimTime();
+		if (maxTransfers > 1 && sendingConnections.size() != nrofSending) {
+			shareBandwidth(getHost(), now);
+		}
+		
 		/* time to do a TTL check and drop old messages? Only if not sending */
-		if (SimClock.getTime() - lastTtlCheck >= TTL_CHECK_INTERVAL && 
+		if (dropAtExpiry) {
+			dropExpiredMessages();
+		}
+		else if (now - lastTtlCheck >= TTL_CHECK_INTERVAL && 
 				sendingConnections.size() == 0) {
 			dropExpiredMessages();
-			lastTtlCheck = SimClock.getTime();
+			lastTtlCheck = now;
+		}
+	}
+	
+	@Override
+	public double nextUpdateTime() {
+		double now = getContext().getClock().getSimTime();
+		if (sendingConnections.size() > 0) {
+			return now;
+		}
+		double next = super.nextUpdateTime();
+		if (!dropAtExpiry) {
+			next = Math.min(next, lastTtlCheck + TTL_CHECK_INTERVAL);
+		}
+		else if (getFirstToExpire() != null) {
+			next = Math.min(next, getFirstToExpire().getExpiryTime());
+		}
+		if (peerSummaries != null) {
+			for (PeerSummary peer : peerSummaries.values()) {
+				if (peer.readyTime > now) {
+					next = Math.min(next, peer.readyTime);
+				}
+			}
 		}
+		return next;
+	}
+	
+	/**
+	 * Finalizes the finished transfers in the order of their completion 
+	 * times. The bandwidth a finished transfer frees is shared between the
+	 * remaining transfers starting from its completion time, which may 
+	 * move their completion times earlier (even before the current time).
+	 */
+	private void updateConcurrentTransfers() {
+		double now = getContext().getClock().getSimTime();
+		
+		while (true) {
+			Connection first = null;
+			double firstTime = Double.MAX_VALUE;
+			for (Connection con : this.sendingConnections) {
+				if (!con.isMessageTransferred()) {
+					continue;
+				}
+				double time = now;
+				if (con.getMessage() != null && con instanceof CBRConnection) {
+					time = ((CBRConnection)con).getTransferDoneTime();
+				}
+				if (time < firstTime) {
+					first = con;
+					firstTime = time;
+				}
+			}
+			if (first == null) {
+				return;
+			}
+			
+			if (first.getMessage() != null) {
+				transferDone(first);
+				first.finalizeTransfer();
+			} /* else: some other entity aborted transfer */
+			this.sendingConnections.remove(first);
+			if (this.getFreeBufferSize() < 0) {
+				this.makeRoomForMessage(0);
+			}
+			shareBandwidth(first, Math.min(firstTime, now));
+		}
+	}
+	
+	/**
+	 * Shares the bandwidth again after a transfer over a connection has 
+	 * started or ended. The shares of both ends of the connection change.
+	 * @param con The connection
+	 * @param time The time from which on the bandwidth is shared
+	 */
+	private void shareBandwidth(Connection con, double time) {
+		shareBandwidth(getHost(), time);
+		shareBandwidth(con.getOtherNode(getHost()), time);
+	}
+	
+	/**
+	 * Shares the bandwidth of a host fairly between the transfers it is 
+	 * sending or receiving. Every transfer gets the smaller of the shares
+	 * of its sender and receiver.
+	 * @param host The host
+	 * @param time The time from which on the bandwidth is shared
+	 */
+	private static void shareBandwidth(DTNHost host, double time) {
+		int nrof = getNrofActiveTransfers(host);
+		for (Connection con : host.getConnections()) {
+			if (con.getMessage() != null && con instanceof CBRConnection) {
+				int nrofOther = getNrofActiveTransfers(con.getOtherNode(host));
+				((CBRConnection)con).setTransferSpeed(con.getSpeed() / 
+						Math.max(Math.max(nrof, nrofOther), 1), time);
+			}
+		}
+	}
+	
+	/**
+	 * Returns the number of transfers a host is sending or receiving over
+	 * the connections that are up
+	 * @param host The host
+	 * @return The number of transfers
+	 */
+	private static int getNrofActiveTransfers(DTNHost host) {
+		int nrof = 0;
+		for (Connection con : host.getConnections()) {
+			if (con.getMessage() != null && con.isUp()) {
+				nrof++;
+			}
+		}
+		return nrof;
 	}
 	
 	/**
@@ -600,4 +942,19 @@ public abstract class ActiveRouter extends MessageRouter {
 	 */
 	protected void transferDone(Connection con) { }
 	
+	/**
+	 * Summary vector received from another host
+	 */
+	private static class PeerSummary {
+		/** the vector or null if the other host doesn't send one */
+		private SummaryVector vector;
+		/** the time when the exchange of the vectors is finished */
+		private double readyTime;
+		
+		public PeerSummary(SummaryVector vector, double readyTime) {
+			this.vector = vector;
+			this.readyTime = readyTime;
+		}
+	}
+	
 }
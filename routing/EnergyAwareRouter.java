@@ -127,7 +127,7 @@ public class EnergyAwareRouter extends ActiveRouter
 	 * @param amount The amount of energy to reduce
 	 */
 	protected void reduceEnergy(double amount) {
-		if (SimClock.getTime() < this.warmupTime) {
+		if (getContext().getClock().getSimTime() < this.warmupTime) {
 			return;
 		}
 		
@@ -142,7 +142,7 @@ public class EnergyAwareRouter extends ActiveRouter
 	 * and scanning for the other nodes. 
 	 */
 	protected void reduceSendingAndScanningEnergy() {
-		double simTime = SimClock.getTime();
+		double simTime = getContext().getClock().getSimTime();
 		
 		if (this.comBus == null) {
 			this.comBus = getHost().getComBus();
@@ -184,7 +184,13 @@ public class EnergyAwareRouter extends ActiveRouter
 		}
 		
 		this.tryAllMessagesToAllConnections();
-	}
+	}
+	
+	@Override
+	public double nextUpdateTime() {
+		/* energy is consumed on every update */
+		return getContext().getClock().getSimTime();
+	}
 		
 	@Override
 	public EnergyAwareRouter replicate() {
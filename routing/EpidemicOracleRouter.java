@@ -47,12 +47,13 @@ public class EpidemicOracleRouter extends ActiveRouter {
 	
 	@Override
 	public void changedConnection(Connection con) {
+		super.changedConnection(con);
 		if (con.isUp()) {
 			DTNHost peer = con.getOtherNode(getHost());
 			List<Message> newMessages = new ArrayList<Message>();
 			
 			for (Message m : peer.getMessageCollection()) {
-				if (!this.hasMessage(m.getId())) {
+				if (!this.hasMessage(m.getIntId())) {
 					newMessages.add(m);
 				}
 			}
@@ -123,12 +124,12 @@ public class EpidemicOracleRouter extends ActiveRouter {
 	}
 	
 	protected int checkReceiving(Message m) {
-		if ( isIncomingMessage(m.getId()) || hasMessage(m.getId()) || 
+		if ( isIncomingMessage(m.getIntId()) || hasMessage(m.getIntId()) || 
 				isDeliveredMessage(m) ){
 			return DENIED_OLD; // already seen this message -> reject it
 		}
 		
-		if (m.getTtl() <= 0 && m.getTo() != getHost()) {
+		if (isExpired(m) && m.getTo() != getHost()) {
 			/* TTL has expired and this host is not the final recipient */
 			return DENIED_TTL; 
 		}
@@ -152,7 +153,7 @@ public class EpidemicOracleRouter extends ActiveRouter {
 		
 		/* was the message delivered to the final recipient? */
 		if (m.getTo() == con.getOtherNode(getHost())) { 
-			this.deleteMessage(m.getId(), false);
+			this.deleteMessage(m, false);
 		}
 	}
 	
@@ -160,7 +161,12 @@ public class EpidemicOracleRouter extends ActiveRouter {
 	public void update() {
 		/* nothing to do; all transfers are started only when new connections
 		   are created or new messages are created or received, and transfers
-		   are finalized immediately */
+		   are finalized immediately */
+	}
+	
+	@Override
+	public double nextUpdateTime() {
+		return Double.MAX_VALUE;
 	}
 	
 	
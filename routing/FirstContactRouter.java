@@ -62,7 +62,7 @@ public class FirstContactRouter extends ActiveRouter {
 	@Override
 	protected void transferDone(Connection con) {
 		/* don't leave a copy for the sender */
-		this.deleteMessage(con.getMessage().getId(), false);
+		this.deleteMessage(con.getMessage(), false);
 	}
 		
 	@Override
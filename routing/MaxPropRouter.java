@@ -18,6 +18,7 @@ import routing.maxprop.MaxPropDijkstra;
 import routing.maxprop.MeetingProbabilitySet;
 import core.Connection;
 import core.DTNHost;
+import core.IntHashSet;
 import core.Message;
 import core.Settings;
 import core.Tuple;
@@ -53,7 +54,7 @@ public class MaxPropRouter extends ActiveRouter {
 	/** the cost-to-node calculator */
 	private MaxPropDijkstra dijkstra;	
 	/** IDs of the messages that are known to have reached the final dst */
-	private Set<String> ackedMessageIds;
+	private IntHashSet ackedMessageIds;
 	/** mapping of the current costs for all messages. This should be set to
 	 * null always when the costs should be updated (a host is met or a new
 	 * message is received) */
@@ -111,12 +112,13 @@ public class MaxPropRouter extends ActiveRouter {
 		this.probs = new MeetingProbabilitySet(probSetMaxSize, this.alpha);
 		this.allProbs = new HashMap<Integer, MeetingProbabilitySet>();
 		this.dijkstra = new MaxPropDijkstra(this.allProbs);
-		this.ackedMessageIds = new HashSet<String>();
+		this.ackedMessageIds = new IntHashSet();
 		this.avgSamples = new int[BYTES_TRANSFERRED_AVG_SAMPLES];
 	}	
 
 	@Override
 	public void changedConnection(Connection con) {
+		super.changedConnection(con);
 		if (con.isUp()) { // new connection
 			this.costsForMessages = null; // invalidate old cost estimates
 			
@@ -144,10 +146,8 @@ public class MaxPropRouter extends ActiveRouter {
 				/* exchange the transitive probabilities */
 				this.updateTransitiveProbs(otherRouter.allProbs);
 				otherRouter.updateTransitiveProbs(this.allProbs);
-				this.allProbs.put(otherHost.getAddress(),
-						otherRouter.probs.replicate());
-				otherRouter.allProbs.put(getHost().getAddress(),
-						this.probs.replicate());
+				this.putReplica(otherHost.getAddress(), otherRouter.probs);
+				otherRouter.putReplica(getHost().getAddress(), this.probs);
 			}
 		}
 		else {
@@ -167,20 +167,46 @@ public class MaxPropRouter extends ActiveRouter {
 			MeetingProbabilitySet myMps = this.allProbs.get(e.getKey()); 
 			if (myMps == null || 
 				e.getValue().getLastUpdateTime() > myMps.getLastUpdateTime() ) {
-				this.allProbs.put(e.getKey(), e.getValue().replicate());
+				putReplica(e.getKey(), e.getValue());
 			}
 		}
 	}
 	
+	/**
+	 * Stores a replica of a host's meeting probability set. An existing
+	 * replica of the host's set is refreshed in place, and not touched at
+	 * all if it already has the version of the given set.
+	 * @param address Address of the host whose probability set it is
+	 * @param mps The probability set
+	 */
+	private void putReplica(Integer address, MeetingProbabilitySet mps) {
+		MeetingProbabilitySet replica = this.allProbs.get(address);
+		if (replica == null || replica == this.probs) {
+			this.allProbs.put(address, mps.replicate());
+		}
+		else if (replica.getVersion() != mps.getVersion()) {
+			replica.copyFrom(mps);
+		}
+	}
+	
 	/**
 	 * Deletes the messages from the message buffer that are known to be ACKed
 	 */
 	private void deleteAckedMessages() {
-		for (String id : this.ackedMessageIds) {
-			if (this.hasMessage(id) && !isSending(id)) {
-				this.deleteMessage(id, false);
+		if (this.ackedMessageIds.size() == 0) {
+			return;
+		}
+		/* the buffer is usually much smaller than the set of ACKs */
+		List<Message> acked = new ArrayList<Message>();
+		for (Message m : this.getMessageCollection()) {
+			if (this.ackedMessageIds.contains(m.getIntId()) &&
+					!isSending(m.getIntId())) {
+				acked.add(m);
 			}
 		}
+		for (Message m : acked) {
+			this.deleteMessage(m, false);
+		}
 	}
 	
 	@Override
@@ -189,7 +215,7 @@ public class MaxPropRouter extends ActiveRouter {
 		Message m = super.messageTransferred(id, from);
 		/* was this node the final recipient of the message? */
 		if (isDeliveredMessage(m)) {
-			this.ackedMessageIds.add(id);
+			this.ackedMessageIds.add(m.getIntId());
 		}
 		return m;
 	}
@@ -205,8 +231,8 @@ public class MaxPropRouter extends ActiveRouter {
 		Message m = con.getMessage();
 		/* was the message delivered to the final recipient? */
 		if (m.getTo() == con.getOtherNode(getHost())) { 
-			this.ackedMessageIds.add(m.getId()); // yes, add to ACKed messages
-			this.deleteMessage(m.getId(), false); // delete from buffer
+			this.ackedMessageIds.add(m.getIntId()); // yes, add to ACKed messages
+			this.deleteMessage(m, false); // delete from buffer
 		}
 	}
 	
@@ -255,7 +281,7 @@ public class MaxPropRouter extends ActiveRouter {
 		List<Message> validMessages = new ArrayList<Message>();
 
 		for (Message m : messages) {	
-			if (excludeMsgBeingSent && isSending(m.getId())) {
+			if (excludeMsgBeingSent && isSending(m.getIntId())) {
 				continue; // skip the message(s) that router is sending
 			}
 			validMessages.add(m);
@@ -343,7 +369,7 @@ public class MaxPropRouter extends ActiveRouter {
 			for (Message m : msgCollection) {
 				/* skip messages that the other host has or that have
 				 * passed the other host */
-				if (othRouter.hasMessage(m.getId()) ||
+				if (othRouter.hasMessage(m.getIntId()) ||
 						m.getHops().contains(other)) {
 					continue; 
 				}
@@ -4,6 +4,7 @@
  */
 package routing;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -12,14 +13,17 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
 
+import routing.util.MessageBuffer;
+
 import core.Application;
 import core.Connection;
 import core.DTNHost;
+import core.IntHashMap;
 import core.Message;
 import core.MessageListener;
 import core.Settings;
 import core.SettingsError;
-import core.SimClock;
+import core.SimContext;
 import core.SimError;
 import core.Tuple;
 
@@ -51,6 +55,8 @@ public abstract class MessageRouter {
 	public static final int Q_MODE_RANDOM = 1;
 	/** Setting value for FIFO queue mode */
 	public static final int Q_MODE_FIFO = 2;
+	/** Odd multiplier that scrambles message IDs for the random order */
+	private static final int RANDOM_ORDER_MULT = 0x9E3779B9;
 	
 	/** Receive return value for OK */
 	public static final int RCV_OK = 0;
@@ -66,20 +72,24 @@ public abstract class MessageRouter {
 	public static final int DENIED_UNSPECIFIED = -999;
 	
 	private List<MessageListener> mListeners;
-	/** The messages being transferred with msgID_hostName keys */
-	private HashMap<String, Message> incomingMessages;
+	/** The messages being transferred by integer message ID */
+	private IntHashMap<IncomingMessage> incomingMessages;
 	/** The messages this router is carrying */
-	private HashMap<String, Message> messages; 
+	private MessageBuffer messages; 
 	/** The messages this router has received as the final recipient */
-	private HashMap<String, Message> deliveredMessages;
+	private IntHashMap<Message> deliveredMessages;
 	/** Host where this router belongs to */
 	private DTNHost host;
+	/** Simulation context of the router */
+	private SimContext context;
 	/** size of the buffer */
 	private int bufferSize;
 	/** TTL for all messages */
 	protected int msgTtl;
 	/** Queue mode for sending messages */
 	private int sendQueueMode;
+	/** Random number generator for the random queue mode */
+	private Random queueRng;
 
 	/** applications attached to the host */
 	private HashMap<String, Collection<Application>>	applications = null;
@@ -91,6 +101,7 @@ public abstract class MessageRouter {
 	 * @param s The settings object
 	 */
 	public MessageRouter(Settings s) {
+		this.context = SimContext.getCurrent();
 		this.bufferSize = Integer.MAX_VALUE; // defaults to rather large buffer	
 		this.msgTtl = Message.INFINITE_TTL;
 		this.applications = new HashMap<String, Collection<Application>>();
@@ -122,11 +133,13 @@ public abstract class MessageRouter {
 	 * @param mListeners The message listeners
 	 */
 	public void init(DTNHost host, List<MessageListener> mListeners) {
-		this.incomingMessages = new HashMap<String, Message>();
-		this.messages = new HashMap<String, Message>();
-		this.deliveredMessages = new HashMap<String, Message>();
+		this.incomingMessages = new IntHashMap<IncomingMessage>();
+		this.messages = new MessageBuffer();
+		this.queueRng = new Random();
+		this.deliveredMessages = new IntHashMap<Message>();
 		this.mListeners = mListeners;
 		this.host = host;
+		this.context = host.getContext();
 	}
 	
 	/**
@@ -134,6 +147,7 @@ public abstract class MessageRouter {
 	 * @param r Router to copy the settings from.
 	 */
 	protected MessageRouter(MessageRouter r) {
+		this.context = r.context;
 		this.bufferSize = r.bufferSize;
 		this.msgTtl = r.msgTtl;
 		this.sendQueueMode = r.sendQueueMode;
@@ -157,7 +171,24 @@ public abstract class MessageRouter {
 				app.update(this.host);
 			}
 		}
-	}
+	}
+	
+	/**
+	 * Returns the earliest simulation time when calling {@link #update()} 
+	 * may have some effect if the host has no connections and doesn't move.
+	 * Used by the event driven mode of {@link core.World}. Routers that 
+	 * do something time dependent in their update method must override this.
+	 * @return The next time the router needs to be updated
+	 */
+	public double nextUpdateTime() {
+		double next = Double.MAX_VALUE;
+		for (Collection<Application> apps : this.applications.values()) {
+			for (Application app : apps) {
+				next = Math.min(next, app.nextUpdateTime());
+			}
+		}
+		return next;
+	}
 	
 	/**
 	 * Informs the router about change in connections state.
@@ -171,6 +202,15 @@ public abstract class MessageRouter {
 	 * @return The message
 	 */
 	protected Message getMessage(String id) {
+		return getMessage(context.getMessageIntId(id));
+	}
+	
+	/**
+	 * Returns a message by integer ID.
+	 * @param id Integer ID of the message (see {@link Message#getIntId()})
+	 * @return The message
+	 */
+	protected Message getMessage(int id) {
 		return this.messages.get(id);
 	}
 	
@@ -180,7 +220,16 @@ public abstract class MessageRouter {
 	 * @return True if the router has message with this id, false if not
 	 */
 	protected boolean hasMessage(String id) {
-		return this.messages.containsKey(id);
+		return hasMessage(context.getMessageIntId(id));
+	}
+	
+	/**
+	 * Checks if this router has a message with certain integer id buffered.
+	 * @param id Integer ID of the message (see {@link Message#getIntId()})
+	 * @return True if the router has message with this id, false if not
+	 */
+	protected boolean hasMessage(int id) {
+		return this.messages.contains(id);
 	}
 	
 	/**
@@ -192,11 +241,12 @@ public abstract class MessageRouter {
 	 * this host as the final recipient.
 	 */
 	protected boolean isDeliveredMessage(Message m) {
-		return (this.deliveredMessages.containsKey(m.getId()));
+		return (this.deliveredMessages.containsKey(m.getIntId()));
 	}
 	
 	/**
-	 * Returns a reference to the messages of this router in collection.
+	 * Returns a reference to the messages of this router in collection.
+	 * The messages are in the order they were received (oldest first).
 	 * <b>Note:</b> If there's a chance that some message(s) from the collection
 	 * could be deleted (or added) while iterating through the collection, a
 	 * copy of the collection should be made to avoid concurrent modification
@@ -204,7 +254,7 @@ public abstract class MessageRouter {
 	 * @return a reference to the messages of this router in collection
 	 */
 	public Collection<Message> getMessageCollection() {
-		return this.messages.values();
+		return this.messages.getMessages();
 	}
 	
 	/**
@@ -231,17 +281,11 @@ public abstract class MessageRouter {
 	 * size isn't defined)
 	 */
 	public int getFreeBufferSize() {
-		int occupancy = 0;
-		
 		if (this.getBufferSize() == Integer.MAX_VALUE) {
 			return Integer.MAX_VALUE;
 		}
 		
-		for (Message m : getMessageCollection()) {
-			occupancy += m.getSize();
-		}
-		
-		return this.getBufferSize() - occupancy;
+		return this.getBufferSize() - this.messages.getOccupancy();
 	}
 	
 	/**
@@ -251,6 +295,14 @@ public abstract class MessageRouter {
 	protected DTNHost getHost() {
 		return this.host;
 	}
+
+	/**
+	 * Returns the simulation context of this router
+	 * @return The context of the router
+	 */
+	public SimContext getContext() {
+		return this.context;
+	}
 	
 	/**
 	 * Start sending a message to another host.
@@ -317,7 +369,7 @@ public abstract class MessageRouter {
 					"buffer of " + this.host);
 		}
 		
-		incoming.setReceiveTime(SimClock.getTime());
+		incoming.setReceiveTime(context.getClock().getSimTime());
 		
 		// Pass the message to the application (if any) and get outgoing message
 		Message outgoing = incoming;
@@ -341,7 +393,7 @@ public abstract class MessageRouter {
 			addToMessages(aMessage, false);
 		}
 		else if (isFirstDelivery) {
-			this.deliveredMessages.put(id, aMessage);
+			this.deliveredMessages.put(incoming.getIntId(), aMessage);
 		}
 		
 		for (MessageListener ml : this.mListeners) {
@@ -359,7 +411,12 @@ public abstract class MessageRouter {
 	 * @param from Who the message was from (previous hop).
 	 */
 	protected void putToIncomingBuffer(Message m, DTNHost from) {
-		this.incomingMessages.put(m.getId() + "_" + from.toString(), m);
+		int id = m.getIntId();
+		IncomingMessage next = this.incomingMessages.get(id);
+		if (next != null && next.remove(from) == next) {
+			next = next.next;
+		}
+		this.incomingMessages.put(id, new IncomingMessage(m, from, next));
 	}
 	
 	/**
@@ -370,7 +427,22 @@ public abstract class MessageRouter {
 	 * @return The found message or null if such message wasn't found
 	 */
 	protected Message removeFromIncomingBuffer(String id, DTNHost from) {
-		return this.incomingMessages.remove(id + "_" + from.toString());
+		int intId = context.getMessageIntId(id);
+		IncomingMessage first = this.incomingMessages.get(intId);
+		if (first == null) {
+			return null;
+		}
+		
+		IncomingMessage removed = first.remove(from);
+		if (removed == first) {
+			if (first.next != null) {
+				this.incomingMessages.put(intId, first.next);
+			}
+			else {
+				this.incomingMessages.remove(intId);
+			}
+		}
+		return removed != null ? removed.msg : null;
 	}
 	
 	/**
@@ -380,6 +452,16 @@ public abstract class MessageRouter {
 	 * @return True if such message is incoming right now
 	 */
 	protected boolean isIncomingMessage(String id) {
+		return isIncomingMessage(context.getMessageIntId(id));
+	}
+	
+	/**
+	 * Returns true if a message with the given integer ID is one of the
+	 * currently incoming messages, false if not
+	 * @param id Integer ID of the message (see {@link Message#getIntId()})
+	 * @return True if such message is incoming right now
+	 */
+	protected boolean isIncomingMessage(int id) {
 		return this.incomingMessages.containsKey(id);
 	}
 	
@@ -391,7 +473,7 @@ public abstract class MessageRouter {
 	 * message, if false, nothing is informed.
 	 */
 	protected void addToMessages(Message m, boolean newMessage) {
-		this.messages.put(m.getId(), m);
+		this.messages.add(m);
 		
 		if (newMessage) {
 			for (MessageListener ml : this.mListeners) {
@@ -406,6 +488,15 @@ public abstract class MessageRouter {
 	 * @return The removed message or null if message for the ID wasn't found
 	 */
 	protected Message removeFromMessages(String id) {
+		return removeFromMessages(context.getMessageIntId(id));
+	}
+	
+	/**
+	 * Removes and returns a message from the message buffer.
+	 * @param id Integer ID of the message to remove
+	 * @return The removed message or null if message for the ID wasn't found
+	 */
+	protected Message removeFromMessages(int id) {
 		Message m = this.messages.remove(id);
 		return m;
 	}
@@ -459,6 +550,55 @@ public abstract class MessageRouter {
 			ml.messageDeleted(removed, this.host, drop);
 		}
 	}
+	
+	/**
+	 * Deletes a message from the buffer and informs message listeners
+	 * about the event. Same as {@link #deleteMessage(String, boolean)} but
+	 * doesn't need to look up the integer ID of the message.
+	 * @param m The message to delete
+	 * @param drop True if the message is dropped, false if it is removed 
+	 * e.g. because it was delivered
+	 */
+	protected void deleteMessage(Message m, boolean drop) {
+		Message removed = removeFromMessages(m.getIntId()); 
+		if (removed == null) throw new SimError("no message for id " +
+				m.getId() + " to remove at " + this.host);
+		
+		for (MessageListener ml : this.mListeners) {
+			ml.messageDeleted(removed, this.host, drop);
+		}
+	}
+	
+	/**
+	 * Returns the message whose TTL expires first
+	 * @return The message or null if there are no messages
+	 */
+	protected Message getFirstToExpire() {
+		return this.messages.getFirstToExpire();
+	}
+
+	/**
+	 * Returns the messages whose TTL expires at the given time or before it
+	 * @param time The time
+	 * @return The messages in the order their TTL expires
+	 */
+	protected List<Message> getExpiredMessages(double time) {
+		return this.messages.getExpired(time);
+	}
+	
+	/**
+	 * Returns a copy of the messages of this router sorted/shuffled according
+	 * to the current sending queue mode. The message buffer is kept in the 
+	 * FIFO order, so the messages don't need to be sorted.
+	 * @return A list of the messages
+	 */
+	protected List<Message> getMessagesByQueueMode() {
+		List<Message> list = new ArrayList<Message>(getMessageCollection());
+		if (sendQueueMode != Q_MODE_FIFO) {
+			sortByQueueMode(list);
+		}
+		return list;
+	}
 	
 	/**
 	 * Sorts/shuffles the given list according to the current sending queue 
@@ -471,7 +611,9 @@ public abstract class MessageRouter {
 	protected List sortByQueueMode(List list) {
 		switch (sendQueueMode) {
 		case Q_MODE_RANDOM:
-			Collections.shuffle(list, new Random(SimClock.getIntTime()));
+			queueRng.setSeed(
+					(int)Math.round(context.getClock().getSimTime()));
+			Collections.shuffle(list, queueRng);
 			break;
 		case Q_MODE_FIFO:
 			Collections.sort(list, 
@@ -521,8 +663,10 @@ public abstract class MessageRouter {
 	protected int compareByQueueMode(Message m1, Message m2) {
 		switch (sendQueueMode) {
 		case Q_MODE_RANDOM:
-			/* return randomly (enough) but consistently -1, 0 or 1 */
-			return (m1.hashCode()/2 + m2.hashCode()/2) % 3 - 1; 
+			/* return randomly (enough) but consistently -1, 0 or 1; the
+			   order must be the same both ways or sorting can fail */
+			return Integer.compare(m1.getUniqueId() * RANDOM_ORDER_MULT,
+					m2.getUniqueId() * RANDOM_ORDER_MULT);
 		case Q_MODE_FIFO:
 			double diff = m1.getReceiveTime() - m2.getReceiveTime();
 			if (diff == 0) {
@@ -541,7 +685,13 @@ public abstract class MessageRouter {
 	 */
 	public RoutingInfo getRoutingInfo() {
 		RoutingInfo ri = new RoutingInfo(this);
-		RoutingInfo incoming = new RoutingInfo(this.incomingMessages.size() + 
+		List<Message> incomingList = new ArrayList<Message>();
+		for (IncomingMessage im : this.incomingMessages.values()) {
+			for (; im != null; im = im.next) {
+				incomingList.add(im.msg);
+			}
+		}
+		RoutingInfo incoming = new RoutingInfo(incomingList.size() + 
 				" incoming message(s)");
 		RoutingInfo delivered = new RoutingInfo(this.deliveredMessages.size() +
 				" delivered message(s)");
@@ -553,7 +703,7 @@ public abstract class MessageRouter {
 		ri.addMoreInfo(delivered);
 		ri.addMoreInfo(cons);
 		
-		for (Message m : this.incomingMessages.values()) {
+		for (Message m : incomingList) {
 			incoming.addMoreInfo(new RoutingInfo(m));
 		}
 		
@@ -621,4 +771,45 @@ public abstract class MessageRouter {
 			this.getHost().toString() + " with " + getNrofMessages() 
 			+ " messages";
 	}
+	
+	/**
+	 * Message that is being transferred to this router. Transfers of the
+	 * same message from different hosts are chained.
+	 */
+	private static class IncomingMessage {
+		private Message msg;
+		/** the previous hop of the transfer */
+		private DTNHost from;
+		/** next transfer of the same message */
+		private IncomingMessage next;
+		
+		public IncomingMessage(Message msg, DTNHost from, IncomingMessage next) {
+			this.msg = msg;
+			this.from = from;
+			this.next = next;
+		}
+		
+		/**
+		 * Removes the transfer from the given host from the chain starting
+		 * from this transfer. If this transfer is the one, the caller must
+		 * replace it with the next one.
+		 * @param from The previous hop of the transfer
+		 * @return The removed transfer or null if there was no transfer from
+		 * the host
+		 */
+		public IncomingMessage remove(DTNHost from) {
+			if (this.from == from) {
+				return this;
+			}
+			for (IncomingMessage prev = this; prev.next != null; 
+					prev = prev.next) {
+				if (prev.next.from == from) {
+					IncomingMessage removed = prev.next;
+					prev.next = removed.next;
+					return removed;
+				}
+			}
+			return null;
+		}
+	}
 }
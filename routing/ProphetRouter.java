@@ -8,15 +8,13 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
+import routing.prophet.DeliveryPredTable;
 import core.Connection;
 import core.DTNHost;
 import core.Message;
 import core.Settings;
-import core.SimClock;
 import core.Tuple;
 
 /**
@@ -52,9 +50,18 @@ public class ProphetRouter extends ActiveRouter {
 	private double beta;
 
 	/** delivery predictabilities */
-	private Map<DTNHost, Double> preds;
-	/** last delivery predictability update (sim)time */
-	private double lastAgeUpdate;
+	private DeliveryPredTable preds;
+
+	/** version of the buffer and predictabilities; incremented whenever
+	 * they or the connections change */
+	private int planVersion;
+	/** messages to try for the connected hosts, in sending order */
+	private List<Tuple<Message, Connection>> plan;
+	/** this router's version when the plan was created */
+	private int planOwnVersion;
+	/** the connected routers and their versions when the plan was created */
+	private ProphetRouter[] planPeers;
+	private int[] planPeerVersions;
 	
 	/**
 	 * Constructor. Creates a new message router based on the settings in
@@ -87,14 +94,21 @@ public class ProphetRouter extends ActiveRouter {
 	}
 	
 	/**
-	 * Initializes predictability hash
+	 * Initializes predictability table
 	 */
 	private void initPreds() {
-		this.preds = new HashMap<DTNHost, Double>();
+		this.preds = new DeliveryPredTable(GAMMA, secondsInTimeUnit);
+		this.plan = new ArrayList<Tuple<Message, Connection>>();
+		this.planVersion = 0;
+		this.planOwnVersion = -1;
+		this.planPeers = new ProphetRouter[0];
+		this.planPeerVersions = new int[0];
 	}
 
 	@Override
 	public void changedConnection(Connection con) {
+		super.changedConnection(con);
+		this.planVersion++;
 		if (con.isUp()) {
 			DTNHost otherHost = con.getOtherNode(getHost());
 			updateDeliveryPredFor(otherHost);
@@ -110,7 +124,7 @@ public class ProphetRouter extends ActiveRouter {
 	private void updateDeliveryPredFor(DTNHost host) {
 		double oldValue = getPredFor(host);
 		double newValue = oldValue + (1 - oldValue) * P_INIT;
-		preds.put(host, newValue);
+		preds.set(host, newValue, getContext().getClock().getSimTime());
 	}
 	
 	/**
@@ -120,13 +134,8 @@ public class ProphetRouter extends ActiveRouter {
 	 * @return the current P value
 	 */
 	public double getPredFor(DTNHost host) {
-		ageDeliveryPreds(); // make sure preds are updated before getting
-		if (preds.containsKey(host)) {
-			return preds.get(host);
-		}
-		else {
-			return 0;
-		}
+		// aged when read
+		return preds.get(host, getContext().getClock().getSimTime());
 	}
 	
 	/**
@@ -141,51 +150,22 @@ public class ProphetRouter extends ActiveRouter {
 			" with other routers of same type";
 		
 		double pForHost = getPredFor(host); // P(a,b)
-		Map<DTNHost, Double> othersPreds = 
-			((ProphetRouter)otherRouter).getDeliveryPreds();
+		ProphetRouter othersRouter = (ProphetRouter)otherRouter;
+		double now = getContext().getClock().getSimTime();
 		
-		for (Map.Entry<DTNHost, Double> e : othersPreds.entrySet()) {
-			if (e.getKey() == getHost()) {
+		for (int i = 0, n = othersRouter.preds.size(); i < n; i++) {
+			DTNHost c = othersRouter.preds.getHost(i);
+			if (c == getHost()) {
 				continue; // don't add yourself
 			}
 			
-			double pOld = getPredFor(e.getKey()); // P(a,c)_old
-			double pNew = pOld + ( 1 - pOld) * pForHost * e.getValue() * beta;
-			preds.put(e.getKey(), pNew);
+			double pOld = preds.get(c, now); // P(a,c)_old
+			double pNew = pOld + ( 1 - pOld) * pForHost * 
+				othersRouter.preds.get(c, now) * beta;
+			preds.set(c, pNew, now);
 		}
 	}
 
-	/**
-	 * Ages all entries in the delivery predictions.
-	 * <CODE>P(a,b) = P(a,b)_old * (GAMMA ^ k)</CODE>, where k is number of
-	 * time units that have elapsed since the last time the metric was aged.
-	 * @see #SECONDS_IN_UNIT_S
-	 */
-	private void ageDeliveryPreds() {
-		double timeDiff = (SimClock.getTime() - this.lastAgeUpdate) / 
-			secondsInTimeUnit;
-		
-		if (timeDiff == 0) {
-			return;
-		}
-		
-		double mult = Math.pow(GAMMA, timeDiff);
-		for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
-			e.setValue(e.getValue()*mult);
-		}
-		
-		this.lastAgeUpdate = SimClock.getTime();
-	}
-	
-	/**
-	 * Returns a map of this router's delivery predictions
-	 * @return a map of this router's delivery predictions
-	 */
-	private Map<DTNHost, Double> getDeliveryPreds() {
-		ageDeliveryPreds(); // make sure the aging is done
-		return this.preds;
-	}
-	
 	@Override
 	public void update() {
 		super.update();
@@ -203,27 +183,85 @@ public class ProphetRouter extends ActiveRouter {
 	
 	/**
 	 * Tries to send all other messages to all connected hosts ordered by
-	 * their delivery probability
-	 * @return The return value of {@link #tryMessagesForConnected(List)}
+	 * their delivery probability. The messages and their order are 
+	 * recomputed only when the plan is no longer valid (see 
+	 * {@link #isPlanValid()}), so idle updates don't create or sort lists.
+	 * @return The message-connection tuple whose transfer was started or 
+	 * null if no transfer was started
 	 */
 	private Tuple<Message, Connection> tryOtherMessages() {
-		List<Tuple<Message, Connection>> messages = 
-			new ArrayList<Tuple<Message, Connection>>(); 
+		if (!isPlanValid()) {
+			createPlan();
+		}
+		
+		for (int i = 0, n = plan.size(); i < n; i++) {
+			Tuple<Message, Connection> t = plan.get(i);
+			Connection con = t.getValue();
+			ProphetRouter othRouter = 
+				(ProphetRouter)con.getOtherNode(getHost()).getRouter();
+			if (othRouter.isTransferring()) {
+				continue; // skip hosts that are transferring
+			}
+			if (startTransfer(t.getKey(), con) == RCV_OK) {
+				return t;
+			}
+		}
+		return null;
+	}
 	
+	/**
+	 * Returns true if the plan is up to date, i.e., neither this router's 
+	 * nor the connected routers' buffers or predictabilities have changed
+	 * since the plan was created (and no connection has gone up or down)
+	 * @return true if the plan can be used as is
+	 */
+	private boolean isPlanValid() {
+		if (planOwnVersion != planVersion) {
+			return false;
+		}
+		List<Connection> connections = getConnections();
+		if (connections.size() != planPeers.length) {
+			return false;
+		}
+		for (int i = 0, n = connections.size(); i < n; i++) {
+			MessageRouter r = 
+				connections.get(i).getOtherNode(getHost()).getRouter();
+			if (r != planPeers[i] || 
+					planPeers[i].planVersion != planPeerVersions[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Creates the plan: collects the messages that the connected hosts 
+	 * have a higher probability of delivering and sorts them by the
+	 * probabilities (see {@link TupleComparator}). Hosts that are 
+	 * transferring are included and skipped when the plan is used.
+	 */
+	private void createPlan() {
+		List<Connection> connections = getConnections();
+		List<Tuple<Message, Connection>> messages = this.plan;
+		messages.clear();
+		if (planPeers.length != connections.size()) {
+			planPeers = new ProphetRouter[connections.size()];
+			planPeerVersions = new int[connections.size()];
+		}
+		
 		Collection<Message> msgCollection = getMessageCollection();
 		
 		/* for all connected hosts collect all messages that have a higher
 		   probability of delivery by the other host */
-		for (Connection con : getConnections()) {
+		for (int i = 0, n = connections.size(); i < n; i++) {
+			Connection con = connections.get(i);
 			DTNHost other = con.getOtherNode(getHost());
 			ProphetRouter othRouter = (ProphetRouter)other.getRouter();
-			
-			if (othRouter.isTransferring()) {
-				continue; // skip hosts that are transferring
-			}
+			planPeers[i] = othRouter;
+			planPeerVersions[i] = othRouter.planVersion;
 			
 			for (Message m : msgCollection) {
-				if (othRouter.hasMessage(m.getId())) {
+				if (othRouter.hasMessage(m.getIntId())) {
 					continue; // skip messages that the other one has
 				}
 				if (othRouter.getPredFor(m.getTo()) > getPredFor(m.getTo())) {
@@ -233,13 +271,24 @@ public class ProphetRouter extends ActiveRouter {
 			}			
 		}
 		
-		if (messages.size() == 0) {
-			return null;
-		}
-		
 		// sort the message-connection tuples
-		Collections.sort(messages, new TupleComparator());
-		return tryMessagesForConnected(messages);	// try to send messages
+		if (messages.size() > 1) {
+			Collections.sort(messages, new TupleComparator());
+		}
+		this.planOwnVersion = this.planVersion;
+	}
+	
+	@Override
+	protected void addToMessages(Message m, boolean newMessage) {
+		super.addToMessages(m, newMessage);
+		this.planVersion++;
+	}
+	
+	@Override
+	protected Message removeFromMessages(int id) {
+		Message m = super.removeFromMessages(id);
+		this.planVersion++;
+		return m;
 	}
 	
 	/**
@@ -277,14 +326,14 @@ public class ProphetRouter extends ActiveRouter {
 	
 	@Override
 	public RoutingInfo getRoutingInfo() {
-		ageDeliveryPreds();
 		RoutingInfo top = super.getRoutingInfo();
 		RoutingInfo ri = new RoutingInfo(preds.size() + 
 				" delivery prediction(s)");
 		
-		for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
-			DTNHost host = e.getKey();
-			Double value = e.getValue();
+		double now = getContext().getClock().getSimTime();
+		for (int i = 0, n = preds.size(); i < n; i++) {
+			DTNHost host = preds.getHost(i);
+			double value = preds.get(host, now);
 			
 			ri.addMoreInfo(new RoutingInfo(String.format("%s : %.6f", 
 					host, value)));
@@ -1,39 +1,36 @@
-/* 
+/*
  * Copyright 2010 Aalto University, ComNet
- * Released under GPLv3. See LICENSE.txt for details. 
+ * Released under GPLv3. See LICENSE.txt for details.
  */
 package routing.maxprop;
 
-import java.util.Collection;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Queue;
 import java.util.Set;
 
+import routing.util.DijkstraEngine;
+
 /**
  * Dijkstra's shortest path implementation for MaxProp Router module.
+ * The searches of the most recently used source nodes are kept and
+ * continued by the subsequent cost requests as long as none of the
+ * meeting probability sets the search has used has changed (see
+ * {@link MeetingProbabilitySet#getVersion()}).
  */
 public class MaxPropDijkstra {
-	/** Value for infinite distance  */
-	private static final Double INFINITY = Double.MAX_VALUE;
-	/** Initial size of the priority queue */
-	private static final int PQ_INIT_SIZE = 11;
-
-	/** Map of node distances from the source node */
-	private DistanceMap distancesFromStart;
-	/** Set of already visited nodes (where the shortest path is known) */
-	private Set<Integer> visited;
-	/** Priority queue of unvisited nodes discovered so far */
-	private Queue<Integer> unvisited;
-	/** Map of previous nodes on the shortest path(s) -- only used for
-	 * debugging purposes */
-	private Map<Integer, Integer> prevNodes;
+	/** Initial size of the visited node arrays */
+	private static final int INIT_SIZE = 16;
+	/** Maximum number of source nodes whose searches are kept */
+	private static final int MAX_SEARCHES = 4;
+
+	/** Searches of the recently used source nodes */
+	private Search[] searches;
+	/** Counter for finding the least recently used search */
+	private int useCount;
 	/** Mapping of to other nodes' (whom this node has met) probability sets */
 	private Map<Integer, MeetingProbabilitySet> probs;
-	
+
 	/**
 	 * Constructor.
 	 * @param probs A reference to the mapping of the known hosts meeting
@@ -41,184 +38,165 @@ public class MaxPropDijkstra {
 	 */
 	public MaxPropDijkstra(Map<Integer, MeetingProbabilitySet> probs) {
 		this.probs = probs;
+		this.searches = new Search[MAX_SEARCHES];
+		for (int i = 0; i < MAX_SEARCHES; i++) {
+			this.searches[i] = new Search();
+		}
 	}
 
 	/**
-	 * Initializes a new search with the first hop router node
-	 * @param firstHop The first hop router node
+	 * Returns a search for the given source node. A search that is still
+	 * valid is continued if one exists; otherwise the least recently used
+	 * search is restarted with the source node.
+	 * @param from The source node
+	 * @return The search
 	 */
-	private void initWith(Integer firstHop) {
-		this.unvisited = new PriorityQueue<Integer>(PQ_INIT_SIZE, 
-				new DistanceComparator());
-		this.visited = new HashSet<Integer>();
-		this.prevNodes = new HashMap<Integer, Integer>();
-		this.distancesFromStart = new DistanceMap();
-		
-		// set distance to source 0 and initialize unvisited queue
-		this.distancesFromStart.put(firstHop, 0);
-		this.unvisited.add(firstHop);
+	private Search getSearch(int from) {
+		Search lru = searches[0];
+		for (Search s : searches) {
+			if (s.engine.getSource() == from) {
+				if (!s.isValid()) {
+					s.initWith(from);
+				}
+				s.lastUse = ++useCount;
+				return s;
+			}
+			if (s.lastUse < lru.lastUse) {
+				lru = s;
+			}
+		}
+
+		lru.initWith(from);
+		lru.lastUse = ++useCount;
+		return lru;
 	}
-	
+
 	/**
-	 * Calculates total costs to the given set of target nodes. The cost to 
+	 * Calculates total costs to the given set of target nodes. The cost to
 	 * a node is the sum of complements of probabilities that all the links
-	 * come up as the next contact of the nodes. 
+	 * come up as the next contact of the nodes.
 	 * @param from The index (address) of the start node
 	 * @param to The address set of destination nodes
 	 * @return A map of (destination node, cost) tuples
 	 */
 	public Map<Integer, Double> getCosts(Integer from, Set<Integer> to) {
 		Map<Integer, Double> distMap = new HashMap<Integer, Double>();
-		int nrofNodesToFind = to.size();
-		
-		initWith(from);
-		Integer node = null;
-		
+		Search search = getSearch(from);
+		DijkstraEngine engine = search.engine;
+		int nrofNodesToFind = 0;
+
+		/* first the nodes that previous requests have already found */
+		for (Integer n : to) {
+			if (engine.isVisited(n)) {
+				distMap.put(n, engine.getDistance(n));
+			}
+			else {
+				nrofNodesToFind++;
+			}
+		}
+
+		int node;
 		// always take the node with shortest distance
-		while ((node = unvisited.poll()) != null) {
+		while (nrofNodesToFind > 0 && (node = engine.poll()) != -1) {
+			search.relax(node); // add/update neighbor nodes' distances
+
 			if (to.contains(node)) {
 				// found one of the requested nodes
-				distMap.put(node, distancesFromStart.get(node));
+				distMap.put(node, engine.getDistance(node));
 				nrofNodesToFind--;
-				if (nrofNodesToFind == 0) {
-					break; // all requested nodes found
-				}
-			} 
-			
-			visited.add(node); // mark the node as visited
-			relax(node);       // add/update neighbor nodes' distances
+			}
 		}
-			
+
 		return distMap;
 	}
-	
+
 	/**
-	 * Relaxes the neighbors of a node (updates the shortest distances).
-	 * @param node The node whose neighbors are relaxed
+	 * State of the search from one source node. The meeting probability sets
+	 * (and their versions) of the visited nodes are recorded, so changes to
+	 * the sets can be detected.
 	 */
-	private void relax(Integer node) {
-		double nodeDist = distancesFromStart.get(node);
-		Collection<Integer> neighbors;
-		
-		if (!this.probs.containsKey(node)) {
-			return; // node's neighbors are not known
-		}
-		
-		neighbors =	this.probs.get(node).getAllProbs().keySet();
-		
-		for (Integer n : neighbors) {
-			if (visited.contains(n)) {
-				continue; // skip visited nodes
-			}
-						
-			// n node's distance from path's source node
-			double nDist = nodeDist + getDistance(node, n);
-			
-			if (distancesFromStart.get(n) > nDist) { 
-				// stored distance > found dist -> update
-				prevNodes.put(n, node); // for debugging
-				setDistance(n, nDist);
-			}
+	private class Search {
+		private DijkstraEngine engine;
+		/** the visited nodes */
+		private int[] nodes;
+		/** the probability sets of the visited nodes (or null if none) */
+		private MeetingProbabilitySet[] sets;
+		/** versions of the probability sets when they were used */
+		private int[] versions;
+		private int nrofNodes;
+		/** value of the use counter when this search was last used */
+		private int lastUse;
+
+		public Search() {
+			this.engine = new DijkstraEngine();
+			this.nodes = new int[INIT_SIZE];
+			this.sets = new MeetingProbabilitySet[INIT_SIZE];
+			this.versions = new int[INIT_SIZE];
 		}
-	}
-	
-	/**
-	 * Sets the distance from source node to a node
-	 * @param n The node whose distance is set
-	 * @param distance The distance of the node from the source node
-	 */
-	private void setDistance(Integer n, double distance) {
-		unvisited.remove(n); // remove node from old place in the queue
-		distancesFromStart.put(n, distance); // update distance
-		unvisited.add(n); // insert node to the new place in the queue
-	}
-	
-	/**
-	 * Returns the "distance" between two nodes, i.e., the complement of the 
-	 * probability that the next node "from" meets is "to". Works only if there
-	 * exist a probability value for "from" meeting "to". 
-	 * @param from The first node
-	 * @param to The second node
-	 * @return The distance between the two nodes
-	 */
-	private double getDistance(Integer from, Integer to) {
-		assert probs.containsKey(from) : "Node " + from + " has not met " + to +
-			" (it has met nodes " + probs.keySet() + ")";
-		return ( 1 - probs.get(from).getProbFor(to) );
-	}
-	
-	/**
-	 * Comparator that compares two nodes by their distance from
-	 * the source node.
-	 */
-	private class DistanceComparator implements 
-		Comparator<Integer> {
-		
+
 		/**
-		 * Compares two map nodes by their distance from the source node
-		 * @return -1, 0 or 1 if node1's distance is smaller, equal to, or
-		 * bigger than node2's distance
+		 * Starts a new search from the source node
+		 * @param from The source node
 		 */
-		public int compare(Integer node1, Integer node2) {
-			double dist1 = distancesFromStart.get(node1);
-			double dist2 = distancesFromStart.get(node2);
-			
-			if (dist1 > dist2) {
-				return 1;
-			}
-			else if (dist1 < dist2) {
-				return -1;
-			}
-			else {
-				return node1.compareTo(node2);
-			}
+		public void initWith(int from) {
+			Arrays.fill(sets, 0, nrofNodes, null);
+			this.nrofNodes = 0;
+			engine.init(from, 0);
 		}
-	}
-	
-	/**
-	 * Simple Map implementation for storing distances. 
-	 */
-	private class DistanceMap {
-		private HashMap<Integer, Double> map;
-		
+
 		/**
-		 * Constructor. Creates an empty distance map
+		 * Returns true if none of the probability sets this search has used
+		 * has changed since
+		 * @return True if the search is still valid
 		 */
-		public DistanceMap() {
-			this.map = new HashMap<Integer, Double>(); 
+		public boolean isValid() {
+			for (int i = 0; i < nrofNodes; i++) {
+				MeetingProbabilitySet set = probs.get(nodes[i]);
+				if (set != sets[i] ||
+						(set != null && set.getVersion() != versions[i])) {
+					return false;
+				}
+			}
+			return true;
 		}
-		
+
 		/**
-		 * Returns the distance to a node. If no distance value
-		 * is found, returns {@link MaxPropDijkstra#INFINITY} as the value.
-		 * @param node The node whose distance is requested
-		 * @return The distance to that node
+		 * Relaxes the neighbors of a node (updates the shortest distances).
+		 * @param node The node whose neighbors are relaxed
 		 */
-		public double get(Integer node) {
-			Double value = map.get(node);
-			if (value != null) {
-				return value;
+		public void relax(int node) {
+			MeetingProbabilitySet set = probs.get(node);
+			record(node, set);
+
+			if (set == null) {
+				return; // node's neighbors are not known
 			}
-			else {
-				return INFINITY;
+
+			double nodeDist = engine.getDistance(node);
+			for (int i = 0, n = set.size(); i < n; i++) {
+				/* neighbor's distance from path's source node is the sum of
+				 * this node's distance and the complement of the
+				 * probability that the next node this node meets is it */
+				engine.offer(set.getNodeAt(i),
+						nodeDist + (1 - set.getProbAt(i)));
 			}
 		}
-		
+
 		/**
-		 * Puts a new distance value for a map node
+		 * Records the probability set that was used for a node
 		 * @param node The node
-		 * @param distance Distance to that node
-		 */
-		public void  put(Integer node, double distance) {
-			map.put(node, distance);
-		}
-		
-		/**
-		 * Returns a string representation of the map's contents
-		 * @return a string representation of the map's contents
+		 * @param set The probability set of the node or null if none
 		 */
-		public String toString() {
-			return map.toString();
+		private void record(int node, MeetingProbabilitySet set) {
+			if (nrofNodes == nodes.length) {
+				nodes = Arrays.copyOf(nodes, nrofNodes * 2);
+				sets = Arrays.copyOf(sets, nrofNodes * 2);
+				versions = Arrays.copyOf(versions, nrofNodes * 2);
+			}
+			nodes[nrofNodes] = node;
+			sets[nrofNodes] = set;
+			versions[nrofNodes] = (set != null ? set.getVersion() : 0);
+			nrofNodes++;
 		}
 	}
-}
\ No newline at end of file
+}
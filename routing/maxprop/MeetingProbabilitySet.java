@@ -1,9 +1,10 @@
-/* 
- * Copyright 2010 Aalto University, ComNet
- * Released under GPLv3. See LICENSE.txt for details. 
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
  */
 package routing.maxprop;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -12,18 +13,31 @@ import core.SimClock;
 
 /**
  * Class for storing and manipulating the meeting probabilities for the MaxProp
- * router module.
+ * router module. The probabilities are kept in primitive arrays: the entries
+ * are in the order they were added (with the last entry moved to the place
+ * of a dropped one) and their positions are indexed by the node indexes.
  */
 public class MeetingProbabilitySet {
 	public static final int INFINITE_SET_SIZE = Integer.MAX_VALUE;
-	/** meeting probabilities (probability that the next node one meets is X) */
-	private Map<Integer, Double> probs;
+	/** Initial capacity of the arrays */
+	private static final int INIT_SIZE = 8;
+	/** node indexes of the entries */
+	private int[] nodes;
+	/** meeting probabilities of the entries (probability that the next node
+	 * one meets is X) */
+	private double[] values;
+	/** number of entries */
+	private int size;
+	/** positions of the entries + 1, indexed by node index (0 = no entry) */
+	private int[] positions;
 	/** the time when this MPS was last updated */
 	private double lastUpdateTime;
 	/** the alpha parameter */
 	private double alpha;
     private int maxSetSize;
-	
+	/** number of modifications made to the probabilities */
+	private int version;
+
 	/**
 	 * Constructor. Creates a probability set with empty node-probability
 	 * mapping.
@@ -32,17 +46,19 @@ public class MeetingProbabilitySet {
 	 */
 	public MeetingProbabilitySet(int maxSetSize, double alpha) {
 		this.alpha = alpha;
-		this.probs = new HashMap<Integer, Double>();
         if (maxSetSize == INFINITE_SET_SIZE || maxSetSize < 1) {
-        	this.probs = new HashMap<Integer, Double>();
         	this.maxSetSize = INFINITE_SET_SIZE;
+        	this.nodes = new int[INIT_SIZE];
         } else {
-        	this.probs = new HashMap<Integer, Double>(maxSetSize);
             this.maxSetSize = maxSetSize;
+        	this.nodes = new int[Math.min(maxSetSize, INIT_SIZE)];
         }
+		this.values = new double[nodes.length];
+		this.positions = new int[INIT_SIZE];
+		this.size = 0;
 		this.lastUpdateTime = 0;
 	}
-	
+
 	/**
 	 * Constructor. Creates a probability set with empty node-probability
 	 * mapping and infinite set size
@@ -50,86 +66,117 @@ public class MeetingProbabilitySet {
 	public MeetingProbabilitySet() {
 		this(INFINITE_SET_SIZE, 1);
 	}
-	
+
 	/**
 	 * Constructor. Creates a probability set with equal probability for
 	 * all the given node indexes.
 	 */
-	public MeetingProbabilitySet(double alpha, 
+	public MeetingProbabilitySet(double alpha,
 				List<Integer> initiallyKnownNodes) {
 		this(INFINITE_SET_SIZE, alpha);
 		double prob = 1.0/initiallyKnownNodes.size();
 		for (Integer i : initiallyKnownNodes) {
-			this.probs.put(i, prob);
+			put(i, prob);
 		}
 	}
-	
+
 	/**
 	 * Updates meeting probability for the given node index.
 	 * <PRE> P(b) = P(b)_old + alpha
-	 * Normalize{P}</PRE> 
+	 * Normalize{P}</PRE>
 	 * I.e., The probability of the given node index is increased by one and
 	 * then all the probabilities are normalized so that their sum equals to 1.
 	 * @param index The node index to update the probability for
 	 */
 	public void updateMeetingProbFor(Integer index) {
-        Map.Entry<Integer, Double> smallestEntry = null;
-        double smallestValue = Double.MAX_VALUE;
-
 		this.lastUpdateTime = SimClock.getTime();
-		
-		if (probs.size() == 0) { // first entry
-			probs.put(index, 1.0);
+		this.version++;
+
+		if (size == 0) { // first entry
+			put(index, 1.0);
 			return;
 		}
-		
+
 		double newValue = getProbFor(index) + alpha;
-		probs.put(index, newValue);
+		put(index, newValue);
 
 		/* now the sum of all entries is 1+alpha;
-		 * normalize to one by dividing all the entries by 1+alpha */ 
-		for (Map.Entry<Integer, Double> entry : probs.entrySet()) {
-			entry.setValue(entry.getValue() / (1+alpha));
-            if (entry.getValue() < smallestValue) {
-                smallestEntry = entry;
-                smallestValue = entry.getValue();
-            }
-
+		 * normalize to one by dividing all the entries by 1+alpha. The
+		 * smallest entry is found on the way. */
+		int smallest = 0;
+		for (int i = 0; i < size; i++) {
+			values[i] /= (1+alpha);
+			if (values[i] < values[smallest]) {
+				smallest = i;
+			}
 		}
 
-        if (probs.size() >= maxSetSize) {
-            core.Debug.p("Probsize: " + probs.size() + " dropping " + 
-                    probs.remove(smallestEntry.getKey()));
+        if (size >= maxSetSize) {
+            core.Debug.p("Probsize: " + size + " dropping " +
+                    values[smallest]);
+            removeAt(smallest);
         }
 	}
-	
+
 	public void updateMeetingProbFor(Integer index, double iet)	{
-		probs.put(index, iet);
+		put(index, iet);
+		this.version++;
 	}
-	
+
 	/**
-	 * Returns the current delivery probability value for the given node index 
+	 * Returns the current delivery probability value for the given node index
 	 * @param index The index of the node to look the P for
 	 * @return the current delivery probability value
 	 */
 	public double getProbFor(Integer index) {
-		if (probs.containsKey(index)) {
-			return probs.get(index);
+		int pos = getPosition(index);
+		if (pos >= 0) {
+			return values[pos];
 		}
 		else {
 			/* the node with the given index has not been met */
 			return 0.0;
 		}
 	}
-	
+
+	/**
+	 * Returns the number of nodes that have a probability in this set
+	 * @return the number of nodes that have a probability
+	 */
+	public int size() {
+		return this.size;
+	}
+
 	/**
-	 * Returns a reference to the probability map of this probability set
-	 * @return a reference to the probability map of this probability set
+	 * Returns the node index of an entry of this set
+	 * @param i Index of the entry (0 ... {@link #size()} - 1)
+	 * @return the node index
+	 */
+	public int getNodeAt(int i) {
+		return this.nodes[i];
+	}
+
+	/**
+	 * Returns the probability of an entry of this set
+	 * @param i Index of the entry (0 ... {@link #size()} - 1)
+	 * @return the probability of the entry's node
+	 */
+	public double getProbAt(int i) {
+		return this.values[i];
+	}
+
+	/**
+	 * Returns a copy of the probabilities of this probability set
+	 * @return a mapping of node indexes to their probabilities
 	 */
 	public Map<Integer, Double> getAllProbs() {
-		return this.probs;
+		Map<Integer, Double> probs = new HashMap<Integer, Double>();
+		for (int i = 0; i < size; i++) {
+			probs.put(nodes[i], values[i]);
+		}
+		return probs;
 	}
-	
+
 	/**
 	 * Returns the time when this probability set was last updated
 	 * @return the time when this probability set was last updated
@@ -137,14 +184,25 @@ public class MeetingProbabilitySet {
 	public double getLastUpdateTime() {
 		return this.lastUpdateTime;
 	}
-	
+
+	/**
+	 * Returns the version of this probability set. The version is increased
+	 * whenever the probabilities are modified and replicas have the version
+	 * of the original set, so an unchanged version of the same set object
+	 * means that the probabilities are unchanged too.
+	 * @return the version of this probability set
+	 */
+	public int getVersion() {
+		return this.version;
+	}
+
 	/**
 	 * Enables changing the alpha parameter dynamically
 	 */
 	public void setAlpha(double alpha) {
 		this.alpha = alpha;
 	}
-	
+
 	/**
 	 * Returns a deep copy of the probability set
 	 * @return a deep copy of the probability set
@@ -152,22 +210,99 @@ public class MeetingProbabilitySet {
 	public MeetingProbabilitySet replicate() {
 		MeetingProbabilitySet replica = new MeetingProbabilitySet(
 				this.maxSetSize, alpha);
-		
-		// do a deep copy
-		for (Map.Entry<Integer, Double> e : probs.entrySet()) {
-			replica.probs.put(e.getKey(), e.getValue().doubleValue());
-		}
-		
-		replica.lastUpdateTime = this.lastUpdateTime;
+		replica.copyFrom(this);
 		return replica;
 	}
-	
+
+	/**
+	 * Makes this set a deep copy of another probability set. The arrays of
+	 * this set are reused whenever they are large enough, so refreshing an
+	 * old replica doesn't allocate anything.
+	 * @param mps The probability set to copy
+	 */
+	public void copyFrom(MeetingProbabilitySet mps) {
+		for (int i = 0; i < size; i++) {
+			positions[nodes[i]] = 0;
+		}
+		if (nodes.length < mps.size) {
+			nodes = new int[mps.nodes.length];
+			values = new double[mps.nodes.length];
+		}
+		if (positions.length < mps.positions.length) {
+			positions = new int[mps.positions.length];
+		}
+
+		System.arraycopy(mps.nodes, 0, nodes, 0, mps.size);
+		System.arraycopy(mps.values, 0, values, 0, mps.size);
+		for (int i = 0; i < mps.size; i++) {
+			positions[nodes[i]] = i + 1;
+		}
+
+		this.size = mps.size;
+		this.maxSetSize = mps.maxSetSize;
+		this.alpha = mps.alpha;
+		this.lastUpdateTime = mps.lastUpdateTime;
+		this.version = mps.version;
+	}
+
+	/**
+	 * Returns the position of a node's entry
+	 * @param index The node index
+	 * @return The position or -1 if the node has no entry
+	 */
+	private int getPosition(int index) {
+		if (index >= positions.length) {
+			return -1;
+		}
+		return positions[index] - 1;
+	}
+
+	/**
+	 * Sets the probability for a node, adding a new entry if needed
+	 * @param index The node index
+	 * @param value The probability
+	 */
+	private void put(int index, double value) {
+		int pos = getPosition(index);
+		if (pos >= 0) {
+			values[pos] = value;
+			return;
+		}
+
+		if (size == nodes.length) {
+			nodes = Arrays.copyOf(nodes, size * 2);
+			values = Arrays.copyOf(values, size * 2);
+		}
+		if (index >= positions.length) {
+			positions = Arrays.copyOf(positions,
+					Math.max(index + 1, positions.length * 2));
+		}
+		nodes[size] = index;
+		values[size] = value;
+		size++;
+		positions[index] = size;
+	}
+
+	/**
+	 * Removes an entry. The last entry is moved to its place.
+	 * @param pos Position of the entry
+	 */
+	private void removeAt(int pos) {
+		positions[nodes[pos]] = 0;
+		size--;
+		if (pos < size) {
+			nodes[pos] = nodes[size];
+			values[pos] = values[size];
+			positions[nodes[pos]] = pos + 1;
+		}
+	}
+
 	/**
 	 * Returns a String presentation of the probabilities
 	 * @return a String presentation of the probabilities
 	 */
     @Override
 	public String toString() {
-		return "probs: " +	this.probs.toString();
+		return "probs: " +	getAllProbs().toString();
 	}
-}
\ No newline at end of file
+}
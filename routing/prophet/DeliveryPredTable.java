@@ -0,0 +1,158 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.prophet;
+
+import java.util.Arrays;
+
+import core.DTNHost;
+
+/**
+ * <P>Table of delivery predictabilities for the PRoPHET routers. The values
+ * are stored in primitive arrays indexed by the host addresses, so reading
+ * and updating them doesn't need any hashing or boxing.</P>
+ *
+ * <P>The values are aged lazily. The table keeps the cumulative logarithm
+ * of the aging <CODE>L = sum(ln(gamma) * k)</CODE>, where k is the number of
+ * time units each gamma was in effect, and every value remembers the L it
+ * was last aged with. Reading a value applies <CODE>exp(L - L_value)</CODE>
+ * to it, which is the same as aging the whole table with the gamma in
+ * effect on every read. Hence passing time costs nothing and an encounter
+ * only costs as much as the number of the values it touches.</P>
+ */
+public class DeliveryPredTable {
+	/** Initial capacity of the arrays */
+	private static final int INIT_SIZE = 16;
+
+	/** predictabilities, indexed by host address */
+	private double[] values;
+	/** the cumulative log aging the values were last aged with */
+	private double[] ageLogs;
+	/** indexes of the hosts in the known hosts array + 1 (0 = unknown) */
+	private int[] indexes;
+	/** the hosts that have a value, in the order they were added */
+	private DTNHost[] known;
+	private int nrofKnown;
+
+	/** logarithm of the aging constant */
+	private double logGamma;
+	/** cumulative log aging of the table up to {@link #lastAgeTime} */
+	private double ageLog;
+	/** the time when the table was last aged */
+	private double lastAgeTime;
+	/** number of seconds in a time unit */
+	private double secondsInTimeUnit;
+
+	/**
+	 * Constructor.
+	 * @param gamma The aging constant
+	 * @param secondsInTimeUnit Number of seconds in one aging time unit
+	 */
+	public DeliveryPredTable(double gamma, double secondsInTimeUnit) {
+		this.logGamma = Math.log(gamma);
+		this.secondsInTimeUnit = secondsInTimeUnit;
+		this.values = new double[INIT_SIZE];
+		this.ageLogs = new double[INIT_SIZE];
+		this.indexes = new int[INIT_SIZE];
+		this.known = new DTNHost[INIT_SIZE];
+		this.nrofKnown = 0;
+	}
+
+	/**
+	 * Sets the aging constant. The new value is used for all the aging done
+	 * after this call, including the time that has already elapsed since
+	 * the table was last read (or set). Time before that stays aged with the
+	 * old value, no matter when the individual values are read.
+	 * @param gamma The new aging constant
+	 */
+	public void setGamma(double gamma) {
+		this.logGamma = Math.log(gamma);
+	}
+
+	/**
+	 * Advances the cumulative log aging of the table to the given time
+	 * @param now Current simulation time
+	 */
+	private void age(double now) {
+		if (now == lastAgeTime) {
+			return;
+		}
+		if (logGamma == Double.NEGATIVE_INFINITY) {
+			/* gamma 0 wipes all the values; can't be expressed as a log */
+			for (int i = 0; i < nrofKnown; i++) {
+				int address = known[i].getAddress();
+				values[address] = 0;
+				ageLogs[address] = ageLog;
+			}
+		} else {
+			ageLog += logGamma * ((now - lastAgeTime) / secondsInTimeUnit);
+		}
+		lastAgeTime = now;
+	}
+
+	/**
+	 * Returns the aged predictability for a host
+	 * @param host The host
+	 * @param now Current simulation time
+	 * @return The predictability or 0 if the host has no value
+	 */
+	public double get(DTNHost host, double now) {
+		age(now);
+		int address = host.getAddress();
+		if (address >= indexes.length || indexes[address] == 0) {
+			return 0;
+		}
+
+		double logDiff = ageLog - ageLogs[address];
+		if (logDiff != 0) {
+			values[address] *= Math.exp(logDiff);
+			ageLogs[address] = ageLog;
+		}
+		return values[address];
+	}
+
+	/**
+	 * Sets the predictability for a host
+	 * @param host The host
+	 * @param value The new predictability
+	 * @param now Current simulation time
+	 */
+	public void set(DTNHost host, double value, double now) {
+		age(now);
+		int address = host.getAddress();
+		if (address >= indexes.length) {
+			int size = Math.max(address + 1, indexes.length * 2);
+			values = Arrays.copyOf(values, size);
+			ageLogs = Arrays.copyOf(ageLogs, size);
+			indexes = Arrays.copyOf(indexes, size);
+		}
+		if (indexes[address] == 0) {
+			if (nrofKnown == known.length) {
+				known = Arrays.copyOf(known, nrofKnown * 2);
+			}
+			known[nrofKnown++] = host;
+			indexes[address] = nrofKnown;
+		}
+
+		values[address] = value;
+		ageLogs[address] = ageLog;
+	}
+
+	/**
+	 * Returns the number of hosts that have a predictability
+	 * @return The number of hosts
+	 */
+	public int size() {
+		return this.nrofKnown;
+	}
+
+	/**
+	 * Returns a host that has a predictability
+	 * @param index Index of the host (0 ... {@link #size()} - 1)
+	 * @return The host
+	 */
+	public DTNHost getHost(int index) {
+		return this.known[index];
+	}
+}
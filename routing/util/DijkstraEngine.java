@@ -0,0 +1,217 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import java.util.Arrays;
+
+/**
+ * <P>Reusable state of a Dijkstra's shortest path search over integer node
+ * indexes (e.g., host addresses). The caller drives the search: it
+ * {@link #poll()}s the closest unvisited node and {@link #offer(int, double)}s
+ * new distances for its neighbors, so the same engine works for both
+ * additive costs and time dependent (schedule) graphs.</P>
+ *
+ * <P>All the state is kept in primitive arrays that are reused by the
+ * subsequent searches. The distances and visited flags are stamped with the
+ * search's epoch, so starting a new search doesn't need to clear anything.
+ * The unvisited nodes are kept in an indexed binary heap that supports
+ * decreasing the distance of a node in place. Nodes with equal distances are
+ * polled in the order of their indexes.</P>
+ */
+public class DijkstraEngine {
+	/** Value for infinite distance */
+	public static final double INFINITY = Double.MAX_VALUE;
+	/** Initial size of the arrays */
+	private static final int INIT_SIZE = 16;
+
+	/** distances of the nodes from the source, indexed by node */
+	private double[] distances;
+	/** epochs when the distances were set, indexed by node */
+	private int[] distanceEpochs;
+	/** epochs when the nodes were visited, indexed by node */
+	private int[] visitEpochs;
+	/** positions of the nodes in the heap, indexed by node */
+	private int[] heapPositions;
+	/** binary heap of the unvisited nodes discovered so far */
+	private int[] heap;
+	private int heapSize;
+	/** epoch of the current search */
+	private int epoch;
+	private int source;
+
+	/**
+	 * Constructor. Creates an engine with no search started.
+	 */
+	public DijkstraEngine() {
+		this.distances = new double[INIT_SIZE];
+		this.distanceEpochs = new int[INIT_SIZE];
+		this.visitEpochs = new int[INIT_SIZE];
+		this.heapPositions = new int[INIT_SIZE];
+		this.heap = new int[INIT_SIZE];
+		this.epoch = 0;
+		this.source = -1;
+	}
+
+	/**
+	 * Starts a new search. All the state of the previous search is discarded.
+	 * @param source Index of the source node
+	 * @param distance The distance (or e.g., time) at the source node
+	 */
+	public void init(int source, double distance) {
+		epoch++;
+		if (epoch == Integer.MAX_VALUE) { // very unlikely; start over
+			Arrays.fill(distanceEpochs, 0);
+			Arrays.fill(visitEpochs, 0);
+			epoch = 1;
+		}
+		this.heapSize = 0;
+		this.source = source;
+		offer(source, distance);
+	}
+
+	/**
+	 * Returns the source node of the current search
+	 * @return The source node or -1 if no search has been started
+	 */
+	public int getSource() {
+		return this.source;
+	}
+
+	/**
+	 * Removes the unvisited node with the smallest distance from the queue
+	 * and marks it visited.
+	 * @return The node or -1 if there are no more reachable nodes
+	 */
+	public int poll() {
+		if (heapSize == 0) {
+			return -1;
+		}
+		int node = heap[0];
+		heapSize--;
+		if (heapSize > 0) {
+			moveDown(heap[heapSize], 0);
+		}
+		visitEpochs[node] = epoch;
+		return node;
+	}
+
+	/**
+	 * Offers a new distance for a node. If the node hasn't been visited and
+	 * the distance is smaller than the node's current distance, the distance
+	 * is updated.
+	 * @param node The node
+	 * @param distance The new distance
+	 * @return True if the distance was updated, false if not
+	 */
+	public boolean offer(int node, double distance) {
+		ensureCapacity(node);
+		if (distanceEpochs[node] != epoch) {
+			distances[node] = distance;
+			distanceEpochs[node] = epoch;
+			heapSize++;
+			moveUp(node, heapSize - 1);
+			return true;
+		}
+		if (visitEpochs[node] == epoch || distances[node] <= distance) {
+			return false;
+		}
+		distances[node] = distance;
+		moveUp(node, heapPositions[node]);
+		return true;
+	}
+
+	/**
+	 * Returns the current distance of a node from the source node
+	 * @param node The node
+	 * @return The distance or {@link #INFINITY} if the node hasn't been
+	 * reached
+	 */
+	public double getDistance(int node) {
+		if (node >= distanceEpochs.length || distanceEpochs[node] != epoch) {
+			return INFINITY;
+		}
+		return distances[node];
+	}
+
+	/**
+	 * Returns true if the node has been visited, i.e., its shortest distance
+	 * is known
+	 * @param node The node
+	 * @return True if the node has been visited
+	 */
+	public boolean isVisited(int node) {
+		return node < visitEpochs.length && visitEpochs[node] == epoch;
+	}
+
+	/**
+	 * Returns true if a node is in the heap before another node
+	 */
+	private boolean isBefore(int node1, int node2) {
+		double dist1 = distances[node1];
+		double dist2 = distances[node2];
+		return dist1 < dist2 || (dist1 == dist2 && node1 < node2);
+	}
+
+	/**
+	 * Moves a node towards the root of the heap until it's in its place
+	 * @param node The node
+	 * @param pos The position where the node starts
+	 */
+	private void moveUp(int node, int pos) {
+		while (pos > 0) {
+			int parentPos = (pos - 1) / 2;
+			int parent = heap[parentPos];
+			if (!isBefore(node, parent)) {
+				break;
+			}
+			heap[pos] = parent;
+			heapPositions[parent] = pos;
+			pos = parentPos;
+		}
+		heap[pos] = node;
+		heapPositions[node] = pos;
+	}
+
+	/**
+	 * Moves a node towards the leaves of the heap until it's in its place
+	 * @param node The node
+	 * @param pos The position where the node starts
+	 */
+	private void moveDown(int node, int pos) {
+		int half = heapSize / 2;
+		while (pos < half) {
+			int childPos = 2 * pos + 1;
+			int child = heap[childPos];
+			if (childPos + 1 < heapSize && isBefore(heap[childPos + 1], child)) {
+				childPos++;
+				child = heap[childPos];
+			}
+			if (!isBefore(child, node)) {
+				break;
+			}
+			heap[pos] = child;
+			heapPositions[child] = pos;
+			pos = childPos;
+		}
+		heap[pos] = node;
+		heapPositions[node] = pos;
+	}
+
+	/**
+	 * Makes sure the arrays have room for the given node
+	 * @param node The node
+	 */
+	private void ensureCapacity(int node) {
+		if (node < distances.length) {
+			return;
+		}
+		int size = Math.max(node + 1, distances.length * 2);
+		distances = Arrays.copyOf(distances, size);
+		distanceEpochs = Arrays.copyOf(distanceEpochs, size);
+		visitEpochs = Arrays.copyOf(visitEpochs, size);
+		heapPositions = Arrays.copyOf(heapPositions, size);
+		heap = Arrays.copyOf(heap, size);
+	}
+}
@@ -0,0 +1,351 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import core.IntHashMap;
+import core.Message;
+
+/**
+ * <P>Message buffer of a router. The messages can be looked up by their
+ * integer IDs (see {@link Message#getIntId()}) and the buffer maintains
+ * two orderings of them at the same time:</P>
+ * <UL>
+ * <LI/> FIFO: the messages in the order of their receive time (messages
+ * received at the same time are in the order they were added)
+ * <LI/> Expiry: the messages in the order their TTL expires
+ * </UL>
+ * <P>The total size of the messages is also kept up to date, so none of the
+ * common buffer operations need to scan or sort all the messages.</P>
+ */
+public class MessageBuffer {
+	/** Initial size of the expiry heap */
+	private static final int INIT_HEAP_SIZE = 16;
+
+	/** buffer entries by integer message ID */
+	private IntHashMap<Entry> entries;
+	/** first and last entries in the FIFO order */
+	private Entry head, tail;
+	/** binary heap of the entries in the expiry order */
+	private Entry[] expiryHeap;
+	/** sum of the sizes of the messages */
+	private int occupancy;
+	/** number of modifications, for detecting concurrent modifications */
+	private int modCount;
+	/** view of the messages in the FIFO order */
+	private Collection<Message> fifoView;
+
+	/**
+	 * Constructor. Creates an empty buffer.
+	 */
+	public MessageBuffer() {
+		this.entries = new IntHashMap<Entry>();
+		this.expiryHeap = new Entry[INIT_HEAP_SIZE];
+		this.fifoView = new FifoView();
+	}
+
+	/**
+	 * Adds a message to the buffer. A message with the same ID is replaced.
+	 * @param m The message to add
+	 */
+	public void add(Message m) {
+		remove(m.getIntId());
+
+		Entry e = new Entry(m);
+		entries.put(m.getIntId(), e);
+		insertFifo(e);
+		insertExpiry(e);
+		occupancy += m.getSize();
+		modCount++;
+	}
+
+	/**
+	 * Removes a message from the buffer
+	 * @param id Integer ID of the message to remove
+	 * @return The removed message or null if there was no message with the ID
+	 */
+	public Message remove(int id) {
+		Entry e = entries.remove(id);
+		if (e == null) {
+			return null;
+		}
+
+		removeFifo(e);
+		removeExpiry(e);
+		occupancy -= e.msg.getSize();
+		modCount++;
+		return e.msg;
+	}
+
+	/**
+	 * Returns the message with the given ID
+	 * @param id The integer ID
+	 * @return The message or null if there is no message with the ID
+	 */
+	public Message get(int id) {
+		Entry e = entries.get(id);
+		return e != null ? e.msg : null;
+	}
+
+	/**
+	 * Returns true if the buffer has a message with the given ID
+	 * @param id The integer ID
+	 * @return True if the buffer has a message with the ID
+	 */
+	public boolean contains(int id) {
+		return entries.containsKey(id);
+	}
+
+	/**
+	 * Returns the number of messages in the buffer
+	 * @return The number of messages
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the sum of the sizes of the messages in the buffer
+	 * @return The sum of the sizes
+	 */
+	public int getOccupancy() {
+		return this.occupancy;
+	}
+
+	/**
+	 * Returns a read-only view of the messages in the FIFO order, i.e.,
+	 * the oldest message first. The view reflects the changes of the buffer
+	 * but the buffer must not be modified while the view is iterated.
+	 * @return A view of the messages
+	 */
+	public Collection<Message> getMessages() {
+		return this.fifoView;
+	}
+
+	/**
+	 * Returns the message whose TTL expires first
+	 * @return The message or null if the buffer is empty
+	 */
+	public Message getFirstToExpire() {
+		return entries.size() > 0 ? expiryHeap[0].msg : null;
+	}
+
+	/**
+	 * Returns the messages whose TTL has expired at the given time, i.e., 
+	 * whose expiry time is not after it. Only the expired part of the 
+	 * expiry heap is visited.
+	 * @param time The time
+	 * @return The expired messages in the order their TTL expired
+	 */
+	public List<Message> getExpired(double time) {
+		List<Entry> expired = new ArrayList<Entry>();
+		int size = entries.size();
+		if (size > 0 && expiryHeap[0].expiry <= time) {
+			expired.add(expiryHeap[0]);
+		}
+		for (int i = 0; i < expired.size(); i++) { // children of expired ones
+			int pos = expired.get(i).heapPos;
+			for (int c = 2 * pos + 1; c <= 2 * pos + 2 && c < size; c++) {
+				if (expiryHeap[c].expiry <= time) {
+					expired.add(expiryHeap[c]);
+				}
+			}
+		}
+
+		Collections.sort(expired, new Comparator<Entry>() {
+			public int compare(Entry e1, Entry e2) {
+				return Double.compare(e1.expiry, e2.expiry);
+			}
+		});
+		List<Message> msgs = new ArrayList<Message>(expired.size());
+		for (Entry e : expired) {
+			msgs.add(e.msg);
+		}
+		return msgs;
+	}
+
+	/**
+	 * Inserts an entry to its place in the FIFO list. Messages are usually
+	 * added when they are received, so the place is found from the end.
+	 */
+	private void insertFifo(Entry e) {
+		double time = e.msg.getReceiveTime();
+		Entry prev = tail;
+		while (prev != null && prev.msg.getReceiveTime() > time) {
+			prev = prev.prev;
+		}
+
+		e.prev = prev;
+		e.next = (prev != null ? prev.next : head);
+		if (e.next != null) {
+			e.next.prev = e;
+		}
+		else {
+			tail = e;
+		}
+		if (prev != null) {
+			prev.next = e;
+		}
+		else {
+			head = e;
+		}
+	}
+
+	/**
+	 * Removes an entry from the FIFO list
+	 */
+	private void removeFifo(Entry e) {
+		if (e.prev != null) {
+			e.prev.next = e.next;
+		}
+		else {
+			head = e.next;
+		}
+		if (e.next != null) {
+			e.next.prev = e.prev;
+		}
+		else {
+			tail = e.prev;
+		}
+		e.prev = e.next = null;
+	}
+
+	/**
+	 * Inserts an entry to the expiry heap. The entry must already be in the
+	 * entries map.
+	 */
+	private void insertExpiry(Entry e) {
+		int last = entries.size() - 1;
+		if (last == expiryHeap.length) {
+			expiryHeap = Arrays.copyOf(expiryHeap, last * 2);
+		}
+		moveUp(e, last);
+	}
+
+	/**
+	 * Removes an entry from the expiry heap. The entry must already be
+	 * removed from the entries map.
+	 */
+	private void removeExpiry(Entry e) {
+		int last = entries.size();
+		Entry moved = expiryHeap[last];
+		expiryHeap[last] = null;
+		if (moved != e) {
+			int pos = e.heapPos;
+			moveDown(moved, pos);
+			if (moved.heapPos == pos) {
+				moveUp(moved, pos);
+			}
+		}
+	}
+
+	/**
+	 * Moves an entry towards the root of the expiry heap
+	 */
+	private void moveUp(Entry e, int pos) {
+		while (pos > 0) {
+			int parentPos = (pos - 1) / 2;
+			Entry parent = expiryHeap[parentPos];
+			if (parent.expiry <= e.expiry) {
+				break;
+			}
+			expiryHeap[pos] = parent;
+			parent.heapPos = pos;
+			pos = parentPos;
+		}
+		expiryHeap[pos] = e;
+		e.heapPos = pos;
+	}
+
+	/**
+	 * Moves an entry towards the leaves of the expiry heap
+	 */
+	private void moveDown(Entry e, int pos) {
+		int size = entries.size();
+		while (2 * pos + 1 < size) {
+			int childPos = 2 * pos + 1;
+			if (childPos + 1 < size &&
+					expiryHeap[childPos + 1].expiry <
+					expiryHeap[childPos].expiry) {
+				childPos++;
+			}
+			Entry child = expiryHeap[childPos];
+			if (e.expiry <= child.expiry) {
+				break;
+			}
+			expiryHeap[pos] = child;
+			child.heapPos = pos;
+			pos = childPos;
+		}
+		expiryHeap[pos] = e;
+		e.heapPos = pos;
+	}
+
+	/**
+	 * Buffer entry of a message
+	 */
+	private static class Entry {
+		private Message msg;
+		/** the time when the message's TTL expires */
+		private double expiry;
+		/** neighbors in the FIFO list */
+		private Entry prev, next;
+		/** position in the expiry heap */
+		private int heapPos;
+
+		public Entry(Message msg) {
+			this.msg = msg;
+			this.expiry = msg.getExpiryTime();
+		}
+	}
+
+	/**
+	 * Read-only collection view of the messages in the FIFO order
+	 */
+	private class FifoView extends AbstractCollection<Message> {
+		@Override
+		public Iterator<Message> iterator() {
+			return new Iterator<Message>() {
+				private Entry next = head;
+				private int expectedModCount = modCount;
+
+				public boolean hasNext() {
+					return next != null;
+				}
+
+				public Message next() {
+					if (modCount != expectedModCount) {
+						throw new ConcurrentModificationException();
+					}
+					if (next == null) {
+						throw new NoSuchElementException();
+					}
+					Message m = next.msg;
+					next = next.next;
+					return m;
+				}
+
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return entries.size();
+		}
+	}
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+/**
+ * <P>Summary vector of the messages a router knows about: a counting Bloom
+ * filter of integer message IDs (see {@link core.Message#getIntId()}).
+ * The IDs can be added and removed and the filter tells if an ID may be in
+ * the vector. False positives are possible, false negatives are not.</P>
+ * <P>Only the bits of the filter (whether the counter is non-zero) are
+ * needed by the other hosts, so the exchanged size of the vector is its
+ * size in bits. A {@link #copy()} contains only the bits and can't be
+ * modified.</P>
+ */
+public class SummaryVector {
+	/** Default number of hash functions */
+	public static final int DEF_NROF_HASHES = 3;
+	/** Value of a counter that has overflowed; such counters stay set */
+	private static final int MAX_COUNT = 0xFF;
+
+	/** number of bits (and counters) */
+	private final int size;
+	private final int nrofHashes;
+	/** the bits of the filter */
+	private final long[] bits;
+	/** counters of the bits or null for read-only copies */
+	private final byte[] counters;
+
+	/**
+	 * Constructor. Creates an empty summary vector.
+	 * @param size Size of the vector in bits
+	 * @param nrofHashes Number of hash functions (bits per ID)
+	 */
+	public SummaryVector(int size, int nrofHashes) {
+		if (size < 1 || nrofHashes < 1) {
+			throw new IllegalArgumentException("Invalid summary vector size " +
+					size + " or number of hashes " + nrofHashes);
+		}
+		this.size = size;
+		this.nrofHashes = nrofHashes;
+		this.bits = new long[(size + 63) / 64];
+		this.counters = new byte[size];
+	}
+
+	/**
+	 * Copy constructor for read-only copies
+	 * @param sv The vector to copy
+	 */
+	private SummaryVector(SummaryVector sv) {
+		this.size = sv.size;
+		this.nrofHashes = sv.nrofHashes;
+		this.bits = sv.bits.clone();
+		this.counters = null;
+	}
+
+	/**
+	 * Returns the bit index for the Nth hash of an ID. The hashes are
+	 * derived from two mixes of the ID (double hashing).
+	 * @param id The ID
+	 * @param n Index of the hash function
+	 * @return The bit index
+	 */
+	private int index(int id, int n) {
+		int h1 = id * 0x9E3779B9;
+		h1 ^= h1 >>> 16;
+		int h2 = (id ^ 0x5BD1E995) * 0x85EBCA6B;
+		h2 ^= h2 >>> 13;
+		return ((h1 + n * (h2 | 1)) & 0x7FFFFFFF) % size;
+	}
+
+	/**
+	 * Adds an ID to the vector
+	 * @param id The ID
+	 */
+	public void add(int id) {
+		checkWritable();
+		for (int n = 0; n < nrofHashes; n++) {
+			int i = index(id, n);
+			int count = counters[i] & 0xFF;
+			if (count < MAX_COUNT) {
+				counters[i] = (byte)(count + 1);
+			}
+			bits[i >>> 6] |= 1L << i;
+		}
+	}
+
+	/**
+	 * Removes an ID from the vector. The ID must have been added (and not
+	 * removed after that).
+	 * @param id The ID
+	 */
+	public void remove(int id) {
+		checkWritable();
+		for (int n = 0; n < nrofHashes; n++) {
+			int i = index(id, n);
+			int count = counters[i] & 0xFF;
+			if (count == MAX_COUNT) {
+				continue; // overflowed counters are never cleared
+			}
+			counters[i] = (byte)(count - 1);
+			if (count == 1) {
+				bits[i >>> 6] &= ~(1L << i);
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the ID may be in the vector
+	 * @param id The ID
+	 * @return False if the ID is surely not in the vector, true if it
+	 * probably is
+	 */
+	public boolean mightContain(int id) {
+		for (int n = 0; n < nrofHashes; n++) {
+			int i = index(id, n);
+			if ((bits[i >>> 6] & (1L << i)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the size of the vector when it is exchanged
+	 * @return The size in bytes
+	 */
+	public int getByteSize() {
+		return (size + 7) / 8;
+	}
+
+	/**
+	 * Returns a read-only copy of the current state of this vector
+	 * @return The copy
+	 */
+	public SummaryVector copy() {
+		return new SummaryVector(this);
+	}
+
+	private void checkWritable() {
+		if (counters == null) {
+			throw new UnsupportedOperationException("Read-only summary vector");
+		}
+	}
+}
@@ -70,5 +70,24 @@ public class ActivenessHandlerTest extends TestCase {
 
 	}
 	
+	public void testNextChangeTime() {
+		assertFalse(ah.isActive());
+		assertEquals(in, ah.nextChangeTime());
+		clock.setTime(5);
+		assertTrue(ah.isActive());
+		assertEquals(out, ah.nextChangeTime());
+		clock.setTime(50);
+		assertFalse(ah.isActive());
+		assertEquals(100.0, ah.nextChangeTime());
+		clock.setTime(360);
+		assertFalse(ah.isActive()); /* range 210-220 is checked first */
+		assertEquals(350.0, ah.nextChangeTime());
+		assertTrue(ah.isActive());
+		assertEquals(400.0, ah.nextChangeTime());
+		clock.setTime(450);
+		assertFalse(ah.isActive());
+		assertEquals(Double.MAX_VALUE, ah.nextChangeTime());
+	}
+	
 }
 
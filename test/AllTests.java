@@ -28,9 +28,11 @@ public class AllTests {
 		suite.addTestSuite(ExternalMovementReaderTest.class);
 		suite.addTestSuite(ExternalMovementTest.class);
 		suite.addTestSuite(WKTReaderTest.class);
+		suite.addTestSuite(WKTTokenizerTest.class);
 		suite.addTestSuite(WKTPointReaderTest.class);
 		suite.addTestSuite(MapNodeTest.class);
 		suite.addTestSuite(MapBasedMovementTest.class);
+		suite.addTestSuite(MapCacheTest.class);
 		suite.addTestSuite(CoordTest.class);
 		suite.addTestSuite(DistanceDelayReportTest.class);
 		suite.addTestSuite(AdjacencyGraphvizReportTest.class);
@@ -49,6 +51,17 @@ public class AllTests {
 		suite.addTestSuite(ScheduledUpdatesQueueTest.class);
 		suite.addTestSuite(MessageTest.class);
 		suite.addTestSuite(ModuleCommunicationBusTest.class);
+		suite.addTestSuite(RoadSegmentIndexTest.class);
+		suite.addTestSuite(RoadGraphTest.class);
+		suite.addTestSuite(TrafficStateStoreTest.class);
+		suite.addTestSuite(TrafficEstimateReportTest.class);
+		suite.addTestSuite(ConnectivityGridTest.class);
+		suite.addTestSuite(SweepAndPruneOptimizerTest.class);
+		suite.addTestSuite(SimContextTest.class);
+		suite.addTestSuite(DeliveryPredTableTest.class);
+		suite.addTestSuite(MessageBufferTest.class);
+		suite.addTestSuite(IntHashMapTest.class);
+		suite.addTestSuite(SummaryVectorTest.class);
 		//$JUnit-END$
 		return suite;
 	}
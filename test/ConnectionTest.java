@@ -151,6 +151,22 @@ public class ConnectionTest extends TestCase {
 	}
 
 	
+	public void testSetTransferSpeed() {
+		clock.setTime(START_TIME + 0.4);
+		c[0].setTransferSpeed(speed[0] / 2.0, START_TIME + 0.4);
+		/* 30 bytes left at half of the speed */
+		assertEquals(START_TIME + 1.6, c[0].getTransferDoneTime(), 0.00001);
+		assertEquals(30, c[0].getRemainingByteCount(), 1);
+		
+		/* can't be faster than the connection */
+		clock.setTime(START_TIME + 1.0);
+		c[0].setTransferSpeed(speed[0] * 2.0, START_TIME + 1.0);
+		assertEquals(START_TIME + 1.3, c[0].getTransferDoneTime(), 0.00001);
+		assertFalse(c[0].isMessageTransferred());
+		clock.setTime(START_TIME + 1.3);
+		assertTrue(c[0].isMessageTransferred());
+	}
+	
 	public void testFinalizeTransfer() {
 		assertFalse(c[0].isMessageTransferred());
 		c[0].finalizeTransfer(); /* this doesn't check time */
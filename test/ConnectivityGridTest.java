@@ -0,0 +1,98 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import interfaces.ConnectivityGrid;
+import junit.framework.TestCase;
+import core.Coord;
+import core.DTNHost;
+import core.NetworkInterface;
+
+/**
+ * Tests for the cell based connectivity optimizer
+ */
+public class ConnectivityGridTest extends TestCase {
+	private static final int CELL_SIZE = 100;
+	private static int nextKey = 1000;
+
+	private TestUtils utils;
+	private ConnectivityGrid grid;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		TestSettings.init(null);
+		utils = new TestUtils(null, null, new TestSettings());
+		/* use a new grid for every test */
+		grid = ConnectivityGrid.ConnectivityGridFactory(nextKey++, CELL_SIZE);
+	}
+
+	private NetworkInterface addInterface(double x, double y) {
+		DTNHost h = utils.createHost(new Coord(x, y));
+		NetworkInterface ni = h.getInterfaces().get(0);
+		grid.addInterface(ni);
+		return ni;
+	}
+
+	private void move(NetworkInterface ni, double x, double y) {
+		ni.getHost().setLocation(new Coord(x, y));
+		grid.updateLocation(ni);
+	}
+
+	private List<NetworkInterface> near(NetworkInterface ni) {
+		return new ArrayList<NetworkInterface>(grid.getNearInterfaces(ni));
+	}
+
+	public void testNearInterfaces() {
+		NetworkInterface a = addInterface(150, 150);
+		NetworkInterface b = addInterface(250, 150);
+		NetworkInterface c = addInterface(450, 150);
+
+		List<NetworkInterface> nearA = near(a);
+		assertEquals(2, nearA.size());
+		assertTrue(nearA.contains(a));
+		assertTrue(nearA.contains(b));
+		assertEquals(1, near(c).size());
+	}
+
+	public void testMovedInterfaces() {
+		NetworkInterface a = addInterface(150, 150);
+		NetworkInterface b = addInterface(250, 150);
+		NetworkInterface c = addInterface(450, 150);
+		assertEquals(2, near(a).size());
+
+		move(c, 350, 150); /* c to b's neighbor cell */
+		assertEquals(2, near(a).size());
+		assertEquals(3, near(b).size());
+		assertTrue(near(b).contains(c));
+
+		move(b, 650, 650); /* b away from everyone */
+		assertEquals(1, near(a).size());
+		assertEquals(1, near(b).size());
+		assertEquals(1, near(c).size());
+
+		move(a, 360, 160); /* a to c's cell */
+		assertEquals(2, near(c).size());
+		assertTrue(near(c).contains(a));
+	}
+
+	public void testRemovedInterface() {
+		NetworkInterface a = addInterface(150, 150);
+		NetworkInterface b = addInterface(150, 150);
+		assertEquals(2, near(a).size());
+
+		grid.removeInterface(b);
+		assertEquals(1, near(a).size());
+		assertEquals(0, near(b).size());
+	}
+
+	public void testNearListIsShared() {
+		NetworkInterface a = addInterface(150, 150);
+		NetworkInterface b = addInterface(160, 160);
+		assertSame(grid.getNearInterfaces(a), grid.getNearInterfaces(b));
+	}
+}
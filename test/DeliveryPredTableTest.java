@@ -0,0 +1,84 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import junit.framework.TestCase;
+import routing.prophet.DeliveryPredTable;
+import core.Coord;
+import core.DTNHost;
+
+/**
+ * Tests for the delivery predictability table of the PRoPHET routers
+ */
+public class DeliveryPredTableTest extends TestCase {
+	private static final double GAMMA = 0.5;
+	private static final double UNIT = 10;
+	private static final double DELTA = 0.0000001;
+
+	private DTNHost h0;
+	private DTNHost h1;
+	private DeliveryPredTable table;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		TestSettings.init(null);
+		TestUtils utils = new TestUtils(null, null, new TestSettings());
+		h0 = utils.createHost(new Coord(0, 0));
+		h1 = utils.createHost(new Coord(0, 0));
+		table = new DeliveryPredTable(GAMMA, UNIT);
+	}
+
+	public void testUnknownHost() {
+		assertEquals(0.0, table.get(h0, 0), DELTA);
+		assertEquals(0, table.size());
+	}
+
+	public void testLazyAging() {
+		table.set(h0, 0.8, 0);
+		table.set(h1, 0.6, 10);
+		assertEquals(0.8, table.get(h0, 0), DELTA);
+		assertEquals(0.4, table.get(h0, 10), DELTA);
+		assertEquals(0.6, table.get(h1, 10), DELTA);
+		assertEquals(0.1, table.get(h0, 30), DELTA);
+		assertEquals(0.15, table.get(h1, 30), DELTA);
+	}
+
+	public void testKnownHosts() {
+		table.set(h1, 0.5, 0);
+		table.set(h0, 0.5, 0);
+		table.set(h1, 0.7, 0);
+		assertEquals(2, table.size());
+		assertSame(h1, table.getHost(0));
+		assertSame(h0, table.getHost(1));
+	}
+
+	public void testSetGamma() {
+		table.set(h0, 0.8, 0);
+		table.setGamma(0.25);
+		assertEquals(0.2, table.get(h0, 10), DELTA);
+	}
+
+	public void testSetGammaAfterOtherRead() {
+		table.set(h0, 0.8, 0);
+		table.set(h1, 0.8, 0);
+		assertEquals(0.4, table.get(h1, 10), DELTA);
+		table.setGamma(0.25);
+		/* time before the last read of the table keeps the old gamma */
+		assertEquals(0.1, table.get(h0, 20), DELTA);
+		assertEquals(0.1, table.get(h1, 20), DELTA);
+	}
+
+	public void testZeroGamma() {
+		table.set(h0, 0.8, 0);
+		table.setGamma(0);
+		assertEquals(0.8, table.get(h0, 0), DELTA);
+		table.set(h1, 0.6, 0);
+		assertEquals(0.0, table.get(h1, 10), DELTA);
+		table.setGamma(GAMMA);
+		table.set(h1, 0.6, 10);
+		assertEquals(0.0, table.get(h0, 20), DELTA);
+		assertEquals(0.3, table.get(h1, 20), DELTA);
+	}
+}
@@ -4,11 +4,14 @@
  */
 package test;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import junit.framework.TestCase;
 import movement.map.DijkstraPathFinder;
 import movement.map.MapNode;
+import movement.map.SimMap;
 import core.Coord;
 
 public class DijkstraPathFinderTest extends TestCase {
@@ -73,6 +76,46 @@ public class DijkstraPathFinderTest extends TestCase {
 		checkPath(getPath(n8,n4), n8, n7, n6, n5, n4);
 	}
 	
+	public void testOkMapNodeTypes() {
+		MapNode[] nodes = {n1, n2, n3, n4, n5, n7, n8};
+		for (MapNode n : nodes) {
+			n.addType(1);
+		}
+		n6.addType(2);
+		
+		/* n6 is not an OK node */
+		r = new DijkstraPathFinder(new int[] {1});
+		checkPath(getPath(n5,n3), n5, n2, n3);
+		r = new DijkstraPathFinder(new int[] {1, 2});
+		checkPath(getPath(n5,n3), n5, n6, n3);
+		
+		MapNode n9 = newNode(30, 30);
+		n9.addType(4);
+		n8.addNeighbor(n9);
+		n9.addNeighbor(n8);
+		r = new DijkstraPathFinder(new int[] {1});
+		assertEquals(0, getPath(n4, n9).size());
+	}
+	
+	public void testMapRoadGraph() {
+		Map<Coord, MapNode> nodes = new HashMap<Coord, MapNode>();
+		for (MapNode n : new MapNode[] {n1, n2, n3, n4, n5, n6, n7, n8}) {
+			nodes.put(n.getLocation(), n);
+		}
+		SimMap map = new SimMap(nodes);
+		assertSame(map.getRoadGraph(), map.getRoadGraph());
+		assertEquals(8, map.getRoadGraph().getNrofNodes());
+		
+		r = new DijkstraPathFinder(null, map);
+		testPathFinding();
+		
+		/* paths from nodes that are not in the map are still found */
+		MapNode n9 = newNode(30, 10);
+		n9.addNeighbor(n8);
+		checkPath(getPath(n9,n7), n9, n8, n7);
+		checkPath(getPath(n4,n8), n4, n5, n6, n7, n8);
+	}
+	
 	private void checkPath(List<MapNode> path, MapNode ... nodes) {
 		assertEquals(nodes.length,path.size());
 		
@@ -4,6 +4,7 @@
  */
 package test;
 
+import routing.ActiveRouter;
 import routing.EpidemicRouter;
 import routing.MessageRouter;
 import core.DTNHost;
@@ -499,6 +500,79 @@ public class EpidemicRouterTest extends AbstractRouterTest {
 		assertFalse(mc.next());
 	}
 	
+	public void testDropAtExpiry() throws Exception {
+		ts.putSetting(ActiveRouter.DROP_AT_EXPIRY_S, "true");
+		try {
+			this.setUp();
+		} finally {
+			ts.putSetting(ActiveRouter.DROP_AT_EXPIRY_S, "false");
+		}
+		
+		Message m1 = new Message(h1,h3, msgId1, 1);
+		h1.createNewMessage(m1);
+		checkCreates(1);
+		clock.advance(10);
+		Message m2 = new Message(h4,h3, msgId2, 1);
+		h4.createNewMessage(m2);
+		checkCreates(1);
+		
+		/* a minute before the expiry the messages are still kept */
+		clock.advance(TTL*60 - 70);
+		updateAllNodes();
+		assertFalse(mc.next());
+		
+		clock.advance(60);
+		updateAllNodes();
+		assertTrue(mc.next());
+		assertEquals(mc.TYPE_DELETE, mc.getLastType());
+		assertEquals(h1, mc.getLastFrom());
+		assertEquals(msgId1, mc.getLastMsg().getId());
+		assertFalse(mc.next());
+		
+		clock.advance(10);
+		updateAllNodes();
+		assertTrue(mc.next());
+		assertEquals(mc.TYPE_DELETE, mc.getLastType());
+		assertEquals(h4, mc.getLastFrom());
+		assertEquals(msgId2, mc.getLastMsg().getId());
+		assertFalse(mc.next());
+	}
+	
+	public void testDropAtExpiryWhileSending() throws Exception {
+		ts.putSetting(ActiveRouter.DROP_AT_EXPIRY_S, "true");
+		ts.putSetting(MessageRouter.SEND_QUEUE_MODE_S, 
+				"" + MessageRouter.Q_MODE_FIFO);
+		try {
+			this.setUp();
+		} finally {
+			ts.putSetting(ActiveRouter.DROP_AT_EXPIRY_S, "false");
+			ts.putSetting(MessageRouter.SEND_QUEUE_MODE_S, 
+					"" + MessageRouter.Q_MODE_RANDOM);
+		}
+		
+		Message m1 = new Message(h1,h3, msgId1, BUFFER_SIZE - 10);
+		h1.createNewMessage(m1);
+		clock.advance(5);
+		Message m2 = new Message(h1,h3, msgId2, 1);
+		h1.createNewMessage(m2);
+		checkCreates(2);
+		
+		/* the first message to expire is being sent when both expire */
+		clock.advance(TTL*60 - 7);
+		h1.connect(h2);
+		updateAllNodes();
+		checkTransferStart(h1, h2, msgId1);
+		
+		clock.advance(8);
+		updateAllNodes();
+		assertTrue(mc.next());
+		assertEquals(mc.TYPE_DELETE, mc.getLastType());
+		assertEquals(h1, mc.getLastFrom());
+		assertEquals(msgId2, mc.getLastMsg().getId());
+		assertFalse(mc.next());
+		assertEquals(1, h1.getRouter().getNrofMessages());
+	}
+	
 	public void testResponse() {
 		Message m1 = new Message(h1,h3, msgId1, 1);
 		m1.setResponseSize(1);
@@ -618,5 +692,127 @@ public class EpidemicRouterTest extends AbstractRouterTest {
 		
 		assertNotSame(orderedIds, runMessageExchange(true));
 		assertNotSame(orderedIds, runMessageExchange(false));
-	}
+	}
+	
+	/**
+	 * Tests that two transfers can run concurrently and that they share
+	 * the bandwidth
+	 */
+	public void testConcurrentTransfers() throws Exception {
+		ts.putSetting(ActiveRouter.MAX_TRANSFERS_S, "2");
+		try {
+			this.setUp();
+		} finally {
+			ts.putSetting(ActiveRouter.MAX_TRANSFERS_S, "1");
+		}
+		
+		Message m1 = new Message(h1, h4, msgId1, TRANSMIT_SPEED);
+		h1.createNewMessage(m1);
+		checkCreates(1);
+		
+		h1.connect(h2);
+		h1.connect(h3);
+		updateAllNodes();
+		checkTransferStart(h1, h2, msgId1);
+		checkTransferStart(h1, h3, msgId1);
+		assertFalse(mc.next());
+		
+		/* both transfers proceed at half of the speed */
+		clock.advance(1.5);
+		updateAllNodes();
+		assertFalse(mc.next());
+		
+		clock.advance(0.5);
+		updateAllNodes();
+		assertTrue(mc.next());
+		assertEquals(mc.TYPE_RELAY, mc.getLastType());
+		assertEquals(h2, mc.getLastTo());
+		assertTrue(mc.next());
+		assertEquals(mc.TYPE_RELAY, mc.getLastType());
+		assertEquals(h3, mc.getLastTo());
+		assertFalse(mc.next());
+	}
+	
+	/**
+	 * Tests that the transfers a host receives share its bandwidth
+	 */
+	public void testConcurrentReceiving() throws Exception {
+		ts.putSetting(ActiveRouter.MAX_TRANSFERS_S, "2");
+		try {
+			this.setUp();
+		} finally {
+			ts.putSetting(ActiveRouter.MAX_TRANSFERS_S, "1");
+		}
+		
+		Message m1 = new Message(h1, h4, msgId1, TRANSMIT_SPEED);
+		h1.createNewMessage(m1);
+		Message m2 = new Message(h2, h4, msgId2, TRANSMIT_SPEED);
+		h2.createNewMessage(m2);
+		checkCreates(2);
+		
+		h1.connect(h3);
+		h2.connect(h3);
+		updateAllNodes();
+		checkTransferStart(h1, h3, msgId1);
+		checkTransferStart(h2, h3, msgId2);
+		assertFalse(mc.next());
+		
+		/* both transfers proceed at half of the receiver's speed */
+		clock.advance(1.5);
+		updateAllNodes();
+		assertFalse(mc.next());
+		
+		clock.advance(0.5);
+		updateAllNodes();
+		assertTrue(mc.next());
+		assertEquals(mc.TYPE_RELAY, mc.getLastType());
+		assertEquals(msgId1, mc.getLastMsg().getId());
+		assertTrue(mc.next());
+		assertEquals(mc.TYPE_RELAY, mc.getLastType());
+		assertEquals(msgId2, mc.getLastMsg().getId());
+	}
+	
+	/**
+	 * Tests that the summary vectors are exchanged when a connection comes
+	 * up and that a false positive doesn't keep a message from its 
+	 * destination
+	 */
+	public void testSummaryVectors() throws Exception {
+		/* a one bit vector: every ID matches once the vector has any */
+		ts.putSetting(ActiveRouter.SUMMARY_VECTOR_SIZE_S, "1");
+		try {
+			this.setUp();
+		} finally {
+			ts.putSetting(ActiveRouter.SUMMARY_VECTOR_SIZE_S, "0");
+		}
+		
+		Message m1 = new Message(h1, h2, msgId1, 1);
+		h1.createNewMessage(m1);
+		Message m2 = new Message(h1, h4, msgId2, 1);
+		h1.createNewMessage(m2);
+		Message m3 = new Message(h2, h4, msgId3, 1);
+		h2.createNewMessage(m3);
+		checkCreates(3);
+		
+		/* exchanging the two one byte vectors takes 2/TRANSMIT_SPEED s */
+		h1.connect(h2);
+		updateAllNodes();
+		assertFalse(mc.next());
+		clock.advance(0.1);
+		updateAllNodes();
+		assertFalse(mc.next());
+		
+		/* m1 goes to its destination although h2's vector matches it, 
+		 * m2 and m3 are never offered */
+		clock.advance(0.1);
+		updateAllNodes();
+		checkTransferStart(h1, h2, msgId1);
+		assertFalse(mc.next());
+		clock.advance(1);
+		updateAllNodes();
+		checkDelivered(h1, h2, msgId1, false);
+		clock.advance(1);
+		updateAllNodes();
+		assertFalse(mc.next());
+	}
 }
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import core.IntHashMap;
+import core.IntHashSet;
+
+/**
+ * Tests for the primitive int keyed map and set
+ */
+public class IntHashMapTest extends TestCase {
+	private IntHashMap<String> map;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		map = new IntHashMap<String>();
+	}
+
+	public void testPutAndGet() {
+		assertNull(map.put(1, "a"));
+		assertNull(map.put(-5, "b"));
+		assertEquals("a", map.put(1, "c"));
+
+		assertEquals(2, map.size());
+		assertEquals("c", map.get(1));
+		assertEquals("b", map.get(-5));
+		assertNull(map.get(2));
+		assertTrue(map.containsKey(-5));
+		assertFalse(map.containsKey(0));
+	}
+
+	public void testAgainstHashMap() {
+		HashMap<Integer, String> reference = new HashMap<Integer, String>();
+		Random rng = new Random(42);
+
+		/* small key range so that there are lots of collisions and removals
+		 * in the middle of probe sequences */
+		for (int i = 0; i < 5000; i++) {
+			int key = rng.nextInt(200) * 16;
+			if (rng.nextInt(3) == 0) {
+				assertEquals(reference.remove(key), map.remove(key));
+			}
+			else {
+				String value = "v" + i;
+				assertEquals(reference.put(key, value), map.put(key, value));
+			}
+			assertEquals(reference.size(), map.size());
+		}
+
+		for (int key = 0; key < 200 * 16; key++) {
+			assertEquals(reference.get(key), map.get(key));
+		}
+		int count = 0;
+		for (String value : map.values()) {
+			assertTrue(reference.containsValue(value));
+			count++;
+		}
+		assertEquals(reference.size(), count);
+
+		map.clear();
+		assertEquals(0, map.size());
+		assertNull(map.get(16));
+	}
+
+	public void testConcurrentModification() {
+		map.put(1, "a");
+		map.put(2, "b");
+		Iterator<String> i = map.values().iterator();
+		i.next();
+		map.remove(1);
+		try {
+			i.next();
+			fail("Modification during iteration wasn't detected");
+		} catch (ConcurrentModificationException e) {
+			// expected
+		}
+	}
+
+	public void testSet() {
+		IntHashSet set = new IntHashSet();
+		for (int i = 0; i < 100; i++) {
+			assertTrue(set.add(i * 3));
+		}
+		assertFalse(set.add(3));
+		assertEquals(100, set.size());
+		assertTrue(set.contains(297));
+		assertFalse(set.contains(298));
+
+		IntHashSet other = new IntHashSet();
+		other.add(298);
+		other.add(0);
+		assertTrue(set.addAll(other));
+		assertFalse(set.addAll(other));
+		assertEquals(101, set.size());
+		assertTrue(set.contains(298));
+	}
+}
@@ -192,6 +192,19 @@ public class MapBasedMovementTest extends TestCase {
 		assertTrue(thirdMap == fourthMap);
 	}
 
+	/**
+	 * Tests that failing to write a compiled map doesn't stop the map from
+	 * being used
+	 */
+	public void testMapCacheWriteFailure() throws IOException {
+		String mmbClass = "movement.MapBasedMovement";
+		File notDir = File.createTempFile("mapCacheDir", ".tmp");
+		notDir.deleteOnExit();
+		writeToFile(writeToNewFile(), new File(notDir, "cache").getPath());
+		mbm = (MapBasedMovement)s.createIntializedObject(mmbClass);
+		assertEquals(7, mbm.getMap().getNodes().size());
+	}
+
 	public void testHostMoving() {
 		final int NROF = 15;
 		
@@ -240,11 +253,11 @@ public class MapBasedMovementTest extends TestCase {
 	private String writeToNewFile() throws IOException {
 		File tempFile = File.createTempFile("mapCachingTest", ".tmp");
 		tempFile.deleteOnExit();
-		writeToFile(tempFile.getAbsolutePath());
+		writeToFile(tempFile.getAbsolutePath(), null);
 		return tempFile.getAbsolutePath();
 	}
 	
-	private void writeToFile(String path) throws IOException {
+	private void writeToFile(String path, String cacheDir) throws IOException {
 		File tempFile = new File(path);
 		PrintWriter out = new PrintWriter(tempFile);
 		out.println(WKT);
@@ -259,6 +272,10 @@ public class MapBasedMovementTest extends TestCase {
 		// need to change path separators for settings file
 		pw.println(ns + MapBasedMovement.FILE_S + "1 = " + 
 				tempFile.getAbsolutePath().replace('\\', '/')); 
+		if (cacheDir != null) {
+			pw.println(ns + MapBasedMovement.CACHE_DIR_S + " = " + 
+					cacheDir.replace('\\', '/'));
+		}
 		pw.close();
 		Settings.init(settingsFile.getAbsolutePath());
 
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.WKTMapReader;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import movement.map.MapCache;
+import movement.map.MapNode;
+import movement.map.SimMap;
+
+/**
+ * Tests for the compiled binary maps
+ */
+public class MapCacheTest extends TestCase {
+	private static final String ROADS = 
+		"LINESTRING (1.0 1.0, 2.0 1.0, 3.0 1.5, 4.0 1.0)\n" +
+		"LINESTRING (2.0 1.0, 2.0 0.0, 3.0 0.0, 3.0 1.5)\n";
+	private static final String PATHS = 
+		"LINESTRING (1.0 1.0, 1.0 2.0, 0.5 3.25)\n";
+	
+	private List<File> files;
+	private File compiled;
+	
+	protected void setUp() throws Exception {
+		super.setUp();
+		files = new ArrayList<File>();
+		files.add(createFile(ROADS));
+		files.add(createFile(PATHS));
+		compiled = File.createTempFile("mapcachetest", ".bin");
+		compiled.delete();
+	}
+	
+	protected void tearDown() throws Exception {
+		super.tearDown();
+		for (File f : files) {
+			f.delete();
+		}
+		compiled.delete();
+	}
+	
+	private File createFile(String contents) throws IOException {
+		File f = File.createTempFile("mapcachetest", ".wkt");
+		FileWriter out = new FileWriter(f);
+		out.write(contents);
+		out.close();
+		return f;
+	}
+	
+	private SimMap readMap() throws IOException {
+		WKTMapReader reader = new WKTMapReader(true);
+		for (int i = 0; i < files.size(); i++) {
+			reader.addPaths(files.get(i), i + 1);
+		}
+		SimMap map = reader.getMap();
+		map.mirror();
+		map.translate(-map.getMinBound().getX(), -map.getMinBound().getY());
+		return map;
+	}
+	
+	public void testWriteAndRead() throws IOException {
+		SimMap map = readMap();
+		String key = MapCache.getKey(files);
+		assertNull(MapCache.read(compiled, key));
+		MapCache.write(compiled, key, map);
+		
+		SimMap loaded = MapCache.read(compiled, key);
+		assertNotNull(loaded);
+		assertEquals(map.getOffset(), loaded.getOffset());
+		assertEquals(map.getMinBound(), loaded.getMinBound());
+		assertEquals(map.getMaxBound(), loaded.getMaxBound());
+		assertTrue(loaded.isMirrored());
+		
+		List<MapNode> nodes = map.getNodes();
+		List<MapNode> loadedNodes = loaded.getNodes();
+		assertEquals(nodes.size(), loadedNodes.size());
+		for (int i = 0; i < nodes.size(); i++) {
+			MapNode n = nodes.get(i);
+			MapNode ln = loadedNodes.get(i);
+			assertEquals(n.getLocation(), ln.getLocation());
+			assertEquals(n.toString(), ln.toString()); // includes the types
+			assertEquals(n.getNeighbors().size(), ln.getNeighbors().size());
+			for (int j = 0; j < n.getNeighbors().size(); j++) {
+				assertEquals(n.getNeighbors().get(j).getLocation(),
+						ln.getNeighbors().get(j).getLocation());
+			}
+			assertSame(ln, loaded.getNodeByCoord(n.getLocation()));
+		}
+	}
+	
+	/**
+	 * Overwrites an integer in the compiled map file
+	 * @param position Position of the integer in the file
+	 * @param value The new value
+	 */
+	private void corrupt(long position, int value) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(compiled, "rw");
+		raf.seek(position);
+		raf.writeInt(value);
+		raf.close();
+	}
+	
+	public void testCorruptedFile() throws IOException {
+		SimMap map = readMap();
+		String key = MapCache.getKey(files);
+		int nrofNodes = map.getNodes().size();
+		long nodesPos = 12 + key.length(); // after magic, version and key
+		long edgeStartPos = nodesPos + 4 + 16 + 1 + (16 + 4) * nrofNodes;
+		long neighborsPos = edgeStartPos + 4 * (nrofNodes + 1);
+		
+		MapCache.write(compiled, key, map);
+		corrupt(nodesPos, Integer.MAX_VALUE);
+		assertNull(MapCache.read(compiled, key));
+		corrupt(nodesPos, -1);
+		assertNull(MapCache.read(compiled, key));
+		
+		MapCache.write(compiled, key, map);
+		corrupt(edgeStartPos + 4, -5);
+		assertNull(MapCache.read(compiled, key));
+		
+		MapCache.write(compiled, key, map);
+		corrupt(edgeStartPos + 4 * nrofNodes, Integer.MAX_VALUE);
+		assertNull(MapCache.read(compiled, key));
+		
+		MapCache.write(compiled, key, map);
+		corrupt(neighborsPos, nrofNodes);
+		assertNull(MapCache.read(compiled, key));
+		
+		MapCache.write(compiled, key, map);
+		assertNotNull(MapCache.read(compiled, key));
+	}
+	
+	public void testKey() throws IOException {
+		String key = MapCache.getKey(files);
+		assertEquals(key, MapCache.getKey(files));
+		MapCache.write(compiled, key, readMap());
+		
+		/* swapping the files or changing their contents changes the key */
+		List<File> swapped = new ArrayList<File>();
+		swapped.add(files.get(1));
+		swapped.add(files.get(0));
+		assertFalse(key.equals(MapCache.getKey(swapped)));
+		
+		FileWriter out = new FileWriter(files.get(1), true);
+		out.write("LINESTRING (0.5 3.25, 0.0 4.0)\n");
+		out.close();
+		String newKey = MapCache.getKey(files);
+		assertFalse(key.equals(newKey));
+		assertNull(MapCache.read(compiled, newKey));
+	}
+}
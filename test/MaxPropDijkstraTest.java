@@ -124,6 +124,84 @@ public class MaxPropDijkstraTest extends TestCase {
 	}
 	
 	
+	public void testCostsAfterProbabilityChanges() {
+		targets.add(2);
+		targets.add(3);
+		
+		mapping.get(0).updateMeetingProbFor(1);
+		mapping.get(1).updateMeetingProbFor(2);
+		Map<Integer, Double> result = mpd.getCosts(0, targets);
+		assertEquals(0.0, result.get(2));
+		assertNull(result.get(3));
+		
+		/* costs from another source don't affect the first one's */
+		result = mpd.getCosts(1, targets);
+		assertEquals(0.0, result.get(2));
+		
+		mapping.get(1).updateMeetingProbFor(3); // h1 meets h3
+		result = mpd.getCosts(0, targets);
+		assertEquals(0.5, result.get(2));
+		assertEquals(0.5, result.get(3));
+		
+		/* replaced probability set */
+		MeetingProbabilitySet mps = new MeetingProbabilitySet(
+				MeetingProbabilitySet.INFINITE_SET_SIZE, 1.0);
+		mps.updateMeetingProbFor(3);
+		mapping.put(1, mps);
+		result = mpd.getCosts(0, targets);
+		assertNull(result.get(2));
+		assertEquals(0.0, result.get(3));
+		
+		/* a set for a node that had none */
+		mapping.get(3).updateMeetingProbFor(2);
+		result = mpd.getCosts(0, targets);
+		assertEquals(0.0, result.get(2));
+	}
+	
+	public void testSetSizeLimit() {
+		MeetingProbabilitySet mps = new MeetingProbabilitySet(3, 1.0);
+		mps.updateMeetingProbFor(1);
+		mps.updateMeetingProbFor(2);
+		mps.updateMeetingProbFor(1);
+		assertEquals(2, mps.size());
+		
+		/* the set is full -> the smallest value (2's) is dropped */
+		mps.updateMeetingProbFor(3); 
+		assertEquals(2, mps.size());
+		assertEquals(0.0, mps.getProbFor(2));
+		assertEquals(0.375, mps.getProbFor(1));
+		assertEquals(0.5, mps.getProbFor(3));
+		
+		/* now 1 is the smallest */
+		mps.updateMeetingProbFor(4);
+		assertEquals(0.0, mps.getProbFor(1));
+		assertEquals(0.25, mps.getProbFor(3));
+		assertEquals(0.5, mps.getProbFor(4));
+	}
+	
+	public void testReplicas() {
+		MeetingProbabilitySet mps = mapping.get(0);
+		mps.updateMeetingProbFor(1);
+		mps.updateMeetingProbFor(2);
+		
+		MeetingProbabilitySet replica = mps.replicate();
+		assertEquals(mps.getVersion(), replica.getVersion());
+		assertEquals(0.5, replica.getProbFor(2));
+		
+		mps.updateMeetingProbFor(3);
+		assertTrue(mps.getVersion() != replica.getVersion());
+		assertEquals(0.5, replica.getProbFor(2));
+		assertEquals(0.0, replica.getProbFor(3));
+		
+		replica.copyFrom(mps);
+		assertEquals(mps.getVersion(), replica.getVersion());
+		assertEquals(mps.getAllProbs(), replica.getAllProbs());
+		
+		replica.copyFrom(mapping.get(1));
+		assertEquals(0, replica.size());
+		assertEquals(0.0, replica.getProbFor(1));
+	}
+	
 	public void testProbabilitySumsToOne() {
 		double total;
 		
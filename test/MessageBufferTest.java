@@ -0,0 +1,130 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+import routing.util.MessageBuffer;
+import core.Message;
+import core.SimClock;
+import core.SimContext;
+
+/**
+ * Tests for the message buffer of the routers
+ */
+public class MessageBufferTest extends TestCase {
+	private SimClock clock;
+	private MessageBuffer buffer;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		clock = SimClock.getInstance();
+		clock.setTime(0);
+		buffer = new MessageBuffer();
+	}
+
+	private Message newMessage(String id, int size, int ttl,
+			double receiveTime) {
+		Message m = new Message(null, null, id, size);
+		m.setTtl(ttl);
+		m.setReceiveTime(receiveTime);
+		return m;
+	}
+
+	private int intId(String id) {
+		return SimContext.getCurrent().internMessageId(id);
+	}
+
+	private List<String> getIds() {
+		List<String> ids = new ArrayList<String>();
+		for (Message m : buffer.getMessages()) {
+			ids.add(m.getId());
+		}
+		return ids;
+	}
+
+	public void testFifoOrder() {
+		buffer.add(newMessage("A", 10, 10, 5));
+		buffer.add(newMessage("B", 10, 10, 5));
+		buffer.add(newMessage("C", 10, 10, 3));
+		buffer.add(newMessage("D", 10, 10, 7));
+
+		assertEquals("[C, A, B, D]", getIds().toString());
+
+		buffer.remove(intId("A"));
+		buffer.add(newMessage("E", 10, 10, 0));
+		assertEquals("[E, C, B, D]", getIds().toString());
+		assertEquals(4, buffer.size());
+	}
+
+	public void testGetExpired() {
+		for (int i = 0; i < 20; i++) { // expiry times 60 ... 1200
+			buffer.add(newMessage("M" + (i * 7 % 20), 10, 1 + i * 7 % 20, 0));
+		}
+		buffer.add(newMessage("X", 10, Message.INFINITE_TTL, 0));
+
+		List<String> ids = new ArrayList<String>();
+		for (Message m : buffer.getExpired(300)) {
+			ids.add(m.getId());
+		}
+		assertEquals("[M0, M1, M2, M3, M4]", ids.toString());
+		assertEquals(0, buffer.getExpired(59).size());
+		assertEquals(20, buffer.getExpired(1200).size());
+		assertEquals(21, buffer.size());
+	}
+
+	public void testExpiryOrder() {
+		buffer.add(newMessage("A", 10, 5, 0));
+		buffer.add(newMessage("B", 10, Message.INFINITE_TTL, 0));
+		clock.setTime(100);
+		buffer.add(newMessage("C", 10, 1, 100));
+		buffer.add(newMessage("D", 10, 2, 100));
+
+		assertEquals("C", buffer.getFirstToExpire().getId());
+		buffer.remove(intId("C"));
+		assertEquals("D", buffer.getFirstToExpire().getId());
+		buffer.remove(intId("D"));
+		assertEquals("A", buffer.getFirstToExpire().getId());
+		buffer.remove(intId("A"));
+		assertEquals("B", buffer.getFirstToExpire().getId());
+		buffer.remove(intId("B"));
+		assertNull(buffer.getFirstToExpire());
+	}
+
+	public void testOccupancy() {
+		buffer.add(newMessage("A", 10, 10, 0));
+		buffer.add(newMessage("B", 20, 10, 0));
+		assertEquals(30, buffer.getOccupancy());
+
+		/* replacing a message with the same ID */
+		buffer.add(newMessage("A", 5, 10, 1));
+		assertEquals(25, buffer.getOccupancy());
+		assertEquals(2, buffer.size());
+		assertEquals(5, buffer.get(intId("A")).getSize());
+
+		assertEquals(20, buffer.remove(intId("B")).getSize());
+		assertNull(buffer.remove(intId("B")));
+		assertEquals(5, buffer.getOccupancy());
+		assertFalse(buffer.contains(intId("B")));
+	}
+
+	public void testConcurrentModification() {
+		buffer.add(newMessage("A", 10, 10, 0));
+		buffer.add(newMessage("B", 10, 10, 0));
+		Iterator<Message> i = buffer.getMessages().iterator();
+		i.next();
+		buffer.remove(intId("B"));
+		try {
+			i.next();
+			fail("Modification during iteration wasn't detected");
+		} catch (ConcurrentModificationException e) {
+			// expected
+		}
+	}
+}
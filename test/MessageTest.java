@@ -9,6 +9,7 @@ import junit.framework.TestCase;
 import org.junit.Before;
 import org.junit.Test;
 
+import applications.TrafficBeacon;
 import core.DTNHost;
 import core.Message;
 import core.SimClock;
@@ -60,5 +61,70 @@ public class MessageTest extends TestCase {
 		assertEquals(value2, msg.getProperty("bar"));
 	}
 
+	@Test
+	public void testReplicate() {
+		msg.addProperty("foo", "value1");
+		Message rep = msg.replicate();
+		
+		assertEquals(msg.getId(), rep.getId());
+		assertTrue(msg.getUniqueId() != rep.getUniqueId());
+		assertEquals(10, rep.getTtl());
+		assertEquals("value1", rep.getProperty("foo"));
+		
+		rep.updateProperty("foo", "value2");
+		assertEquals("value1", msg.getProperty("foo"));
+	}
+
+	@Test
+	public void testReplicatesShareUntilModified() {
+		msg.addProperty("foo", "value1");
+		Message rep1 = msg.replicate();
+		Message rep2 = rep1.replicate();
+		
+		/* the original is modified after replicating */
+		msg.updateProperty("foo", "value2");
+		assertEquals("value1", rep1.getProperty("foo"));
+		assertEquals("value1", rep2.getProperty("foo"));
+		
+		rep2.addNodeOnPath(to);
+		rep2.addNodeOnPath(to);
+		assertEquals(0, msg.getHopCount());
+		assertEquals(0, rep1.getHopCount());
+		assertEquals(2, rep2.getHopCount());
+		assertEquals(1, rep1.getHops().size());
+		assertEquals(3, rep2.getHops().size());
+		
+		rep1.addNodeOnPath(to);
+		assertEquals(1, rep1.getHopCount());
+		assertEquals(2, rep2.getHopCount());
+		assertEquals(0, msg.getHopCount());
+	}
+
+	@Test
+	public void testReplicateTrafficBeacon() {
+		TrafficBeacon b = new TrafficBeacon(from, to, 10, 1.5, 2.5, 13.0, 
+				Math.PI, 42, 1);
+		b.setTtl(5);
+		Message rep = b.replicate();
+		
+		assertTrue(rep instanceof TrafficBeacon);
+		TrafficBeacon br = (TrafficBeacon)rep;
+		assertEquals(b.getId(), br.getId());
+		assertEquals(b.getBeaconId(), br.getBeaconId());
+		assertTrue(b.getUniqueId() != br.getUniqueId());
+		assertEquals(10, br.getSize());
+		assertEquals(5, br.getTtl());
+		assertEquals(1.5, br.getX());
+		assertEquals(2.5, br.getY());
+		assertEquals(13.0, br.getSpeed());
+		assertEquals(Math.PI, br.getHeading());
+		assertEquals(42, br.getSegment());
+		assertEquals(1, br.getDirection());
+		
+		TrafficBeacon b2 = new TrafficBeacon(from, to, 10, 0, 0, 0, 
+				Double.NaN, 0, 0);
+		assertEquals(b.getBeaconId() + 1, b2.getBeaconId());
+	}
+
 
 }
@@ -127,6 +127,76 @@ public class ProphetRouterTest extends AbstractRouterTest {
 		assertEquals(mc.TYPE_RELAY, mc.getLastType());		
 	}
 	
+	/**
+	 * Tests that a message is offered again if the peer drops it while
+	 * the hosts are still connected
+	 */
+	public void testPeerDropsMessage() {
+		h5.connect(h3); // h5 knows h3
+		disconnect(h5);
+		h4.createNewMessage(new Message(h4, h3, msgId1, 1));
+		checkCreates(1);
+		
+		h4.connect(h5);
+		updateAllNodes();
+		checkTransferStart(h4, h5, msgId1);
+		doRelay();
+		assertFalse(mc.next());
+		
+		updateAllNodes();
+		assertFalse(mc.next()); // h5 already has the message
+		
+		h5.deleteMessage(msgId1, true);
+		assertTrue(mc.next());
+		assertEquals(mc.TYPE_DELETE, mc.getLastType());
+		
+		updateAllNodes();
+		checkTransferStart(h4, h5, msgId1);
+	}
+	
+	/**
+	 * Tests that a message created during a contact is forwarded in the
+	 * same contact
+	 */
+	public void testNewMessageDuringContact() {
+		h5.connect(h3); // h5 knows h3
+		disconnect(h5);
+		h4.createNewMessage(new Message(h4, h6, msgId2, 1));
+		checkCreates(1);
+		
+		h4.connect(h5);
+		updateAllNodes();
+		assertFalse(mc.next()); // h5 doesn't know h6
+		
+		h4.createNewMessage(new Message(h4, h3, msgId1, 1));
+		checkCreates(1);
+		updateAllNodes();
+		checkTransferStart(h4, h5, msgId1);
+	}
+	
+	/**
+	 * Tests that the messages are planned again when a connection goes
+	 * down and up again
+	 */
+	public void testReconnect() {
+		h4.createNewMessage(new Message(h4, h3, msgId1, 1));
+		checkCreates(1);
+		
+		h4.connect(h5);
+		updateAllNodes();
+		assertFalse(mc.next()); // h5 doesn't know h3 yet
+		
+		disconnect(h5);
+		h5.connect(h3);
+		disconnect(h5);
+		updateAllNodes();
+		assertFalse(mc.next());
+		
+		h4.connect(h5); // now h5 knows h3
+		updateAllNodes();
+		checkTransferStart(h4, h5, msgId1);
+	}
+	
 	public void testAging() {
 		ProphetRouter r4 = (ProphetRouter)h4.getRouter();
 		ProphetRouter r5 = (ProphetRouter)h5.getRouter();
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.WKTMapReader;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import junit.framework.TestCase;
+import movement.map.MapNode;
+import movement.map.RoadGraph;
+import movement.map.SimMap;
+
+/**
+ * Tests for the compressed sparse row road graph of maps
+ */
+public class RoadGraphTest extends TestCase {
+	private static final String WKT = 
+		"LINESTRING (1.0 1.0, 2.0 1.0, 3.0 1.0, 4.0 1.0)\n" +
+		"LINESTRING (1.0 1.0, 1.0 2.0)\n" +
+		"LINESTRING (2.0 1.0, 2.0 0.0, 3.0 0.0, 3.0 1.0)\n";
+	
+	private SimMap map;
+	private RoadGraph graph;
+	
+	protected void setUp() throws Exception {
+		super.setUp();
+		WKTMapReader reader = new WKTMapReader(true);
+		try {
+			reader.addPaths(new StringReader(WKT), 1);
+		} catch (IOException e) {
+			fail(e.toString());
+		}
+		map = reader.getMap();
+		graph = map.getRoadGraph();
+	}
+	
+	public void testMatchesMapNodes() {
+		List<MapNode> nodes = map.getNodes();
+		assertEquals(nodes.size(), graph.getNrofNodes());
+		
+		for (int i = 0; i < nodes.size(); i++) {
+			MapNode n = nodes.get(i);
+			assertEquals(i, graph.getIndex(n));
+			assertSame(n, graph.getNode(i));
+			assertEquals(n.getLocation().getX(), graph.getX(i));
+			assertEquals(n.getLocation().getY(), graph.getY(i));
+			
+			List<MapNode> neighbors = n.getNeighbors();
+			assertEquals(neighbors.size(), 
+					graph.getEdgeEnd(i) - graph.getEdgeStart(i));
+			for (int j = 0; j < neighbors.size(); j++) {
+				int e = graph.getEdgeStart(i) + j;
+				assertSame(neighbors.get(j), 
+						graph.getNode(graph.getNeighbor(e)));
+				assertTrue(graph.hasEdge(graph.getNeighbor(e), i));
+				assertEquals(n.getLocation().distance(
+						neighbors.get(j).getLocation()), graph.getLength(e));
+			}
+		}
+		assertEquals(-1, graph.getIndex(new MapNode(nodes.get(0).getLocation())));
+	}
+	
+	public void testRanks() {
+		for (int r = 1; r < graph.getNrofNodes(); r++) {
+			MapNode prev = graph.getNode(graph.getByRank(r - 1));
+			MapNode next = graph.getNode(graph.getByRank(r));
+			assertTrue(prev.compareTo(next) < 0);
+			assertEquals(r, graph.getRank(graph.getByRank(r)));
+		}
+	}
+	
+	public void testTypes() {
+		int mask = RoadGraph.toTypeMask(new int[] {2, 3});
+		assertTrue(graph.isType(0, RoadGraph.toTypeMask(new int[] {1})));
+		assertFalse(graph.isType(0, mask));
+		
+		graph.getNode(0).addType(3); // types can be added later
+		assertTrue(graph.isType(0, mask));
+		assertSame(graph, map.getRoadGraph());
+	}
+}
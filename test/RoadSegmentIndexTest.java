@@ -0,0 +1,116 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import movement.map.MapNode;
+import movement.map.RoadSegmentIndex;
+import movement.map.SimMap;
+import core.Coord;
+
+/**
+ * Tests for the road segment index of SimMap
+ */
+public class RoadSegmentIndexTest extends TestCase {
+	private final MapNode n1 = newNode(0,0);
+	private final MapNode n2 = newNode(100,0);
+	private final MapNode n3 = newNode(100,200);
+	private final MapNode n4 = newNode(300,0);
+	private final MapNode n5 = newNode(1000,1000);
+	private final MapNode n6 = newNode(1000,1100);
+
+	private Map<Coord, MapNode> nodes;
+	private RoadSegmentIndex index;
+
+	/**
+	 * Creates a topology (and a separate vertical segment n5-n6):
+	 *
+	 *        n3
+	 *        |
+	 * n1----n2--------n4
+	 */
+	protected void setUp() throws Exception {
+		super.setUp();
+		nodes = new HashMap<Coord, MapNode>();
+		connect(n1, n2);
+		connect(n2, n3);
+		connect(n2, n4);
+		connect(n5, n6);
+
+		index = new SimMap(nodes).getSegmentIndex();
+	}
+
+	private MapNode newNode(double x, double y) {
+		return new MapNode(new Coord(x,y));
+	}
+
+	private void connect(MapNode a, MapNode b) {
+		a.addNeighbor(b);
+		b.addNeighbor(a);
+		nodes.put(a.getLocation(), a);
+		nodes.put(b.getLocation(), b);
+	}
+
+	private void assertSegment(MapNode a, MapNode b, int seg) {
+		assertTrue("No segment found", seg != RoadSegmentIndex.NO_SEGMENT);
+		MapNode s = index.getStartNode(seg);
+		MapNode e = index.getEndNode(seg);
+		assertTrue("Wrong segment " + s + "-" + e, (s == a && e == b) ||
+				(s == b && e == a));
+	}
+
+	public void testNrofSegments() {
+		assertEquals(4, index.getNrofSegments());
+	}
+
+	public void testNearestSegment() {
+		assertSegment(n1, n2, index.getNearestSegment(new Coord(50,0)));
+		assertSegment(n1, n2, index.getNearestSegment(new Coord(50,3)));
+		assertSegment(n2, n4, index.getNearestSegment(new Coord(250,-5)));
+		assertSegment(n2, n3, index.getNearestSegment(new Coord(101,150)));
+	}
+
+	public void testVerticalSegment() {
+		assertSegment(n5, n6, index.getNearestSegment(new Coord(1000,1050)));
+		assertEquals(0.0, index.distance(index.getNearestSegment(
+				new Coord(1000,1050)), 1000, 1050), 0.0001);
+	}
+
+	public void testFarAwayLocation() {
+		assertSegment(n5, n6, index.getNearestSegment(new Coord(900,1050)));
+		assertSegment(n1, n2, index.getNearestSegment(new Coord(-500,-500)));
+	}
+
+	public void testHeadingResolvesTies() {
+		Coord atNode = n2.getLocation().clone();
+		assertSegment(n2, n3, index.getNearestSegment(atNode,
+				n3.getLocation()));
+		assertSegment(n2, n4, index.getNearestSegment(atNode,
+				n4.getLocation()));
+		assertSegment(n1, n2, index.getNearestSegment(atNode,
+				n1.getLocation()));
+	}
+
+	public void testDirection() {
+		int seg = index.getNearestSegment(new Coord(50,0));
+		int towardsN2 = index.getDirection(seg, n2.getLocation());
+		int towardsN1 = index.getDirection(seg, n1.getLocation());
+		assertTrue(towardsN1 != towardsN2);
+		if (index.getEndNode(seg) == n2) {
+			assertEquals(RoadSegmentIndex.DIR_FORWARD, towardsN2);
+		}
+		else {
+			assertEquals(RoadSegmentIndex.DIR_BACKWARD, towardsN2);
+		}
+	}
+
+	public void testIndexIsShared() {
+		SimMap map = new SimMap(nodes);
+		assertSame(map.getSegmentIndex(), map.getSegmentIndex());
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import junit.framework.TestCase;
+import applications.TrafficBeacon;
+import core.Coord;
+import core.DTNHost;
+import core.Message;
+import core.Settings;
+import core.SimClock;
+import core.SimContext;
+
+/**
+ * Tests for the simulation contexts and the static facades that use them
+ */
+public class SimContextTest extends TestCase {
+	private static final String SETTING = "SimContextTest.value";
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		TestSettings.init(null);
+		new TestSettings().putSetting(SETTING, "1");
+	}
+
+	protected void tearDown() throws Exception {
+		SimContext.setCurrent(null);
+		super.tearDown();
+	}
+
+	public void testClocksAreSeparate() {
+		SimContext a = new SimContext();
+		SimContext b = new SimContext();
+
+		SimContext.setCurrent(a);
+		SimClock.getInstance().setTime(5);
+		SimContext.setCurrent(b);
+		SimClock.getInstance().setTime(7);
+
+		assertEquals(7.0, SimClock.getTime());
+		assertEquals(5.0, a.getClock().getSimTime());
+		SimContext.setCurrent(a);
+		assertEquals(5.0, SimClock.getTime());
+		assertSame(a.getClock(), SimClock.getInstance());
+	}
+
+	public void testSettingsAreInherited() {
+		SimContext a = new SimContext();
+		SimContext.setCurrent(a);
+		assertEquals(1, new Settings().getInt(SETTING));
+
+		new TestSettings().putSetting(SETTING, "2");
+		assertEquals(2, new Settings().getInt(SETTING));
+		SimContext.setCurrent(null);
+		assertEquals(1, new Settings().getInt(SETTING));
+	}
+
+	public void testAddressesAndMessageIds() {
+		TestUtils utils = new TestUtils(null, null, new TestSettings());
+		SimContext a = new SimContext();
+		SimContext b = new SimContext();
+
+		SimContext.setCurrent(a);
+		DTNHost a0 = utils.createHost(new Coord(0, 0));
+		DTNHost a1 = utils.createHost(new Coord(0, 0));
+		SimContext.setCurrent(b);
+		DTNHost b0 = utils.createHost(new Coord(0, 0));
+
+		assertEquals(0, a0.getAddress());
+		assertEquals(1, a1.getAddress());
+		assertEquals(0, b0.getAddress());
+		assertSame(a, a1.getContext());
+		assertSame(b, b0.getContext());
+
+		/* messages get their IDs from the sender's context */
+		Message m1 = new Message(a0, a1, "M1", 1);
+		Message m2 = new Message(b0, b0, "M2", 1);
+		Message m3 = new Message(a1, a0, "M3", 1);
+		assertEquals(0, m1.getUniqueId());
+		assertEquals(0, m2.getUniqueId());
+		assertEquals(1, m3.getUniqueId());
+	}
+
+	public void testBeaconIds() {
+		TestUtils utils = new TestUtils(null, null, new TestSettings());
+		SimContext a = new SimContext();
+		SimContext b = new SimContext();
+
+		SimContext.setCurrent(a);
+		DTNHost a0 = utils.createHost(new Coord(0, 0));
+		SimContext.setCurrent(b);
+		DTNHost b0 = utils.createHost(new Coord(0, 0));
+
+		assertEquals(0, newBeacon(a0).getBeaconId());
+		assertEquals(1, newBeacon(a0).getBeaconId());
+		assertEquals(0, newBeacon(b0).getBeaconId());
+
+		SimContext.setCurrent(a);
+		TrafficBeacon.reset();
+		assertEquals(0, newBeacon(a0).getBeaconId());
+		assertEquals(1, newBeacon(b0).getBeaconId());
+	}
+
+	private TrafficBeacon newBeacon(DTNHost from) {
+		return new TrafficBeacon(from, from, 1, 0, 0, 0, Double.NaN, 0, 0);
+	}
+
+	public void testThreadsUseOwnContexts() throws InterruptedException {
+		final double[] times = new double[2];
+		Thread[] threads = new Thread[2];
+		for (int i = 0; i < threads.length; i++) {
+			final int index = i;
+			threads[i] = new Thread() {
+				public void run() {
+					SimContext.setCurrent(new SimContext());
+					for (int j = 0; j <= index; j++) {
+						SimClock.getInstance().advance(10);
+					}
+					times[index] = SimClock.getTime();
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+
+		assertEquals(10.0, times[0]);
+		assertEquals(20.0, times[1]);
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import junit.framework.TestCase;
+import routing.util.SummaryVector;
+
+/**
+ * Tests for the Bloom filter summary vectors of the routers
+ */
+public class SummaryVectorTest extends TestCase {
+	private static final int SIZE = 1024;
+	private SummaryVector sv;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		sv = new SummaryVector(SIZE, SummaryVector.DEF_NROF_HASHES);
+	}
+
+	public void testNoFalseNegatives() {
+		for (int i = 0; i < 100; i++) {
+			sv.add(i * 7);
+		}
+		for (int i = 0; i < 100; i++) {
+			assertTrue(sv.mightContain(i * 7));
+		}
+
+		/* with 100 IDs in 1024 bits, false positives should be rare */
+		int falsePositives = 0;
+		for (int i = 1000; i < 2000; i++) {
+			if (sv.mightContain(i * 7)) {
+				falsePositives++;
+			}
+		}
+		assertTrue("Too many false positives: " + falsePositives,
+				falsePositives < 100);
+	}
+
+	public void testRemove() {
+		sv.add(1);
+		sv.add(2);
+		sv.add(2);
+		sv.remove(1);
+		assertFalse(sv.mightContain(1));
+		assertTrue(sv.mightContain(2));
+
+		sv.remove(2);
+		assertTrue(sv.mightContain(2));
+		sv.remove(2);
+		assertFalse(sv.mightContain(2));
+	}
+
+	public void testCopy() {
+		sv.add(5);
+		SummaryVector copy = sv.copy();
+		sv.remove(5);
+		sv.add(6);
+
+		assertTrue(copy.mightContain(5));
+		assertFalse(copy.mightContain(6));
+		assertEquals(SIZE / 8, copy.getByteSize());
+		try {
+			copy.add(7);
+			fail("Copy should be read-only");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+}
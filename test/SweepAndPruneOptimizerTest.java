@@ -0,0 +1,102 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import interfaces.SweepAndPruneOptimizer;
+import junit.framework.TestCase;
+import core.Coord;
+import core.DTNHost;
+import core.NetworkInterface;
+
+/**
+ * Tests for the sweep-and-prune connectivity optimizer
+ */
+public class SweepAndPruneOptimizerTest extends TestCase {
+	private static final double RANGE = 100;
+	private static int nextKey = 2000;
+
+	private TestUtils utils;
+	private SweepAndPruneOptimizer sap;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		TestSettings.init(null);
+		utils = new TestUtils(null, null, new TestSettings());
+		utils.setTransmitRange(RANGE);
+		/* use a new optimizer for every test */
+		sap = SweepAndPruneOptimizer.getOptimizer(nextKey++);
+	}
+
+	private NetworkInterface addInterface(double x, double y) {
+		DTNHost h = utils.createHost(new Coord(x, y));
+		NetworkInterface ni = h.getInterfaces().get(0);
+		sap.addInterface(ni);
+		return ni;
+	}
+
+	private void move(NetworkInterface ni, double x, double y) {
+		ni.getHost().setLocation(new Coord(x, y));
+		sap.updateLocation(ni);
+	}
+
+	private List<NetworkInterface> near(NetworkInterface ni) {
+		return new ArrayList<NetworkInterface>(sap.getNearInterfaces(ni));
+	}
+
+	public void testNearInterfaces() {
+		NetworkInterface a = addInterface(100, 100);
+		NetworkInterface b = addInterface(190, 150);
+		NetworkInterface c = addInterface(150, 300); /* x ok, y too far */
+		NetworkInterface d = addInterface(250, 100);
+
+		List<NetworkInterface> nearA = near(a);
+		assertEquals(2, nearA.size());
+		assertTrue(nearA.contains(a));
+		assertTrue(nearA.contains(b));
+		assertFalse(nearA.contains(c));
+
+		List<NetworkInterface> nearB = near(b);
+		assertEquals(3, nearB.size());
+		assertTrue(nearB.contains(d));
+	}
+
+	public void testSortedOrder() {
+		NetworkInterface a = addInterface(180, 100);
+		NetworkInterface b = addInterface(100, 100);
+		NetworkInterface c = addInterface(140, 100);
+
+		List<NetworkInterface> nearC = near(c);
+		assertEquals(3, nearC.size());
+		assertSame(b, nearC.get(0));
+		assertSame(c, nearC.get(1));
+		assertSame(a, nearC.get(2));
+	}
+
+	public void testMovedInterfaces() {
+		NetworkInterface a = addInterface(100, 100);
+		NetworkInterface b = addInterface(150, 100);
+		NetworkInterface c = addInterface(500, 100);
+		assertEquals(2, near(a).size());
+
+		move(c, 120, 120);
+		assertEquals(3, near(a).size());
+		assertTrue(near(a).contains(c));
+
+		move(a, 900, 900);
+		assertEquals(1, near(a).size());
+		assertEquals(2, near(b).size());
+		assertFalse(near(b).contains(a));
+	}
+
+	public void testAddTwice() {
+		NetworkInterface a = addInterface(100, 100);
+		sap.addInterface(a);
+		assertEquals(1, sap.getAllInterfaces().size());
+		assertEquals(1, near(a).size());
+	}
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import movement.MovementModel;
+import movement.Path;
+import movement.map.MapNode;
+import movement.map.RoadSegmentIndex;
+import movement.map.SimMap;
+import report.TrafficEstimateReport;
+import applications.TrafficApp;
+import core.Coord;
+import core.DTNHost;
+import core.MessageListener;
+import core.SimClock;
+
+/**
+ * Tests for the traffic speed estimate report
+ */
+public class TrafficEstimateReportTest extends TestCase {
+	private static final float DELTA = 0.00001f;
+
+	private SimClock clock;
+	private File outFile;
+	private File binFile;
+	private TrafficEstimateReport r;
+	private RoadSegmentIndex index;
+	private List<DTNHost> hosts;
+	private TrafficApp[] apps;
+
+	/**
+	 * Creates a map and three hosts moving on it:
+	 *
+	 *       n3
+	 *       ^  h2 (speed 5)
+	 *       |
+	 * n1----n2
+	 * h0 (speed 2) and h1 (speed 4) moving towards n2
+	 */
+	protected void setUp() throws Exception {
+		super.setUp();
+		final String NS = "TrafficEstimateReport.";
+		TestSettings ts = new TestSettings();
+		outFile = File.createTempFile("terTest", ".txt");
+		outFile.deleteOnExit();
+		String name = outFile.getAbsolutePath();
+		binFile = new File(name.substring(0, name.length() - 4) +
+				TrafficEstimateReport.BINARY_SUFFIX);
+		binFile.deleteOnExit();
+		ts.putSetting(NS + "output", name);
+		ts.putSetting(NS + report.Report.PRECISION_SETTING, "4");
+
+		SimClock.reset();
+		clock = SimClock.getInstance();
+		core.DTNHost.reset();
+		r = new TrafficEstimateReport();
+
+		MapNode n1 = new MapNode(new Coord(0,0));
+		MapNode n2 = new MapNode(new Coord(100,0));
+		MapNode n3 = new MapNode(new Coord(100,200));
+		n1.addNeighbor(n2);
+		n2.addNeighbor(n1);
+		n2.addNeighbor(n3);
+		n3.addNeighbor(n2);
+		Map<Coord, MapNode> nodes = new HashMap<Coord, MapNode>();
+		nodes.put(n1.getLocation(), n1);
+		nodes.put(n2.getLocation(), n2);
+		nodes.put(n3.getLocation(), n3);
+		index = new SimMap(nodes).getSegmentIndex();
+
+		TestUtils utils = new TestUtils(null, new ArrayList<MessageListener>(),
+				ts);
+		hosts = new ArrayList<DTNHost>();
+		hosts.add(utils.createHost(new LineMovement(n1.getLocation(),
+				n2.getLocation(), 2), null));
+		hosts.add(utils.createHost(new LineMovement(new Coord(10,0),
+				n2.getLocation(), 4), null));
+		hosts.add(utils.createHost(new LineMovement(n2.getLocation(),
+				n3.getLocation(), 5), null));
+
+		TrafficApp proto = new TrafficApp(ts);
+		apps = new TrafficApp[hosts.size()];
+		for (DTNHost h : hosts) {
+			TrafficApp app = new MapTrafficApp(proto);
+			h.getRouter().addApplication(app);
+			apps[h.getAddress()] = app;
+			h.move(1);
+		}
+		clock.setTime(1);
+		for (DTNHost h : hosts) {
+			apps[h.getAddress()].update(h);
+		}
+	}
+
+	/**
+	 * Gives a speed sample from h2 to a host for the host's road segment
+	 */
+	private void addSample(int host, double speed) {
+		TrafficApp app = apps[host];
+		app.getTrafficState().addSample(2, app.getMyRoadId(),
+				app.getMyRoadDirection(), speed, clock.getTime());
+	}
+
+	public void testSnapshots() throws IOException {
+		TrafficApp a0 = apps[0];
+		assertTrue(a0.getMyRoadId() != RoadSegmentIndex.NO_SEGMENT);
+		assertEquals(a0.getMyRoadId(), apps[1].getMyRoadId());
+		assertEquals(a0.getMyRoadDirection(), apps[1].getMyRoadDirection());
+		assertTrue(a0.getMyRoadId() != apps[2].getMyRoadId());
+
+		addSample(0, 2.5); // truth (2+4)/2 = 3 -> error -0.5
+		addSample(1, 4.0); // error 1
+		r.gotEvent("SentPing", null, a0, hosts.get(0));
+		r.gotEvent("GotPing", null, apps[1], hosts.get(1));
+
+		clock.setTime(30);
+		r.updated(hosts); // not yet time for a snapshot
+		clock.setTime(60);
+		r.updated(hosts);
+
+		addSample(2, 6.0); // truth 5 -> error 1
+		clock.setTime(120);
+		r.updated(hosts);
+		r.done();
+
+		BufferedReader reader = new BufferedReader(new FileReader(outFile));
+		reader.readLine(); // skip header
+		assertEquals("60.0000 2 3 0.7500 0.7906", reader.readLine());
+		assertEquals("120.0000 3 3 0.8333 0.8660", reader.readLine());
+		reader.readLine(); // skip scenario name
+		assertEquals("sim_time: 120.0000", reader.readLine());
+		assertEquals("snapshots: 2", reader.readLine());
+		assertEquals("beacons_sent: 1", reader.readLine());
+		assertEquals("beacons_received: 1", reader.readLine());
+		assertEquals("estimates: 5", reader.readLine());
+		assertEquals("mean_abs_error: 0.8000", reader.readLine());
+		assertEquals("rms_error: 0.8367", reader.readLine());
+		assertNull(reader.readLine());
+		reader.close();
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(binFile)));
+		assertEquals(TrafficEstimateReport.MAGIC, in.readInt());
+		assertEquals(TrafficEstimateReport.VERSION, in.readInt());
+
+		assertEquals(60.0, in.readDouble());
+		assertEquals(2, in.readInt());
+		checkRecord(in, 0, 2.5f, 3.0f);
+		checkRecord(in, 1, 4.0f, 3.0f);
+
+		assertEquals(120.0, in.readDouble());
+		assertEquals(3, in.readInt());
+		checkRecord(in, 0, 2.5f, 3.0f);
+		checkRecord(in, 1, 4.0f, 3.0f);
+		checkRecord(in, 2, 6.0f, 5.0f);
+
+		assertEquals(-1, in.read());
+		in.close();
+	}
+
+	private void checkRecord(DataInputStream in, int host, float estimate,
+			float truth) throws IOException {
+		TrafficApp app = apps[host];
+		assertEquals(host, in.readInt());
+		assertEquals(app.getMyRoadId(), in.readInt());
+		assertEquals(app.getMyRoadDirection(), in.readByte());
+		assertEquals(estimate, in.readFloat(), DELTA);
+		assertEquals(truth, in.readFloat(), DELTA);
+		assertEquals(1, in.readInt());
+	}
+
+	/**
+	 * Traffic application that uses the test's map instead of the
+	 * scenario's
+	 */
+	private class MapTrafficApp extends TrafficApp {
+		public MapTrafficApp(TrafficApp proto) {
+			super(proto);
+		}
+
+		@Override
+		public RoadSegmentIndex getSegmentIndex() {
+			return index;
+		}
+	}
+
+	/**
+	 * Movement model that moves the host once from a point to another
+	 */
+	private static class LineMovement extends MovementModel {
+		private Coord from;
+		private Coord to;
+		private double speed;
+		private boolean pathGiven = false;
+
+		public LineMovement(Coord from, Coord to, double speed) {
+			this.from = from;
+			this.to = to;
+			this.speed = speed;
+		}
+
+		@Override
+		public Coord getInitialLocation() {
+			return from.clone();
+		}
+
+		@Override
+		public boolean isActive() {
+			return true;
+		}
+
+		@Override
+		public Path getPath() {
+			Path p = new Path(speed);
+			p.addWaypoint(from.clone());
+			p.addWaypoint(to.clone());
+			pathGiven = true;
+			return p;
+		}
+
+		@Override
+		public double nextPathAvailable() {
+			return pathGiven ? Double.MAX_VALUE : 0;
+		}
+
+		@Override
+		public LineMovement replicate() {
+			return new LineMovement(from, to, speed);
+		}
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import junit.framework.TestCase;
+import applications.TrafficStateStore;
+
+/**
+ * Tests for the traffic state store of the traffic application
+ */
+public class TrafficStateStoreTest extends TestCase {
+	private static final double TTL = 100;
+	private static final double DELTA = 0.00001;
+	private static final int FWD = 0;
+	private static final int BWD = 1;
+
+	private TrafficStateStore store;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		store = new TrafficStateStore(TTL);
+	}
+
+	public void testEmpty() {
+		assertEquals(0, store.getSampleCount(1, FWD));
+		assertTrue(Double.isNaN(store.getMeanSpeed(1, FWD)));
+		assertTrue(Double.isNaN(store.getSpeedVariance(1, FWD)));
+	}
+
+	public void testMeanAndVariance() {
+		store.addSample(1, 5, FWD, 2.0, 0);
+		store.addSample(2, 5, FWD, 4.0, 0);
+		store.addSample(3, 5, FWD, 6.0, 0);
+		store.addSample(4, 5, BWD, 10.0, 0);
+
+		assertEquals(3, store.getSampleCount(5, FWD));
+		assertEquals(4.0, store.getMeanSpeed(5, FWD), DELTA);
+		assertEquals(8.0/3, store.getSpeedVariance(5, FWD), DELTA);
+		assertEquals(1, store.getSampleCount(5, BWD));
+		assertEquals(10.0, store.getMeanSpeed(5, BWD), DELTA);
+		assertEquals(0.0, store.getSpeedVariance(5, BWD), DELTA);
+	}
+
+	public void testLatestSamplePerSender() {
+		store.addSample(1, 5, FWD, 2.0, 10);
+		store.addSample(2, 5, FWD, 4.0, 10);
+		store.addSample(1, 5, FWD, 8.0, 20);
+		assertEquals(2, store.getSampleCount(5, FWD));
+		assertEquals(6.0, store.getMeanSpeed(5, FWD), DELTA);
+
+		/* older sample from the same sender is ignored */
+		store.addSample(1, 5, FWD, 100.0, 15);
+		assertEquals(6.0, store.getMeanSpeed(5, FWD), DELTA);
+
+		/* sender moves to another segment */
+		store.addSample(1, 7, BWD, 3.0, 30);
+		assertEquals(1, store.getSampleCount(5, FWD));
+		assertEquals(4.0, store.getMeanSpeed(5, FWD), DELTA);
+		assertEquals(3.0, store.getMeanSpeed(7, BWD), DELTA);
+		assertEquals(2, store.getNrofSenders());
+	}
+
+	public void testExpiry() {
+		store.addSample(1, 5, FWD, 2.0, 0);
+		store.addSample(2, 5, FWD, 4.0, 50);
+		store.expire(99);
+		assertEquals(2, store.getSampleCount(5, FWD));
+
+		store.expire(100);
+		assertEquals(1, store.getSampleCount(5, FWD));
+		assertEquals(4.0, store.getMeanSpeed(5, FWD), DELTA);
+
+		store.expire(150);
+		assertEquals(0, store.getSampleCount(5, FWD));
+		assertTrue(Double.isNaN(store.getMeanSpeed(5, FWD)));
+	}
+
+	public void testReplacedSampleDoesNotExpireNewOne() {
+		store.addSample(1, 5, FWD, 2.0, 0);
+		store.addSample(1, 5, FWD, 4.0, 60);
+		store.expire(120);
+		assertEquals(1, store.getSampleCount(5, FWD));
+		assertEquals(4.0, store.getMeanSpeed(5, FWD), DELTA);
+		store.expire(160);
+		assertEquals(0, store.getSampleCount(5, FWD));
+	}
+
+	public void testManySenders() {
+		final int nrof = 5000;
+		for (int i = 0; i < nrof; i++) {
+			store.addSample(i, i % 10, i % 2, i % 10, i * 0.01);
+		}
+		assertEquals(nrof, store.getNrofSenders());
+		assertEquals(nrof / 10, store.getSampleCount(3, BWD));
+		assertEquals(3.0, store.getMeanSpeed(3, BWD), DELTA);
+		assertEquals(0, store.getSampleCount(3, FWD));
+
+		store.expire(TTL + 25); // samples created before 25 expire
+		assertEquals(nrof / 10 - 250, store.getSampleCount(3, BWD));
+		assertEquals(3.0, store.getMeanSpeed(3, BWD), DELTA);
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.WKTTokenizer;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the streaming WKT tokenizer
+ */
+public class WKTTokenizerTest extends TestCase {
+	
+	private WKTTokenizer tokenizer(String data) {
+		return new WKTTokenizer(new StringReader(data));
+	}
+	
+	public void testTokens() throws IOException {
+		WKTTokenizer t = tokenizer("LINESTRING (1 2, 3.5 -4e1 7)\n" +
+				"POINT (1.0 (2.0))\r\n" +
+				"MULTILINESTRING ((1 1, 2 2),\n(3 3)) LINESTRING()");
+		
+		assertEquals("LINESTRING", t.nextType());
+		assertEquals(2, t.readCoords());
+		assertEquals(1.0, t.getXs()[0]);
+		assertEquals(2.0, t.getYs()[0]);
+		assertEquals(3.5, t.getXs()[1]);
+		assertEquals(-40.0, t.getYs()[1]);
+		
+		assertEquals("POINT", t.nextType());
+		t.skipNested();
+		
+		assertEquals("MULTILINESTRING", t.nextType());
+		t.enterList();
+		assertTrue(t.nextList());
+		assertEquals(2, t.readCoords());
+		assertEquals(2.0, t.getYs()[1]);
+		assertTrue(t.nextList());
+		assertEquals(1, t.readCoords());
+		assertEquals(3.0, t.getXs()[0]);
+		assertFalse(t.nextList());
+		
+		assertEquals("LINESTRING", t.nextType());
+		assertEquals(0, t.readCoords());
+		assertNull(t.nextType());
+	}
+	
+	public void testBadValues() {
+		String[] bad = {"LINESTRING (1 x)", "LINESTRING (1)", "LINESTRING (1 2"};
+		for (String data : bad) {
+			try {
+				WKTTokenizer t = tokenizer(data);
+				t.nextType();
+				t.readCoords();
+				fail("No exception for " + data);
+			} catch (IOException e) {
+				// expected
+			}
+		}
+	}
+	
+	public void testNumbersMatchParseDouble() throws IOException {
+		Random rng = new Random(1);
+		int n = 20000;
+		String[] values = new String[2 * n];
+		for (int i = 0; i < values.length; i++) {
+			switch (rng.nextInt(5)) {
+			case 0: // coordinate like values with all the digits
+				values[i] = Double.toString(rng.nextDouble() * 1e7);
+				break;
+			case 1: // random bits
+				double d;
+				do {
+					d = Double.longBitsToDouble(rng.nextLong());
+				} while (Double.isNaN(d) || Double.isInfinite(d));
+				values[i] = Double.toString(d);
+				break;
+			case 2: // long mantissas and exponents
+				StringBuilder sb = new StringBuilder();
+				if (rng.nextBoolean()) {
+					sb.append('-');
+				}
+				int digits = 1 + rng.nextInt(25);
+				for (int j = 0; j < digits; j++) {
+					sb.append((char)('0' + rng.nextInt(10)));
+					if (j == 0 && rng.nextBoolean()) {
+						sb.append('.');
+					}
+				}
+				sb.append('e').append(rng.nextInt(700) - 350);
+				values[i] = sb.toString();
+				break;
+			case 3: // halfway cases: 2^53 + 1 etc.
+				values[i] = Long.toString((1L << 53) + 1 + 2 * rng.nextInt(100));
+				break;
+			default:
+				values[i] = "0.000" + rng.nextInt(1000000) + "5";
+			}
+		}
+		
+		StringBuilder data = new StringBuilder("LINESTRING (");
+		for (int i = 0; i < n; i++) {
+			data.append(i > 0 ? ", " : "").append(values[2 * i]).append(' ')
+				.append(values[2 * i + 1]);
+		}
+		data.append(")");
+		
+		WKTTokenizer t = tokenizer(data.toString());
+		assertEquals("LINESTRING", t.nextType());
+		assertEquals(n, t.readCoords());
+		for (int i = 0; i < n; i++) {
+			assertEquals(values[2 * i], Double.parseDouble(values[2 * i]),
+					t.getXs()[i]);
+			assertEquals(values[2 * i + 1], 
+					Double.parseDouble(values[2 * i + 1]), t.getYs()[i]);
+		}
+	}
+}
@@ -10,7 +10,11 @@ import java.util.ArrayList;
 import java.util.List;
 
 import junit.framework.TestCase;
+import movement.MovementModel;
+import movement.RandomWaypoint;
+import core.Coord;
 import core.DTNHost;
+import core.MessageListener;
 import core.ModuleCommunicationBus;
 import core.NetworkInterface;
 import core.SimClock;
@@ -98,6 +102,58 @@ public class WorldTest extends TestCase {
 
 	}
 	
+	/**
+	 * Tests that moving the hosts with the worker pool gives the same 
+	 * locations as moving them sequentially
+	 */
+	public void testParallelMoves() {
+		Coord[] sequential = moveRandomly(1);
+		Coord[] parallel = moveRandomly(4);
+		
+		assertEquals(sequential.length, parallel.length);
+		for (int i=0; i<sequential.length; i++) {
+			assertEquals("Host " + i, sequential[i], parallel[i]);
+		}
+	}
+	
+	/**
+	 * Moves hosts with random waypoint movement for a while
+	 * @param nrofThreads Number of threads for moving the hosts
+	 * @return Locations of the hosts in the end
+	 */
+	private Coord[] moveRandomly(int nrofThreads) {
+		final int NROF_HOSTS = 300;
+		TestSettings ts = new TestSettings();
+		ts.putSetting(World.SETTINGS_NS + "." + World.PARALLEL_HOSTS_S, 
+				"" + nrofThreads);
+		ts.putSetting(MovementModel.MOVEMENT_MODEL_NS + "." + 
+				MovementModel.RNG_SEED, "1");
+		SimClock.reset();
+		MovementModel.reset();
+		DTNHost.reset();
+		
+		TestUtils utils = new TestUtils(null, new ArrayList<MessageListener>(),
+				ts);
+		RandomWaypoint proto = new RandomWaypoint(ts);
+		List<DTNHost> hosts = new ArrayList<DTNHost>();
+		for (int i=0; i<NROF_HOSTS; i++) {
+			hosts.add(utils.createHost(proto, null));
+		}
+		
+		World w = new World(hosts, 1000, 1000, 1.0, 
+				new ArrayList<UpdateListener>(), false, eQueues);
+		for (int i=0; i<1000; i++) {
+			w.update();
+		}
+		w.done();
+		
+		Coord[] locations = new Coord[NROF_HOSTS];
+		for (int i=0; i<NROF_HOSTS; i++) {
+			locations[i] = hosts.get(i).getLocation();
+		}
+		return locations;
+	}
+	
 
 	/** Dummy scenario for providing test values for the World */ 
 	private class TestScenario extends core.SimScenario {